@@ -0,0 +1,161 @@
+package mivalgamer.app;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sesiones iniciadas, en memoria.
+ * Tras un login correcto se emite un token opaco (32 bytes aleatorios en Base64 URL) con el
+ * que se comprueba la sesión sin volver a la BD (ver {@link Autentificacion#sesionVigente}).
+ * Cada uso del token renueva su caducidad (expiración deslizante). El almacén está acotado: al llenarse se descarta la
+ * sesión usada hace más tiempo, y las caducadas se eliminan al consultarlas o al insertar.
+ */
+public class AlmacenSesiones {
+    private static final AlmacenSesiones GLOBAL = new AlmacenSesiones(
+            Long.getLong("mivalgamer.sesion.ttlMs", 1_800_000L),
+            Integer.getInteger("mivalgamer.sesion.max", 10_000));
+
+    private static final int BYTES_TOKEN = 32;
+    private static final Base64.Encoder CODIFICADOR = Base64.getUrlEncoder().withoutPadding();
+
+    private final SecureRandom aleatorio = new SecureRandom();
+    private final long ttlNanos;
+    // En orden de acceso: la primera entrada es la usada hace más tiempo
+    private final Map<String, Sesion> sesiones;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong caducadas = new AtomicLong();
+    private final AtomicLong desalojadas = new AtomicLong();
+
+    public AlmacenSesiones(long ttlMs, int maxSesiones) {
+        if (ttlMs <= 0 || maxSesiones <= 0) {
+            throw new IllegalArgumentException("Parámetros inválidos para el almacén de sesiones");
+        }
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.sesiones = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Sesion> eldest) {
+                if (eldest.getValue().caducada(System.nanoTime())) {
+                    caducadas.incrementAndGet();
+                    return true;
+                }
+                if (size() > maxSesiones) {
+                    desalojadas.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static AlmacenSesiones global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Abre una sesión para el usuario y devuelve su token.
+     */
+    public String crear(Usuario usuario) {
+        byte[] bytes = new byte[BYTES_TOKEN];
+        aleatorio.nextBytes(bytes);
+        String token = CODIFICADOR.encodeToString(bytes);
+        Sesion sesion = new Sesion(usuario.getIdUsuario(), usuario.getNombre(), usuario.getEmail(),
+                System.nanoTime() + ttlNanos);
+        synchronized (sesiones) {
+            sesiones.put(token, sesion);
+        }
+        return token;
+    }
+
+    /**
+     * Devuelve la sesión del token renovando su caducidad, o null si no existe o caducó.
+     */
+    public Sesion validar(String token) {
+        if (token == null) {
+            fallos.incrementAndGet();
+            return null;
+        }
+        long ahora = System.nanoTime();
+        synchronized (sesiones) {
+            Sesion sesion = sesiones.get(token);
+            if (sesion == null) {
+                fallos.incrementAndGet();
+                return null;
+            }
+            if (sesion.caducada(ahora)) {
+                sesiones.remove(token);
+                caducadas.incrementAndGet();
+                fallos.incrementAndGet();
+                return null;
+            }
+            sesion.expiraEn = ahora + ttlNanos;
+            aciertos.incrementAndGet();
+            return sesion;
+        }
+    }
+
+    public void invalidar(String token) {
+        if (token == null) {
+            return;
+        }
+        synchronized (sesiones) {
+            sesiones.remove(token);
+        }
+    }
+
+    /**
+     * Cierra todas las sesiones de un usuario, por ejemplo tras cambiar su contraseña.
+     */
+    public void invalidarUsuario(String idUsuario) {
+        synchronized (sesiones) {
+            Iterator<Sesion> it = sesiones.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().idUsuario.equals(idUsuario)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    // Métricas
+    public long getAciertos() { return aciertos.get(); }
+    public long getFallos() { return fallos.get(); }
+    public long getCaducadas() { return caducadas.get(); }
+    public long getDesalojadas() { return desalojadas.get(); }
+
+    public int getActivas() {
+        synchronized (sesiones) {
+            return sesiones.size();
+        }
+    }
+
+    /**
+     * Datos del usuario guardados con la sesión.
+     */
+    public static final class Sesion {
+        private final String idUsuario;
+        private final String nombre;
+        private final String email;
+        private long expiraEn; // protegido por el monitor del almacén
+
+        private Sesion(String idUsuario, String nombre, String email, long expiraEn) {
+            this.idUsuario = idUsuario;
+            this.nombre = nombre;
+            this.email = email;
+            this.expiraEn = expiraEn;
+        }
+
+        private boolean caducada(long ahora) {
+            return ahora - expiraEn > 0;
+        }
+
+        public String getIdUsuario() { return idUsuario; }
+        public String getNombre() { return nombre; }
+        public String getEmail() { return email; }
+    }
+}
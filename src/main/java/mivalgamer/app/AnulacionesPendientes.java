@@ -0,0 +1,243 @@
+package mivalgamer.app;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Anulaciones y devoluciones que la pasarela todavía no ha confirmado.
+ * Cada anulación se guarda primero en anulacion_pendiente y después se envía a la pasarela
+ * remota sin pasar por el cortocircuito ni por el límite de concurrencia de
+ * {@link PasarelaProtegida}: una devolución no puede descartarse porque la pasarela vaya mal.
+ * Si falla se reintenta con espera exponencial hasta que la pasarela la acepte; la fila solo
+ * se borra entonces. Un barrido periódico recoge las filas que quedaron de una ejecución
+ * anterior o de otro nodo. Anular es idempotente en la pasarela, así que repetir una
+ * anulación ya hecha no tiene efecto.
+ */
+final class AnulacionesPendientes implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(AnulacionesPendientes.class.getName());
+
+    // A partir de este intento cada fallo se registra como grave
+    private static final int INTENTOS_AVISO = 10;
+
+    private static final String SQL_GUARDAR = "INSERT IGNORE INTO anulacion_pendiente " +
+            "(id_autorizacion, id_metodo, monto, referencia, intentos, proximo_intento) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_REPROGRAMAR = "UPDATE anulacion_pendiente " +
+            "SET intentos = ?, proximo_intento = ? WHERE id_autorizacion = ?";
+    private static final String SQL_BORRAR = "DELETE FROM anulacion_pendiente WHERE id_autorizacion = ?";
+
+    private final DataSource dataSource;
+    private final PasarelaPago remota;
+    private final long timeoutMs;
+    private final long esperaBaseMs;
+    private final long esperaMaxMs;
+    private final int maxBarrido;
+    private final Map<String, Pendiente> pendientes = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor reintentos =
+            new ScheduledThreadPoolExecutor(1, new FabricaHilos("anulaciones"));
+
+    private final AtomicLong solicitadas = new AtomicLong();
+    private final AtomicLong confirmadas = new AtomicLong();
+    private final AtomicLong reintentadas = new AtomicLong();
+
+    AnulacionesPendientes(DataSource dataSource, PasarelaPago remota, long timeoutMs,
+                          long esperaBaseMs, long esperaMaxMs, long intervaloBarridoMs, int maxBarrido) {
+        if (dataSource == null || remota == null || timeoutMs <= 0 || esperaBaseMs <= 0
+                || esperaMaxMs < esperaBaseMs || intervaloBarridoMs <= 0 || maxBarrido <= 0) {
+            throw new IllegalArgumentException("Parámetros inválidos para las anulaciones pendientes");
+        }
+        this.dataSource = dataSource;
+        this.remota = remota;
+        this.timeoutMs = timeoutMs;
+        this.esperaBaseMs = esperaBaseMs;
+        this.esperaMaxMs = esperaMaxMs;
+        this.maxBarrido = maxBarrido;
+        // Al cerrar se terminan las tareas inmediatas (guardar) pero no se esperan los reintentos:
+        // siguen en la tabla para la próxima ejecución
+        reintentos.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        reintentos.scheduleWithFixedDelay(this::barrer, 0, intervaloBarridoMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registra la anulación y la envía. El futuro se completa cuando la pasarela la confirma,
+     * tras los reintentos que hagan falta.
+     */
+    CompletableFuture<Void> anular(PasarelaPago.Autorizacion autorizacion) {
+        Pendiente nueva = new Pendiente(autorizacion, 0, false);
+        Pendiente existente = pendientes.putIfAbsent(autorizacion.getId(), nueva);
+        if (existente != null) {
+            return existente.futuro;
+        }
+        solicitadas.incrementAndGet();
+        try {
+            reintentos.execute(() -> {
+                guardar(nueva);
+                intentar(nueva);
+            });
+        } catch (RejectedExecutionException ex) {
+            // Cerrando: se guarda desde aquí para que la reintente la próxima ejecución
+            guardar(nueva);
+            pendientes.remove(autorizacion.getId(), nueva);
+            nueva.futuro.completeExceptionally(new IllegalStateException(
+                    "Anulación guardada para reintentarla al volver a arrancar", ex));
+        }
+        return nueva.futuro;
+    }
+
+    private void intentar(Pendiente pendiente) {
+        pendiente.intentos++;
+        CompletableFuture<Void> respuesta;
+        try {
+            respuesta = remota.anular(pendiente.autorizacion);
+        } catch (RuntimeException ex) {
+            respuesta = CompletableFuture.failedFuture(ex);
+        }
+        respuesta.copy().orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((resultado, error) -> {
+            try {
+                reintentos.execute(() -> {
+                    if (error == null) {
+                        completar(pendiente);
+                    } else {
+                        reprogramar(pendiente, error);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // Cerrando: la fila sigue en la tabla para la próxima ejecución
+                pendientes.remove(pendiente.autorizacion.getId(), pendiente);
+            }
+        });
+    }
+
+    private void completar(Pendiente pendiente) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_BORRAR)) {
+            stmt.setString(1, pendiente.autorizacion.getId());
+            stmt.executeUpdate();
+        } catch (SQLException ex) {
+            // La fila hará que el barrido repita una anulación ya hecha, lo que no tiene efecto
+            LOGGER.log(Level.WARNING, "No se pudo borrar la anulación ya confirmada " +
+                    pendiente.autorizacion.getId(), ex);
+        }
+        pendientes.remove(pendiente.autorizacion.getId(), pendiente);
+        confirmadas.incrementAndGet();
+        pendiente.futuro.complete(null);
+    }
+
+    private void reprogramar(Pendiente pendiente, Throwable error) {
+        reintentadas.incrementAndGet();
+        long espera = Math.min(esperaMaxMs, esperaBaseMs << Math.min(pendiente.intentos - 1, 20));
+        Level nivel = pendiente.intentos >= INTENTOS_AVISO ? Level.SEVERE : Level.WARNING;
+        LOGGER.log(nivel, "La anulación " + pendiente.autorizacion.getId() + " del pedido " +
+                pendiente.autorizacion.getReferencia() + " falló (intento " + pendiente.intentos +
+                "); se reintentará en " + espera + " ms", error);
+
+        Timestamp proximo = new Timestamp(System.currentTimeMillis() + espera);
+        if (!pendiente.guardada) {
+            guardar(pendiente);
+        }
+        if (pendiente.guardada) {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SQL_REPROGRAMAR)) {
+                stmt.setInt(1, pendiente.intentos);
+                stmt.setTimestamp(2, proximo);
+                stmt.setString(3, pendiente.autorizacion.getId());
+                stmt.executeUpdate();
+            } catch (SQLException ex) {
+                LOGGER.log(Level.WARNING, "No se pudo reprogramar la anulación " + pendiente.autorizacion.getId(), ex);
+            }
+        }
+        reintentos.schedule(() -> intentar(pendiente), espera, TimeUnit.MILLISECONDS);
+    }
+
+    private void guardar(Pendiente pendiente) {
+        PasarelaPago.Autorizacion autorizacion = pendiente.autorizacion;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_GUARDAR)) {
+            stmt.setString(1, autorizacion.getId());
+            stmt.setInt(2, autorizacion.getIdMetodo());
+            Monto.escribir(stmt, 3, autorizacion.getMonto());
+            stmt.setString(4, autorizacion.getReferencia());
+            stmt.setInt(5, pendiente.intentos);
+            stmt.setTimestamp(6, new Timestamp(System.currentTimeMillis()));
+            stmt.executeUpdate();
+            pendiente.guardada = true;
+        } catch (SQLException ex) {
+            // Se sigue intentando en memoria y se vuelve a guardar en el siguiente fallo
+            LOGGER.log(Level.SEVERE, "No se pudo guardar la anulación " + autorizacion.getId() +
+                    " del pedido " + autorizacion.getReferencia(), ex);
+        }
+    }
+
+    /**
+     * Retoma las anulaciones vencidas de la tabla que no se están reintentando en este proceso.
+     */
+    void barrer() {
+        String sql = "SELECT id_autorizacion, id_metodo, monto, referencia, intentos " +
+                "FROM anulacion_pendiente WHERE proximo_intento <= ? ORDER BY proximo_intento LIMIT " + maxBarrido;
+        List<Pendiente> vencidas = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    PasarelaPago.Autorizacion autorizacion = new PasarelaPago.Autorizacion(
+                            rs.getString("id_autorizacion"), rs.getInt("id_metodo"),
+                            Monto.leer(rs, "monto"), rs.getString("referencia"), true, null);
+                    vencidas.add(new Pendiente(autorizacion, rs.getInt("intentos"), true));
+                }
+            }
+        } catch (SQLException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "No se pudieron leer las anulaciones pendientes", ex);
+            return;
+        }
+        for (Pendiente pendiente : vencidas) {
+            if (pendientes.putIfAbsent(pendiente.autorizacion.getId(), pendiente) == null) {
+                intentar(pendiente);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        reintentos.shutdown();
+        try {
+            reintentos.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Métricas
+    int getPendientes() { return pendientes.size(); }
+    long getSolicitadas() { return solicitadas.get(); }
+    long getConfirmadas() { return confirmadas.get(); }
+    long getReintentadas() { return reintentadas.get(); }
+
+    private static final class Pendiente {
+        private final PasarelaPago.Autorizacion autorizacion;
+        private final CompletableFuture<Void> futuro = new CompletableFuture<>();
+        // Solo se tocan desde el hilo de reintentos
+        private int intentos;
+        private boolean guardada;
+
+        private Pendiente(PasarelaPago.Autorizacion autorizacion, int intentos, boolean guardada) {
+            this.autorizacion = autorizacion;
+            this.intentos = intentos;
+            this.guardada = guardada;
+        }
+    }
+}
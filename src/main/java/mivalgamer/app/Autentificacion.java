@@ -1,79 +1,156 @@
 package mivalgamer.app;
+import javax.sql.DataSource;
 import java.sql.*;
-import java.util.UUID;
+import java.util.Locale;
 import java.util.logging.Logger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.regex.Pattern;
 
 public class Autentificacion {
     private static final Logger LOGGER = Logger.getLogger(Autentificacion.class.getName());
-    private final Connection connection;
+    private final DataSource dataSource;
+    private final Connection conexionSesion;
 
-    // Regex para validar correo con dominios .com, .net, .org y .es (puedes añadir más)
-    // Dentro de la clase Autentificacion
-    private static final Pattern EMAIL_PATTERN = Pattern.compile(
-            "^[A-Za-z0-9+_.-]+@(gmail\\.com|hotmail\\.com|outlook\\.com|yahoo\\.es|dominio\\.net|ejemplo\\.org)$",
-            Pattern.CASE_INSENSITIVE
-    );
-
-    // Dentro de la clase Autentificacion
+    // Los dominios de correo admitidos están en Validador
     public boolean validarFormatoEmail(String email) {
-        return EMAIL_PATTERN.matcher(email).matches();
+        return Validador.validarEmail(email).esValido();
     }
 
-    public Autentificacion(Connection connection) {
-        this.connection = connection;
+    /**
+     * @param dataSource     de donde se pide una conexión para cada consulta
+     * @param conexionSesion conexión de sesión que reciben los {@link Usuario} devueltos
+     */
+    public Autentificacion(DataSource dataSource, Connection conexionSesion) {
+        if (dataSource == null || conexionSesion == null) {
+            throw new IllegalArgumentException("DataSource y conexión de sesión no pueden ser nulos");
+        }
+        this.dataSource = dataSource;
+        this.conexionSesion = conexionSesion;
     }
 
     /**
      * Registra un nuevo usuario en la BD.
-     * Lanza IllegalArgumentException si el email no cumple el patrón.
+     * Lanza IllegalArgumentException si el email no cumple el patrón o ya está registrado,
+     * también cuando es la clave única de la BD la que detecta el duplicado.
      */
     public Usuario registrarUsuario(String nombre, String email, String password) throws SQLException {
         if (!validarEmail(email)) {
-            throw new IllegalArgumentException(
-                    "Dominio inválido. Por favor, ingrese un correo con dominio válido.\n" +
-                            "Ejemplos válidos: usuario@gmail.com, usuario@hotmail.com, usuario@outlook.com");
+            throw new IllegalArgumentException(ErrorValidacion.EMAIL_DOMINIO.getMensaje());
+        }
+
+        if (!emailDisponible(email)) {
+            throw new IllegalArgumentException("Este correo ya está registrado");
         }
 
-        String idUsuario = "USR-" + UUID.randomUUID().toString().substring(0, 8);
+        String idUsuario = GeneradorIds.idUsuario();
         String hashedPassword = hashPassword(password);
 
         String sql = "INSERT INTO usuario (id_usuario, nombre, email, password) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, idUsuario);
-            stmt.setString(2, nombre);
-            stmt.setString(3, email);
-            stmt.setString(4, hashedPassword);
-            stmt.executeUpdate();
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, idUsuario);
+                stmt.setString(2, nombre);
+                stmt.setString(3, email);
+                stmt.setString(4, hashedPassword);
+                stmt.executeUpdate();
+            } catch (SQLIntegrityConstraintViolationException e) {
+                // Registrado entre la comprobación y el INSERT, o desde otra instancia que el filtro aún no conoce
+                FiltroEmails.global().agregar(email);
+                throw new IllegalArgumentException("Este correo ya está registrado", e);
+            }
+
+            FiltroEmails.global().agregar(email);
+
+            registrarAutenticacion(conn, idUsuario);
         }
+        return new Usuario(conexionSesion, idUsuario, nombre, email);
+    }
 
-        registrarAutenticacion(idUsuario);
-        return new Usuario(connection, idUsuario, nombre, email);
+    /**
+     * Indica si el email está libre. Casi siempre lo resuelve el filtro de emails sin ir
+     * a la BD; solo se consulta la tabla usuario cuando el filtro da un posible positivo.
+     */
+    public boolean emailDisponible(String email) {
+        if (!FiltroEmails.global().podriaExistir(email)) {
+            return true;
+        }
+        String sql = "SELECT 1 FROM usuario WHERE email = ? LIMIT 1";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, email);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return !rs.next();
+            }
+        } catch (SQLException e) {
+            // El INSERT sigue protegido por la clave única de email
+            LOGGER.warning("Error al comprobar email: " + e.getMessage());
+            return true;
+        }
     }
 
     /**
      * Inicia sesión comprobando email y contraseña.
-     * Devuelve el objeto Usuario o null si falla.
+     * Devuelve el objeto Usuario, con su token de sesión, o null si falla.
      */
     public Usuario iniciarSesion(String email, String password) throws SQLException {
-        String sql = "SELECT * FROM usuario WHERE email = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        return iniciarSesion(email, password, LimitadorIntentos.ORIGEN_LOCAL);
+    }
+
+    /**
+     * Igual que {@link #iniciarSesion(String, String)} indicando el origen del cliente.
+     * Lanza IllegalStateException, sin consultar la BD, si el email o el origen superan
+     * el límite de intentos.
+     */
+    public Usuario iniciarSesion(String email, String password, String origen) throws SQLException {
+        comprobarLimite(email, origen);
+        if (!FiltroEmails.global().podriaExistir(email)) {
+            // Email que seguro no está registrado: sin consulta ni hash
+            return null;
+        }
+        String sql = "SELECT id_usuario, nombre, email, password FROM usuario WHERE email = ?";
+        String idUsuario;
+        String nombre;
+        String emailGuardado;
+        String hashGuardado;
+        // La conexión se devuelve antes de calcular el hash, que es lo lento
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, email);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next() && verifyPassword(password, rs.getString("password"))) {
-                actualizarUltimoLogin(rs.getString("id_usuario"));
-                return new Usuario(
-                        connection,
-                        rs.getString("id_usuario"),
-                        rs.getString("nombre"),
-                        rs.getString("email")
-                );
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                idUsuario = rs.getString("id_usuario");
+                nombre = rs.getString("nombre");
+                emailGuardado = rs.getString("email");
+                hashGuardado = rs.getString("password");
             }
+        }
+        ServicioHash.Verificacion verificacion = ServicioHash.global().verificar(password, hashGuardado);
+        if (!verificacion.isValida()) {
             return null;
         }
+        if (verificacion.getNuevoHash() != null) {
+            // Hash de un algoritmo o coste anterior: se sustituye ahora que conocemos la contraseña
+            actualizarHash(idUsuario, verificacion.getNuevoHash());
+        }
+        // Se anota en memoria y se vuelca en lote en segundo plano
+        RegistroUltimoLogin.global().registrar(idUsuario);
+        Usuario usuario = new Usuario(conexionSesion, idUsuario, nombre, emailGuardado);
+        usuario.setTokenSesion(AlmacenSesiones.global().crear(usuario));
+        return usuario;
+    }
+
+    /**
+     * Indica si la sesión del usuario sigue abierta, renovando su caducidad. Es false si caducó
+     * o se cerró desde otro sitio, por ejemplo al cambiar la contraseña. No consulta la BD.
+     */
+    public boolean sesionVigente(Usuario usuario) {
+        String token = usuario.getTokenSesion();
+        return token != null && AlmacenSesiones.global().validar(token) != null;
+    }
+
+    public void cerrarSesion(Usuario usuario) {
+        AlmacenSesiones.global().invalidar(usuario.getTokenSesion());
+        usuario.setTokenSesion(null);
     }
 
     /**
@@ -94,21 +171,25 @@ public class Autentificacion {
 
         // Verificar que la nueva contraseña sea diferente a la actual
         String sqlVerificar = "SELECT password FROM usuario WHERE id_usuario = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sqlVerificar)) {
+        String contraseñaActual = null;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlVerificar)) {
             stmt.setString(1, idUsuario);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                String contraseñaActual = rs.getString("password");
-                if (verifyPassword(nuevaPassword, contraseñaActual)) {
-                    throw new IllegalArgumentException("La nueva contraseña debe ser diferente a la actual");
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    contraseñaActual = rs.getString("password");
                 }
             }
         }
+        if (contraseñaActual != null && verifyPassword(nuevaPassword, contraseñaActual)) {
+            throw new IllegalArgumentException("La nueva contraseña debe ser diferente a la actual");
+        }
 
         // Actualizar la contraseña
         String hashed = hashPassword(nuevaPassword);
         String sqlActualizar = "UPDATE usuario SET password = ? WHERE id_usuario = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sqlActualizar)) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlActualizar)) {
             stmt.setString(1, hashed);
             stmt.setString(2, idUsuario);
             int count = stmt.executeUpdate();
@@ -116,69 +197,69 @@ public class Autentificacion {
                 throw new SQLException("No se encontró usuario con id: " + idUsuario);
             }
         }
+        AlmacenSesiones.global().invalidarUsuario(idUsuario);
     }
 
     // Método auxiliar para validar fortaleza de contraseña
     boolean esContraseñaSegura(String password) {
-        return password.length() >= 8
-                && password.matches(".*[A-Z].*")
-                && password.matches(".*[a-z].*")
-                && password.matches(".*\\d.*");
+        return Validador.validarPassword(password).esValido();
     }
 
     // — Métodos auxiliares privados —
 
     private boolean validarEmail(String email) {
-        return EMAIL_PATTERN.matcher(email).matches();
+        return Validador.validarEmail(email).esValido();
+    }
+
+    private void comprobarLimite(String email, String origen) {
+        String clave = email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+        if (!LimitadorIntentos.porOrigen().intentar(origen) || !LimitadorIntentos.porEmail().intentar(clave)) {
+            throw new IllegalStateException("Demasiados intentos de inicio de sesión. Espera unos minutos e inténtalo de nuevo.");
+        }
     }
 
-    private void registrarAutenticacion(String idUsuario) throws SQLException {
+    private void registrarAutenticacion(Connection conn, String idUsuario) throws SQLException {
         String sql = "INSERT INTO autenticacion (id_usuario) VALUES (?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, idUsuario);
             stmt.executeUpdate();
         }
     }
 
-    private void actualizarUltimoLogin(String idUsuario) throws SQLException {
-        String sql = "UPDATE autenticacion SET ultimo_login = NOW() WHERE id_usuario = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, idUsuario);
+    private void actualizarHash(String idUsuario, String hash) throws SQLException {
+        String sql = "UPDATE usuario SET password = ? WHERE id_usuario = ?";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, hash);
+            stmt.setString(2, idUsuario);
             stmt.executeUpdate();
         }
     }
 
     private String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hashedBytes = md.digest(password.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashedBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error al encriptar contraseña", e);
-        }
+        return ServicioHash.global().hash(password);
     }
 
     private boolean verifyPassword(String inputPassword, String storedHash) {
-        return hashPassword(inputPassword).equals(storedHash);
+        return ServicioHash.global().verificar(inputPassword, storedHash).isValida();
     }
 
     public boolean verificarCredenciales(String email, String password) {
+        comprobarLimite(email, LimitadorIntentos.ORIGEN_LOCAL);
         String sql = "SELECT password FROM usuario WHERE email = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        String hashed = null;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, email);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                String hashed = rs.getString("password");
-                return verifyPassword(password, hashed);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    hashed = rs.getString("password");
+                }
             }
         } catch (SQLException e) {
             LOGGER.warning("Error al verificar credenciales: " + e.getMessage());
         }
-        return false;
+        return hashed != null && verifyPassword(password, hashed);
     }
 }
 
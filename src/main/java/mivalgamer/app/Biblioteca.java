@@ -1,16 +1,21 @@
 package mivalgamer.app;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Biblioteca {
     private static final Logger LOGGER = Logger.getLogger(Biblioteca.class.getName());
     private final Usuario usuario;
-    private final Connection connection;
+    // Cada consulta pide su propia conexión y la devuelve al terminar
+    private final DataSource dataSource;
 
     public static class ItemBiblioteca {
         private final Videojuego juego;
@@ -36,21 +41,34 @@ public class Biblioteca {
         }
     }
 
-    public Biblioteca(Usuario usuario, Connection connection) {
-        if (usuario == null || connection == null) {
-            throw new IllegalArgumentException("Usuario y conexión no pueden ser nulos");
+    /**
+     * Órdenes de la biblioteca paginada. Cada uno desempata por id_videojuego.
+     */
+    public enum Orden {
+        FECHA_COMPRA, // más recientes primero
+        TITULO
+    }
+
+    public Biblioteca(Usuario usuario, DataSource dataSource) {
+        if (usuario == null || dataSource == null) {
+            throw new IllegalArgumentException("Usuario y DataSource no pueden ser nulos");
         }
         this.usuario = usuario;
-        this.connection = connection;
+        this.dataSource = dataSource;
     }
 
+    /**
+     * Carga la biblioteca completa. Para bibliotecas grandes usar
+     * {@link #getJuegos(Orden, int, String)} o {@link #recorrerJuegos(Orden, int)}.
+     */
     public List<ItemBiblioteca> getJuegos() {
         List<ItemBiblioteca> items = new ArrayList<>();
         String sql = "SELECT v.*, b.fecha_compra, b.key_activacion FROM biblioteca b " +
                 "JOIN videojuego v ON b.id_videojuego = v.id_videojuego " +
                 "WHERE b.id_usuario = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, usuario.getIdUsuario());
 
             ResultSet rs = stmt.executeQuery();
@@ -67,6 +85,79 @@ public class Biblioteca {
         return items;
     }
 
+    /**
+     * Una página de la biblioteca en el orden indicado.
+     *
+     * @param token null para la primera página, o {@link Pagina#getSiguiente()} de la anterior
+     */
+    public Pagina<ItemBiblioteca> getJuegos(Orden orden, int tamano, String token) throws SQLException {
+        if (orden == null || tamano <= 0) {
+            throw new IllegalArgumentException("Orden y tamaño de página obligatorios");
+        }
+        String[] desde = Pagina.leerToken(token, orden.name());
+
+        // Las dos parten de las filas del usuario en biblioteca. Por FECHA_COMPRA el índice ya da
+        // el orden; por TITULO se ordenan solo los juegos del usuario, nunca el catálogo entero
+        String sql = switch (orden) {
+            case FECHA_COMPRA -> "SELECT v.*, b.fecha_compra, b.key_activacion FROM biblioteca b " +
+                    "JOIN videojuego v ON b.id_videojuego = v.id_videojuego " +
+                    "WHERE b.id_usuario = ?" +
+                    (desde == null ? "" : " AND (b.fecha_compra < ? OR (b.fecha_compra = ? AND b.id_videojuego < ?))") +
+                    " ORDER BY b.fecha_compra DESC, b.id_videojuego DESC LIMIT ?";
+            case TITULO -> "SELECT v.*, b.fecha_compra, b.key_activacion FROM biblioteca b " +
+                    "STRAIGHT_JOIN videojuego v ON v.id_videojuego = b.id_videojuego " +
+                    "WHERE b.id_usuario = ?" +
+                    (desde == null ? "" : " AND (v.titulo > ? OR (v.titulo = ? AND v.id_videojuego > ?))") +
+                    " ORDER BY v.titulo, v.id_videojuego LIMIT ?";
+        };
+
+        List<ItemBiblioteca> items = new ArrayList<>(Math.min(tamano, 1000));
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            stmt.setString(i++, usuario.getIdUsuario());
+            if (desde != null) {
+                if (orden == Orden.FECHA_COMPRA) {
+                    Timestamp fecha = Timestamp.valueOf(LocalDateTime.parse(desde[0]));
+                    stmt.setTimestamp(i++, fecha);
+                    stmt.setTimestamp(i++, fecha);
+                } else {
+                    stmt.setString(i++, desde[0]);
+                    stmt.setString(i++, desde[0]);
+                }
+                stmt.setLong(i++, Long.parseLong(desde[1]));
+            }
+            // Una fila de más para saber si hay página siguiente
+            stmt.setInt(i, tamano + 1);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (items.size() < tamano && rs.next()) {
+                    Videojuego juego = mapVideojuegoFromResultSet(rs);
+                    LocalDateTime fechaCompra = rs.getTimestamp("fecha_compra").toLocalDateTime();
+                    items.add(new ItemBiblioteca(juego, fechaCompra, rs.getString("key_activacion")));
+                }
+                if (!rs.next()) {
+                    return new Pagina<>(items, null);
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            throw new IllegalArgumentException("Token de continuación inválido", ex);
+        }
+
+        ItemBiblioteca ultimo = items.get(items.size() - 1);
+        String valor = orden == Orden.FECHA_COMPRA ? ultimo.getFechaCompra().toString() : ultimo.getJuego().getTitulo();
+        return new Pagina<>(items, Pagina.token(orden.name(), valor,
+                String.valueOf(ultimo.getJuego().getIdVideojuego())));
+    }
+
+    /**
+     * Recorre toda la biblioteca página a página (para exportaciones). Nunca tiene en memoria
+     * más de una página.
+     */
+    public Iterable<ItemBiblioteca> recorrerJuegos(Orden orden, int tamanoPagina) {
+        return () -> Pagina.recorrer(token -> getJuegos(orden, tamanoPagina, token));
+    }
+
     public void mostrarBiblioteca() {
         try {
             List<ItemBiblioteca> items = getJuegos();
@@ -77,10 +168,12 @@ public class Biblioteca {
             if (items.isEmpty()) {
                 System.out.println("No tienes juegos en tu biblioteca");
             } else {
+                Map<Long, List<Plataforma>> plataformasPorJuego = obtenerPlataformas(items);
                 for (int i = 0; i < items.size(); i++) {
                     ItemBiblioteca item = items.get(i);
                     // Aquí mostramos los nombres de TODAS las plataformas del videojuego
-                    String plataformas = obtenerNombresPlataformas(item.getJuego());
+                    String plataformas = Plataforma.unirNombres(
+                            plataformasPorJuego.get(item.getJuego().getIdVideojuego()), "Plataformas desconocidas");
                     System.out.printf("%d. %s - %s | Key: %s | Comprado: %s%n",
                             i + 1,
                             item.getJuego().getTitulo(),
@@ -105,16 +198,19 @@ public class Biblioteca {
             return;
         }
 
-        String sql = "INSERT INTO biblioteca (id_usuario, id_videojuego, fecha_compra, key_activacion) " +
+        // IGNORE: si otra sesión ya añadió el juego la fila existente se conserva
+        String sql = "INSERT IGNORE INTO biblioteca (id_usuario, id_videojuego, fecha_compra, key_activacion) " +
                 "VALUES (?, ?, NOW(), ?)";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, usuario.getIdUsuario());
             stmt.setLong(2, juego.getIdVideojuego());
             stmt.setString(3, keyActivacion);
-            stmt.executeUpdate();
+            boolean insertado = stmt.executeUpdate() > 0;
+            usuario.registrarJuegosComprados(new long[]{juego.getIdVideojuego()});
 
-            LOGGER.info("Juego " + juego.getTitulo() + " agregado a la biblioteca");
+            LOGGER.info("Juego " + juego.getTitulo() + (insertado ? " agregado a" : " ya estaba en") + " la biblioteca");
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error al agregar juego a la biblioteca", ex);
             throw new RuntimeException("Error al agregar juego a la biblioteca", ex);
@@ -127,7 +223,8 @@ public class Biblioteca {
                 "JOIN videojuego v ON b.id_videojuego = v.id_videojuego " +
                 "WHERE b.id_usuario = ? ORDER BY b.fecha_compra DESC LIMIT ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, usuario.getIdUsuario());
             stmt.setInt(2, limite);
 
@@ -144,76 +241,76 @@ public class Biblioteca {
         return items;
     }
 
-<<<<<<< HEAD
-    // Devuelve los nombres de todas las plataformas asociadas a un videojuego separados por coma
-    private String obtenerNombresPlataformas(Videojuego juego) {
-        try {
-            List<Plataforma> plataformas = juego.obtenerPlataformas(connection);
-            if (plataformas.isEmpty()) {
-                return "Plataformas desconocidas";
-            }
-            List<String> nombres = new ArrayList<>();
-            for (Plataforma plataforma : plataformas) {
-                nombres.add(plataforma.getNombreComercial());
-            }
-            return String.join(", ", nombres);
-        } catch (SQLException ex) {
-            LOGGER.log(Level.SEVERE, "Error al obtener plataformas del videojuego", ex);
-=======
-    private String obtenerNombrePlataforma(long idPlataforma) {
-        String sql = "SELECT nombre_comercial FROM plataforma WHERE id_plataforma = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, idPlataforma);
-            ResultSet rs = stmt.executeQuery();
-            return rs.next() ? rs.getString("nombre_comercial") : "Desconocida";
+    // Carga en una sola consulta las plataformas de todos los juegos listados
+    private Map<Long, List<Plataforma>> obtenerPlataformas(List<ItemBiblioteca> items) {
+        List<Long> ids = new ArrayList<>(items.size());
+        for (ItemBiblioteca item : items) {
+            ids.add(item.getJuego().getIdVideojuego());
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            return Plataforma.obtenerPorVideojuegos(conn, ids);
         } catch (SQLException ex) {
-            LOGGER.log(Level.SEVERE, "Error al obtener nombre de plataforma", ex);
->>>>>>> 832a7629a1439125ab9c5211116ca639b8163bb8
-            return "Desconocida";
+            LOGGER.log(Level.SEVERE, "Error al obtener plataformas de los videojuegos", ex);
+            return Collections.emptyMap();
         }
     }
 
     private Videojuego mapVideojuegoFromResultSet(ResultSet rs) throws SQLException {
-<<<<<<< HEAD
         // Se adapta a la nueva firma del constructor de Videojuego (sin idPlataforma y con los nuevos campos)
-=======
->>>>>>> 832a7629a1439125ab9c5211116ca639b8163bb8
         return new Videojuego(
                 rs.getLong("id_videojuego"),
                 rs.getString("titulo"),
                 rs.getString("estudio"),
                 rs.getLong("id_genero"),
-<<<<<<< HEAD
                 rs.getString("descripcion"),
-                rs.getDouble("precio"),
-                rs.getDouble("precio_original"),
+                Monto.leer(rs, "precio"),
+                Monto.leer(rs, "precio_original"),
                 rs.getBoolean("descuento_aplicado"),
                 EstadoVideojuego.fromString(rs.getString("estado")),
                 rs.getString("icono"),
                 rs.getString("portada"),
                 rs.getString("contenido_visual"),
                 rs.getInt("stock")
-=======
-                rs.getLong("id_plataforma"),
-                rs.getString("descripcion"),
-                rs.getDouble("precio"),
-                EstadoVideojuego.fromString(rs.getString("estado"))
->>>>>>> 832a7629a1439125ab9c5211116ca639b8163bb8
         );
     }
 
+    /**
+     * Ids de todos los juegos de la biblioteca del usuario, para {@link Usuario#getJuegosPoseidos()}.
+     */
+    static ConjuntoLong cargarIdsJuegos(Connection connection, String idUsuario) throws SQLException {
+        String sql = "SELECT id_videojuego FROM biblioteca WHERE id_usuario = ?";
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, idUsuario);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        ConjuntoLong conjunto = new ConjuntoLong(ids.size());
+        for (long id : ids) {
+            conjunto.agregar(id);
+        }
+        return conjunto;
+    }
+
+    /**
+     * Indica, para cada id de videojuego, si ya está en la biblioteca. Se responde en memoria,
+     * así que sirve para marcar los juegos comprados en una página entera del catálogo.
+     */
+    public boolean[] contieneTodos(long[] idsVideojuego) throws SQLException {
+        return usuario.getJuegosPoseidos().contieneTodos(idsVideojuego);
+    }
+
     public boolean contieneJuego(Videojuego juego) {
         if (juego == null) return false;
 
-        String sql = "SELECT COUNT(*) FROM biblioteca WHERE id_usuario = ? AND id_videojuego = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, usuario.getIdUsuario());
-            stmt.setLong(2, juego.getIdVideojuego());
-            ResultSet rs = stmt.executeQuery();
-            return rs.next() && rs.getInt(1) > 0;
+        try {
+            return usuario.getJuegosPoseidos().contiene(juego.getIdVideojuego());
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error al verificar juego en biblioteca", ex);
             return false;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,199 @@
+package mivalgamer.app;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de lectura del catálogo de videojuegos.
+ * Guarda los juegos por id (LRU acotado) y las listas del catálogo, por plataforma y en
+ * descuento como listas de ids que se resuelven contra el índice por id. Las entradas
+ * caducan tras el TTL; si al resolver una lista falta algún juego se vuelve a cargar.
+ */
+public class CacheCatalogo {
+    private static final CacheCatalogo GLOBAL = new CacheCatalogo(
+            Long.getLong("mivalgamer.catalogo.ttlMs", 300_000L),
+            Integer.getInteger("mivalgamer.catalogo.maxJuegos", 10_000));
+
+    private final long ttlNanos;
+    private final Map<Long, Entrada<Videojuego>> porId;
+    private final Map<Long, Entrada<List<Long>>> porPlataforma = new ConcurrentHashMap<>();
+    private volatile Entrada<List<Long>> todos;
+    private volatile Entrada<List<Long>> enDescuento;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong invalidaciones = new AtomicLong();
+
+    public CacheCatalogo(long ttlMs, int maxJuegos) {
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.porId = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entrada<Videojuego>> eldest) {
+                return size() > maxJuegos;
+            }
+        };
+    }
+
+    public static CacheCatalogo global() {
+        return GLOBAL;
+    }
+
+    public List<Videojuego> obtenerTodos(Connection conn) throws SQLException {
+        List<Videojuego> juegos = resolver(todos);
+        if (juegos != null) {
+            return juegos;
+        }
+        juegos = Videojuego.cargarTodos(conn);
+        todos = new Entrada<>(registrar(juegos), ttlNanos);
+        return juegos;
+    }
+
+    public Videojuego obtenerPorId(Connection conn, long idVideojuego) throws SQLException {
+        Videojuego juego = buscar(idVideojuego);
+        if (juego != null) {
+            aciertos.incrementAndGet();
+            return juego;
+        }
+        fallos.incrementAndGet();
+        juego = Videojuego.cargarPorId(conn, idVideojuego);
+        guardar(juego);
+        return juego;
+    }
+
+    public List<Videojuego> obtenerPorPlataforma(Connection conn, long idPlataforma) throws SQLException {
+        List<Videojuego> juegos = resolver(porPlataforma.get(idPlataforma));
+        if (juegos != null) {
+            return juegos;
+        }
+        juegos = Videojuego.cargarPorPlataforma(conn, idPlataforma);
+        porPlataforma.put(idPlataforma, new Entrada<>(registrar(juegos), ttlNanos));
+        return juegos;
+    }
+
+    public List<Videojuego> obtenerEnDescuento(Connection conn) throws SQLException {
+        List<Videojuego> juegos = resolver(enDescuento);
+        if (juegos != null) {
+            return juegos;
+        }
+        juegos = Videojuego.cargarEnDescuento(conn);
+        enDescuento = new Entrada<>(registrar(juegos), ttlNanos);
+        return juegos;
+    }
+
+    /**
+     * Guarda o reemplaza un juego leído de la BD por otra vía (por ejemplo en el checkout).
+     */
+    public void guardar(Videojuego juego) {
+        synchronized (porId) {
+            porId.put(juego.getIdVideojuego(), new Entrada<>(juego, ttlNanos));
+        }
+    }
+
+    /**
+     * Descarta un juego tras cambiar su precio, stock o estado. Las listas que lo contienen
+     * se recargan la próxima vez que se pidan; la de descuentos se descarta directamente.
+     */
+    public void invalidar(long idVideojuego) {
+        synchronized (porId) {
+            porId.remove(idVideojuego);
+        }
+        enDescuento = null;
+        invalidaciones.incrementAndGet();
+    }
+
+    /**
+     * Descarta todo el catálogo, por ejemplo tras altas o cambios de plataforma o descuentos.
+     */
+    public void invalidarTodo() {
+        synchronized (porId) {
+            porId.clear();
+        }
+        porPlataforma.clear();
+        todos = null;
+        enDescuento = null;
+        invalidaciones.incrementAndGet();
+    }
+
+    // Métricas
+    public long getAciertos() { return aciertos.get(); }
+    public long getFallos() { return fallos.get(); }
+    public long getInvalidaciones() { return invalidaciones.get(); }
+
+    public double getTasaAciertos() {
+        long a = aciertos.get();
+        long total = a + fallos.get();
+        return total == 0 ? 0.0 : (double) a / total;
+    }
+
+    public int getTamano() {
+        synchronized (porId) {
+            return porId.size();
+        }
+    }
+
+    private Videojuego buscar(long idVideojuego) {
+        synchronized (porId) {
+            Entrada<Videojuego> entrada = porId.get(idVideojuego);
+            if (entrada == null) {
+                return null;
+            }
+            if (entrada.caducada()) {
+                porId.remove(idVideojuego);
+                return null;
+            }
+            return entrada.valor;
+        }
+    }
+
+    // Devuelve null (y cuenta un fallo) si la lista caducó o algún juego ya no está en caché
+    private List<Videojuego> resolver(Entrada<List<Long>> entrada) {
+        if (entrada == null || entrada.caducada()) {
+            fallos.incrementAndGet();
+            return null;
+        }
+        List<Videojuego> juegos = new ArrayList<>(entrada.valor.size());
+        synchronized (porId) {
+            for (Long id : entrada.valor) {
+                Entrada<Videojuego> juego = porId.get(id);
+                if (juego == null || juego.caducada()) {
+                    fallos.incrementAndGet();
+                    return null;
+                }
+                juegos.add(juego.valor);
+            }
+        }
+        aciertos.incrementAndGet();
+        return juegos;
+    }
+
+    private List<Long> registrar(List<Videojuego> juegos) {
+        List<Long> ids = new ArrayList<>(juegos.size());
+        synchronized (porId) {
+            for (Videojuego juego : juegos) {
+                porId.put(juego.getIdVideojuego(), new Entrada<>(juego, ttlNanos));
+                ids.add(juego.getIdVideojuego());
+            }
+        }
+        return ids;
+    }
+
+    private static final class Entrada<T> {
+        private final T valor;
+        private final long expiraEn;
+
+        private Entrada(T valor, long ttlNanos) {
+            this.valor = valor;
+            this.expiraEn = System.nanoTime() + ttlNanos;
+        }
+
+        private boolean caducada() {
+            return System.nanoTime() - expiraEn > 0;
+        }
+    }
+}
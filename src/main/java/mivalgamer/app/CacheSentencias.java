@@ -0,0 +1,227 @@
+package mivalgamer.app;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caché LRU de sentencias preparadas de una conexión física, indexada por el texto SQL.
+ * Las sentencias entregadas son envoltorios nuevos en cada préstamo: close() limpia los
+ * parámetros y la devuelve a la caché, y getConnection() devuelve la conexión del pool, no
+ * la física. Si la sentencia de un SQL ya está en uso, o la caché está llena y todas sus
+ * sentencias en uso, se prepara una nueva sin cachear que close() cierra de verdad.
+ */
+class CacheSentencias {
+    private static final Logger LOGGER = Logger.getLogger(CacheSentencias.class.getName());
+
+    // Textos SQL distintos con contadores propios; el resto se suma en OTRAS para que el SQL
+    // generado (listas IN de longitud variable, LIMIT literales) no haga crecer el mapa sin fin
+    private static final int MAX_ESTADISTICAS = Integer.getInteger("mivalgamer.pool.estadisticasSql", 256);
+    static final String OTRAS = "(otras)";
+
+    private final Connection real;
+    private final int capacidad;
+    private final Map<String, Contadores> estadisticas;
+    // En orden de acceso: la primera entrada libre es la menos usada recientemente
+    private final LinkedHashMap<String, Entrada> entradas;
+
+    CacheSentencias(Connection real, int capacidad, Map<String, Contadores> estadisticas) {
+        this.real = real;
+        this.capacidad = capacidad;
+        this.estadisticas = estadisticas;
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param conexion conexión del pool que pide la sentencia; es la que devuelve su getConnection()
+     */
+    synchronized PreparedStatement preparar(String sql, Connection conexion) throws SQLException {
+        Contadores contadores = contadores(sql);
+        Entrada entrada = entradas.get(sql);
+        if (entrada != null && !entrada.enUso && !entrada.sentencia.isClosed()) {
+            contadores.aciertos.incrementAndGet();
+            return entrada.prestar(conexion);
+        }
+
+        contadores.fallos.incrementAndGet();
+        PreparedStatement sentencia = real.prepareStatement(sql);
+        if ((entrada != null && entrada.enUso)
+                || (entrada == null && entradas.size() >= capacidad && !expulsarLibre())) {
+            // Uso anidado del mismo SQL, o caché llena de sentencias en uso: no se cachea
+            return new Entrada(sql, sentencia, false).prestar(conexion);
+        }
+        Entrada nueva = new Entrada(sql, sentencia, true);
+        entradas.put(sql, nueva);
+        return nueva.prestar(conexion);
+    }
+
+    // Cierra y quita la entrada libre menos usada recientemente; false si todas están en uso
+    private boolean expulsarLibre() {
+        Iterator<Entrada> it = entradas.values().iterator();
+        while (it.hasNext()) {
+            Entrada entrada = it.next();
+            if (!entrada.enUso) {
+                it.remove();
+                cerrarSilenciosamente(entrada.sentencia);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Contadores contadores(String sql) {
+        Contadores contadores = estadisticas.get(sql);
+        if (contadores != null) {
+            return contadores;
+        }
+        String clave = estadisticas.size() < MAX_ESTADISTICAS ? sql : OTRAS;
+        return estadisticas.computeIfAbsent(clave, k -> new Contadores());
+    }
+
+    private synchronized void devolver(Entrada entrada) {
+        entrada.prestamo = null;
+        if (!entrada.enCache) {
+            entrada.enUso = false;
+            cerrarSilenciosamente(entrada.sentencia);
+            return;
+        }
+        try {
+            ResultSet rs = entrada.sentencia.getResultSet();
+            if (rs != null) {
+                rs.close();
+            }
+            entrada.sentencia.clearParameters();
+            entrada.sentencia.clearBatch();
+            if (entrada.sentencia.getFetchSize() != 0) {
+                entrada.sentencia.setFetchSize(0);
+            }
+            if (entrada.sentencia.getMaxRows() != 0) {
+                entrada.sentencia.setMaxRows(0);
+            }
+            entrada.enUso = false;
+        } catch (SQLException ex) {
+            LOGGER.log(Level.FINE, "Sentencia descartada de la caché", ex);
+            entradas.remove(entrada.sql, entrada);
+            cerrarSilenciosamente(entrada.sentencia);
+        }
+    }
+
+    /**
+     * Marca como libres las sentencias que el llamante no cerró antes de devolver la conexión.
+     */
+    synchronized void liberarTodas() {
+        for (Entrada entrada : entradas.values().toArray(new Entrada[0])) {
+            if (entrada.enUso) {
+                devolver(entrada);
+            }
+        }
+    }
+
+    private static void cerrarSilenciosamente(PreparedStatement sentencia) {
+        try {
+            sentencia.close();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.FINE, "Error al cerrar sentencia expulsada de la caché", ex);
+        }
+    }
+
+    /**
+     * Contadores de aciertos y fallos de un texto SQL, agregados en todas las conexiones del pool.
+     */
+    public static final class Contadores {
+        private final AtomicLong aciertos = new AtomicLong();
+        private final AtomicLong fallos = new AtomicLong();
+
+        public long getAciertos() { return aciertos.get(); }
+        public long getFallos() { return fallos.get(); }
+    }
+
+    static Map<String, Contadores> nuevasEstadisticas() {
+        return new ConcurrentHashMap<>();
+    }
+
+    private final class Entrada {
+        private final String sql;
+        private final PreparedStatement sentencia;
+        private final boolean enCache;
+        private volatile boolean enUso;
+        // Préstamo en curso, null si está libre
+        private volatile Prestamo prestamo;
+
+        private Entrada(String sql, PreparedStatement sentencia, boolean enCache) {
+            this.sql = sql;
+            this.sentencia = sentencia;
+            this.enCache = enCache;
+        }
+
+        // Cada préstamo lleva su propio envoltorio, así uno ya cerrado no revive con el siguiente
+        private PreparedStatement prestar(Connection conexion) {
+            Prestamo nuevo = new Prestamo(this, conexion);
+            this.prestamo = nuevo;
+            this.enUso = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, nuevo);
+        }
+    }
+
+    private final class Prestamo implements InvocationHandler {
+        private final Entrada entrada;
+        // Conexión del pool a la que se prestó la sentencia
+        private final Connection conexion;
+
+        private Prestamo(Entrada entrada, Connection conexion) {
+            this.entrada = entrada;
+            this.conexion = conexion;
+        }
+
+        private boolean vigente() {
+            return entrada.enUso && entrada.prestamo == this;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (CacheSentencias.this) {
+                        if (vigente()) {
+                            devolver(entrada);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return !vigente() || entrada.sentencia.isClosed();
+                case "getConnection":
+                    if (!vigente()) {
+                        throw new SQLException("La sentencia ya fue cerrada");
+                    }
+                    return conexion;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (!vigente()) {
+                throw new SQLException("La sentencia ya fue cerrada");
+            }
+            try {
+                return method.invoke(entrada.sentencia, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -1,20 +1,55 @@
 package mivalgamer.app;
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class CarritoCompra {
     private static final Logger LOGGER = Logger.getLogger(CarritoCompra.class.getName());
 
+    // Escritura diferida: cada cuánto se vuelcan los cambios a item_carrito
+    private static final long INTERVALO_VOLCADO_MS = Long.getLong("mivalgamer.carrito.volcadoMs", 5_000L);
+    private static final ScheduledExecutorService VOLCADOR =
+            Executors.newSingleThreadScheduledExecutor(new FabricaHilos("carrito-volcado"));
+    private static final Set<CarritoCompra> CARRITOS_DIFERIDOS = ConcurrentHashMap.newKeySet();
+
+    // Inserta el item o suma la cantidad si ya existe, tomando el precio vigente del videojuego.
+    // El subtotal se asigna antes que la cantidad porque MySQL evalúa las asignaciones en orden.
+    private static final String SQL_UPSERT_ITEM =
+            "INSERT INTO item_carrito (id_carrito, id_videojuego, cantidad, subtotal) " +
+            "SELECT ?, v.id_videojuego, ?, v.precio * ? FROM videojuego v WHERE v.id_videojuego = ? " +
+            "ON DUPLICATE KEY UPDATE " +
+            "subtotal = (item_carrito.cantidad + VALUES(cantidad)) * (VALUES(subtotal) / VALUES(cantidad)), " +
+            "cantidad = item_carrito.cantidad + VALUES(cantidad)";
+
     private final Connection connection;
     private Long idCarrito;
     private final Usuario usuario;
     private LocalDateTime fechaCreacion;
     private EstadoCarrito estado;
 
+    // Solo en modo de escritura diferida
+    private final DataSource dataSource;
+    private final Map<Long, ItemCarrito> itemsEnMemoria = new LinkedHashMap<>();
+    private final Map<Long, Long> pendientes = new HashMap<>(); // id_videojuego -> versión del cambio
+    private final Object volcadoLock = new Object();
+    private long version;
+    private long total; // centavos
+    private ScheduledFuture<?> tareaVolcado;
+
     public CarritoCompra(Long idCarrito, Usuario usuario, LocalDateTime fechaCreacion,
                          EstadoCarrito estado, Connection connection) {
         validarParametros(usuario, connection);
@@ -23,16 +58,45 @@ public class CarritoCompra {
         this.fechaCreacion = fechaCreacion;
         this.estado = estado;
         this.connection = connection;
+        this.dataSource = null;
     }
 
     public CarritoCompra(Usuario usuario, Connection connection) {
+        this(usuario, connection, null);
+    }
+
+    private CarritoCompra(Usuario usuario, Connection connection, DataSource dataSource) {
         validarParametros(usuario, connection);
         this.usuario = usuario;
         this.connection = connection;
+        this.dataSource = dataSource;
         this.estado = EstadoCarrito.ACTIVO;
         this.crearNuevoCarritoEnBD();
     }
 
+    /**
+     * Crea un carrito nuevo que mantiene sus items en memoria.
+     * Los cambios se vuelcan a item_carrito en una sola transacción, usando una conexión
+     * propia del dataSource. El volcado ocurre periódicamente, al llamar a
+     * {@link #sincronizar()} (checkout), al cerrar la sesión con {@link #cerrar()} y al
+     * apagar la aplicación con {@link #cerrarTodos()}. Un cambio solo deja de estar pendiente cuando su volcado se confirma,
+     * así que un fallo a mitad de volcado se reintenta completo en el siguiente.
+     */
+    public static CarritoCompra conEscrituraDiferida(Usuario usuario, Connection connection, DataSource dataSource) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("El dataSource no puede ser nulo");
+        }
+        CarritoCompra carrito = new CarritoCompra(usuario, connection, dataSource);
+        carrito.tareaVolcado = VOLCADOR.scheduleWithFixedDelay(carrito::sincronizar,
+                INTERVALO_VOLCADO_MS, INTERVALO_VOLCADO_MS, TimeUnit.MILLISECONDS);
+        CARRITOS_DIFERIDOS.add(carrito);
+        return carrito;
+    }
+
+    public boolean isEscrituraDiferida() {
+        return dataSource != null;
+    }
+
     private void validarParametros(Usuario usuario, Connection connection) {
         if (usuario == null || connection == null) {
             throw new IllegalArgumentException("Usuario y conexión no pueden ser nulos");
@@ -57,6 +121,15 @@ public class CarritoCompra {
     }
 
     public List<ItemCarrito> getItems() {
+        if (isEscrituraDiferida()) {
+            synchronized (this) {
+                List<ItemCarrito> copia = new ArrayList<>(itemsEnMemoria.size());
+                for (ItemCarrito item : itemsEnMemoria.values()) {
+                    copia.add(new ItemCarrito(item.getVideojuego(), item.getCantidad(), item.getPrecioUnitarioCentavos()));
+                }
+                return copia;
+            }
+        }
         List<ItemCarrito> items = new ArrayList<>();
         String sql = "SELECT ic.*, v.* FROM item_carrito ic " +
                 "JOIN videojuego v ON ic.id_videojuego = v.id_videojuego " +
@@ -82,8 +155,8 @@ public class CarritoCompra {
                 rs.getString("estudio"),
                 rs.getLong("id_genero"),
                 rs.getString("descripcion"),
-                rs.getDouble("precio"),
-                rs.getDouble("precio_original"),
+                Monto.leer(rs, "precio"),
+                Monto.leer(rs, "precio_original"),
                 rs.getBoolean("descuento_aplicado"),
                 EstadoVideojuego.fromString(rs.getString("estado")),
                 rs.getString("icono"),
@@ -93,8 +166,8 @@ public class CarritoCompra {
         );
 
         int cantidad = rs.getInt("cantidad");
-        double subtotal = rs.getDouble("subtotal");
-        double precioUnitario = cantidad > 0 ? subtotal / cantidad : 0.0;
+        long subtotal = Monto.leer(rs, "subtotal");
+        long precioUnitario = cantidad > 0 ? Monto.dividir(subtotal, cantidad, Monto.REDONDEO) : Monto.CERO;
         return new ItemCarrito(videojuego, cantidad, precioUnitario);
     }
 
@@ -106,62 +179,215 @@ public class CarritoCompra {
             throw new IllegalStateException("No se puede agregar el juego al carrito (sin stock o ya está)");
         }
 
-        double precio = obtenerPrecioActual(juego.getIdVideojuego());
-        if (itemExisteEnCarrito(juego.getIdVideojuego())) {
-            actualizarItemExistente(juego.getIdVideojuego(), cantidad, precio);
-        } else {
-            insertarNuevoItem(juego.getIdVideojuego(), cantidad, precio);
+        if (isEscrituraDiferida()) {
+            agregarEnMemoria(juego, cantidad);
+            return;
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(SQL_UPSERT_ITEM)) {
+            prepararUpsert(stmt, juego.getIdVideojuego(), cantidad);
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Videojuego no encontrado");
+            }
         }
     }
 
-    private boolean itemExisteEnCarrito(Long idVideojuego) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM item_carrito WHERE id_carrito = ? AND id_videojuego = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, idCarrito);
-            stmt.setLong(2, idVideojuego);
-            ResultSet rs = stmt.executeQuery();
-            return rs.next() && rs.getInt(1) > 0;
+    /**
+     * Agrega varios juegos de una vez (por ejemplo un paquete) con una sola sentencia en lote.
+     * Todos se validan antes de escribir nada, y en modo directo el lote se aplica en una
+     * transacción: o entran todos o ninguno.
+     */
+    public void agregarItems(Map<Videojuego, Integer> juegos) throws SQLException {
+        if (juegos == null || juegos.isEmpty()) {
+            throw new IllegalArgumentException("Se requiere al menos un juego");
+        }
+        for (Map.Entry<Videojuego, Integer> entrada : juegos.entrySet()) {
+            Integer cantidad = entrada.getValue();
+            if (entrada.getKey() == null || cantidad == null || cantidad <= 0) {
+                throw new IllegalArgumentException("Juego y cantidad válidos requeridos");
+            }
+            if (!puedeAgregarItem(entrada.getKey(), cantidad)) {
+                throw new IllegalStateException("No se puede agregar " + entrada.getKey().getTitulo() +
+                        " al carrito (sin stock)");
+            }
+        }
+
+        if (isEscrituraDiferida()) {
+            for (Map.Entry<Videojuego, Integer> entrada : juegos.entrySet()) {
+                agregarEnMemoria(entrada.getKey(), entrada.getValue());
+            }
+            return;
+        }
+
+        boolean autoCommitOriginal = connection.getAutoCommit();
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = connection.prepareStatement(SQL_UPSERT_ITEM)) {
+                for (Map.Entry<Videojuego, Integer> entrada : juegos.entrySet()) {
+                    prepararUpsert(stmt, entrada.getKey().getIdVideojuego(), entrada.getValue());
+                    stmt.addBatch();
+                }
+                int[] resultados = stmt.executeBatch();
+                for (int filas : resultados) {
+                    if (filas == 0) {
+                        throw new SQLException("Videojuego no encontrado");
+                    }
+                }
+            }
+            if (autoCommitOriginal) {
+                connection.commit();
+            }
+        } catch (SQLException ex) {
+            if (autoCommitOriginal) {
+                connection.rollback();
+            }
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommitOriginal);
         }
     }
 
+    private void prepararUpsert(PreparedStatement stmt, long idVideojuego, int cantidad) throws SQLException {
+        stmt.setLong(1, idCarrito);
+        stmt.setInt(2, cantidad);
+        stmt.setInt(3, cantidad);
+        stmt.setLong(4, idVideojuego);
+    }
 
-    private double obtenerPrecioActual(Long idVideojuego) throws SQLException {
-        String sql = "SELECT precio FROM videojuego WHERE id_videojuego = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, idVideojuego);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getDouble("precio");
-            } else {
-                throw new SQLException("Videojuego no encontrado");
+    private void agregarEnMemoria(Videojuego juego, int cantidad) throws SQLException {
+        // El precio vigente sale del catálogo en caché en lugar de un SELECT por item
+        Videojuego actual = Videojuego.obtenerPorId(connection, juego.getIdVideojuego());
+        synchronized (this) {
+            ItemCarrito anterior = itemsEnMemoria.get(actual.getIdVideojuego());
+            int nuevaCantidad = cantidad;
+            if (anterior != null) {
+                nuevaCantidad += anterior.getCantidad();
+                total -= anterior.calcularSubtotalCentavos();
             }
+            ItemCarrito item = new ItemCarrito(actual, nuevaCantidad, actual.getPrecioCentavos());
+            itemsEnMemoria.put(actual.getIdVideojuego(), item);
+            total += item.calcularSubtotalCentavos();
+            pendientes.put(actual.getIdVideojuego(), ++version);
         }
     }
 
-    private void actualizarItemExistente(Long idVideojuego, int cantidadAdicional, double precio) throws SQLException {
-        String sql = "UPDATE item_carrito SET cantidad = cantidad + ?, subtotal = (cantidad + ?) * ? WHERE id_carrito = ? AND id_videojuego = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, cantidadAdicional);
-            stmt.setInt(2, cantidadAdicional); // Para el subtotal
-            stmt.setDouble(3, precio); // Precio unitario
-            stmt.setLong(4, idCarrito);
-            stmt.setLong(5, idVideojuego);
-            stmt.executeUpdate();
+    /**
+     * Vuelca a item_carrito los cambios pendientes del modo de escritura diferida.
+     * Los items vigentes se escriben con un upsert en lote y los eliminados con un borrado
+     * en lote, todo en una sola transacción. No hace nada en modo directo o si no hay cambios.
+     *
+     * @return false si el volcado falló y los cambios siguen pendientes
+     */
+    public boolean sincronizar() {
+        if (!isEscrituraDiferida()) {
+            return true;
+        }
+        synchronized (volcadoLock) {
+            Map<Long, Long> lote;
+            List<ItemCarrito> vigentes = new ArrayList<>();
+            synchronized (this) {
+                if (pendientes.isEmpty()) {
+                    return true;
+                }
+                lote = new HashMap<>(pendientes);
+                for (Long idVideojuego : lote.keySet()) {
+                    ItemCarrito item = itemsEnMemoria.get(idVideojuego);
+                    if (item != null) {
+                        vigentes.add(item);
+                    }
+                }
+            }
+
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    volcar(conn, lote, vigentes);
+                    conn.commit();
+                } catch (SQLException ex) {
+                    conn.rollback();
+                    throw ex;
+                }
+            } catch (SQLException ex) {
+                LOGGER.log(Level.WARNING, "No se pudo volcar el carrito " + idCarrito + "; se reintentará", ex);
+                return false;
+            }
+
+            synchronized (this) {
+                // Solo se limpian los cambios que no se modificaron durante el volcado
+                for (Map.Entry<Long, Long> cambio : lote.entrySet()) {
+                    pendientes.remove(cambio.getKey(), cambio.getValue());
+                }
+            }
+            return true;
         }
     }
 
+    private void volcar(Connection conn, Map<Long, Long> lote, List<ItemCarrito> vigentes) throws SQLException {
+        if (vigentes.size() < lote.size()) {
+            Set<Long> idsVigentes = new HashSet<>();
+            for (ItemCarrito item : vigentes) {
+                idsVigentes.add(item.getVideojuego().getIdVideojuego());
+            }
+            String sqlBorrar = "DELETE FROM item_carrito WHERE id_carrito = ? AND id_videojuego = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(sqlBorrar)) {
+                for (Long idVideojuego : lote.keySet()) {
+                    if (idsVigentes.contains(idVideojuego)) {
+                        continue;
+                    }
+                    stmt.setLong(1, idCarrito);
+                    stmt.setLong(2, idVideojuego);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
 
-    private void insertarNuevoItem(Long idVideojuego, int cantidad, double precio) throws SQLException {
-        String sql = "INSERT INTO item_carrito (id_carrito, id_videojuego, cantidad, subtotal) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, idCarrito);
-            stmt.setLong(2, idVideojuego);
-            stmt.setInt(3, cantidad);
-            stmt.setDouble(4, precio * cantidad);
-            stmt.executeUpdate();
+        if (vigentes.isEmpty()) {
+            return;
+        }
+        String sqlUpsert = "INSERT INTO item_carrito (id_carrito, id_videojuego, cantidad, subtotal) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE cantidad = VALUES(cantidad), subtotal = VALUES(subtotal)";
+        try (PreparedStatement stmt = conn.prepareStatement(sqlUpsert)) {
+            for (ItemCarrito item : vigentes) {
+                stmt.setLong(1, idCarrito);
+                stmt.setLong(2, item.getVideojuego().getIdVideojuego());
+                stmt.setInt(3, item.getCantidad());
+                Monto.escribir(stmt, 4, item.calcularSubtotalCentavos());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
         }
     }
 
+    /**
+     * Fin de sesión: detiene el volcado periódico y vuelca los cambios pendientes. Si el
+     * volcado falla el carrito sigue registrado para que {@link #cerrarTodos()} lo reintente.
+     */
+    public void cerrar() {
+        if (!isEscrituraDiferida()) {
+            return;
+        }
+        if (tareaVolcado != null) {
+            tareaVolcado.cancel(false);
+        }
+        if (sincronizar()) {
+            CARRITOS_DIFERIDOS.remove(this);
+        }
+    }
+
+    /**
+     * Vuelca y cierra todos los carritos con escritura diferida que sigan abiertos.
+     * Debe llamarse al apagar la aplicación, antes de cerrar el pool.
+     */
+    public static void cerrarTodos() {
+        for (CarritoCompra carrito : CARRITOS_DIFERIDOS) {
+            carrito.cerrar();
+            if (CARRITOS_DIFERIDOS.contains(carrito)) {
+                LOGGER.severe("El carrito " + carrito.idCarrito + " se cierra con cambios sin guardar");
+                CARRITOS_DIFERIDOS.remove(carrito);
+            }
+        }
+    }
 
     public boolean puedeAgregarItem(Videojuego juego, int cantidad) {
         // Se mantiene la lógica de validación, usando el metodo de Videojuego actualizado si es necesario
@@ -183,6 +409,16 @@ public class CarritoCompra {
     }
 
     public void eliminarItem(Long idVideojuego) {
+        if (isEscrituraDiferida()) {
+            synchronized (this) {
+                ItemCarrito item = itemsEnMemoria.remove(idVideojuego);
+                if (item != null) {
+                    total -= item.calcularSubtotalCentavos();
+                    pendientes.put(idVideojuego, ++version);
+                }
+            }
+            return;
+        }
         String sql = "DELETE FROM item_carrito WHERE id_carrito = ? AND id_videojuego = ?";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setLong(1, idCarrito);
@@ -194,14 +430,23 @@ public class CarritoCompra {
     }
 
 
-    public double calcularTotal() {
-        double total = 0.0;
+    public long calcularTotalCentavos() {
+        if (isEscrituraDiferida()) {
+            synchronized (this) {
+                return total;
+            }
+        }
+        long total = 0;
         for (ItemCarrito item : getItems()) {
-            total += item.getCantidad() * item.getPrecioUnitario();
+            total = Monto.sumar(total, item.calcularSubtotalCentavos());
         }
         return total;
     }
 
+    public double calcularTotal() {
+        return Monto.aDouble(calcularTotalCentavos());
+    }
+
     public void cambiarEstado(EstadoCarrito nuevoEstado) {
         String sql = "UPDATE carrito_compra SET estado = ? WHERE id_carrito = ?";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
@@ -220,5 +465,12 @@ public class CarritoCompra {
     public Usuario getUsuario() { return usuario; }
     public LocalDateTime getFechaCreacion() { return fechaCreacion; }
     public EstadoCarrito getEstado() { return estado; }
-    public boolean estaVacio() { return getItems().isEmpty(); }
+    public boolean estaVacio() {
+        if (isEscrituraDiferida()) {
+            synchronized (this) {
+                return itemsEnMemoria.isEmpty();
+            }
+        }
+        return getItems().isEmpty();
+    }
 }
\ No newline at end of file
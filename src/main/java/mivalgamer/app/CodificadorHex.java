@@ -0,0 +1,22 @@
+package mivalgamer.app;
+
+/**
+ * Conversión de bytes a texto hexadecimal en minúsculas mediante una tabla,
+ * sin String.format ni StringBuilder por byte.
+ */
+final class CodificadorHex {
+    private static final char[] DIGITOS = "0123456789abcdef".toCharArray();
+
+    private CodificadorHex() {
+    }
+
+    static String codificar(byte[] bytes) {
+        char[] texto = new char[bytes.length * 2];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            texto[j++] = DIGITOS[b >>> 4];
+            texto[j++] = DIGITOS[b & 0x0F];
+        }
+        return new String(texto);
+    }
+}
@@ -0,0 +1,377 @@
+package mivalgamer.app;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cola de checkout asíncrona con commit agrupado.
+ * Los pedidos se encolan y se devuelve un futuro. Unos pocos hilos escritores toman
+ * lotes de la cola, escriben todos los pedidos del lote en una misma transacción sobre
+ * una conexión del pool y la confirman con un único commit. Cada pedido va tras su propio
+ * savepoint: si uno falla se deshace solo ese y el resto del lote sigue adelante.
+ */
+public class ColaPedidos implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ColaPedidos.class.getName());
+
+    private static volatile ColaPedidos global;
+
+    private final DataSource dataSource;
+    private final PasarelaPago pasarela;
+    private final BlockingQueue<Solicitud> cola;
+    private final int maxLote;
+    private final long timeoutEncolarMs;
+    private final List<Thread> escritores = new ArrayList<>();
+    private volatile boolean cerrada;
+
+    private final AtomicLong confirmados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private final AtomicLong rechazados = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+
+    public ColaPedidos(DataSource dataSource, PasarelaPago pasarela, int capacidad, int numEscritores,
+                       int maxLote, long timeoutEncolarMs) {
+        if (dataSource == null || pasarela == null || capacidad <= 0 || numEscritores <= 0 || maxLote <= 0) {
+            throw new IllegalArgumentException("Parámetros inválidos para la cola de pedidos");
+        }
+        this.dataSource = dataSource;
+        this.pasarela = pasarela;
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.maxLote = maxLote;
+        this.timeoutEncolarMs = timeoutEncolarMs;
+
+        FabricaHilos fabrica = new FabricaHilos("checkout");
+        for (int i = 0; i < numEscritores; i++) {
+            Thread hilo = fabrica.newThread(this::escribir);
+            escritores.add(hilo);
+            hilo.start();
+        }
+    }
+
+    /**
+     * Cola compartida por la aplicación, sobre el pool de {@link ConexionBaseDatos}.
+     */
+    public static ColaPedidos global() {
+        ColaPedidos actual = global;
+        if (actual == null) {
+            synchronized (ColaPedidos.class) {
+                actual = global;
+                if (actual == null) {
+                    actual = new ColaPedidos(ConexionBaseDatos.getDataSource(), PasarelaProtegida.global(),
+                            Integer.getInteger("mivalgamer.checkout.capacidad", 1_000),
+                            Integer.getInteger("mivalgamer.checkout.escritores", 2),
+                            Integer.getInteger("mivalgamer.checkout.maxLote", 50),
+                            Long.getLong("mivalgamer.checkout.timeoutEncolarMs", 2_000L));
+                    global = actual;
+                }
+            }
+        }
+        return actual;
+    }
+
+    public static synchronized void cerrarGlobal() {
+        if (global != null) {
+            global.close();
+            global = null;
+        }
+    }
+
+    /**
+     * Encola un pedido. Si la cola sigue llena tras el tiempo de espera configurado el
+     * futuro se completa con {@link RejectedExecutionException} (contrapresión).
+     * El {@link Pedido} devuelto ya está confirmado; su conexión volvió al pool, así que
+     * solo debe usarse para leer los datos ya cargados.
+     */
+    public CompletableFuture<Pedido> enviar(Usuario usuario, List<ItemCarrito> items,
+                                            int idMetodoPago, String codigoDescuento) {
+        CompletableFuture<Pedido> futuro = new CompletableFuture<>();
+        if (cerrada) {
+            futuro.completeExceptionally(new RejectedExecutionException("La cola de pedidos está cerrada"));
+            return futuro;
+        }
+        Solicitud solicitud = new Solicitud(usuario, new ArrayList<>(items), idMetodoPago, codigoDescuento, futuro);
+        try {
+            if (!cola.offer(solicitud, timeoutEncolarMs, TimeUnit.MILLISECONDS)) {
+                rechazados.incrementAndGet();
+                futuro.completeExceptionally(new RejectedExecutionException(
+                        "Demasiados pedidos en curso, inténtalo de nuevo en unos segundos"));
+            } else if (cerrada && cola.remove(solicitud)) {
+                // Encolada mientras se cerraba, quizá después del vaciado final de close(). Si
+                // ya no está en la cola la tomó un escritor o ese vaciado, y ellos responden
+                futuro.completeExceptionally(new RejectedExecutionException("La cola de pedidos está cerrada"));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            futuro.completeExceptionally(ex);
+        }
+        return futuro;
+    }
+
+    private void escribir() {
+        List<Solicitud> lote = new ArrayList<>(maxLote);
+        while (!cerrada || !cola.isEmpty()) {
+            try {
+                Solicitud primera = cola.poll(200, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                lote.add(primera);
+                cola.drainTo(lote, maxLote - 1);
+                procesarLote(lote);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.SEVERE, "Error inesperado en el escritor de pedidos", ex);
+                fallarPendientes(lote, ex);
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    /**
+     * Procesa un lote en tres fases. Fuera de la transacción se preparan los pedidos y se
+     * autorizan todos los pagos a la vez. Después se escriben en una transacción, cada uno
+     * tras su savepoint, y se capturan todos los cobros en paralelo antes del commit. Si
+     * alguna captura falla, su pedido ya no puede deshacerse por separado: se deshace la
+     * transacción y se reescriben solo los capturados, esta vez sin llamadas remotas.
+     */
+    private void procesarLote(List<Solicitud> lote) {
+        lotes.incrementAndGet();
+        // Pedido de cada solicitud; queda null en cuanto la solicitud falla
+        List<Pedido> pedidos = new ArrayList<>(lote.size());
+        // Si el commit falla no se sabe si llegó a aplicarse; si falla después, sí se aplicó
+        boolean commitEnviado = false;
+        boolean confirmado = false;
+        try (Connection conn = dataSource.getConnection()) {
+            autorizar(conn, lote, pedidos);
+
+            conn.setAutoCommit(false);
+            escribir(conn, lote, pedidos);
+            if (!capturar(lote, pedidos)) {
+                conn.rollback();
+                for (Pedido pedido : pedidos) {
+                    if (pedido != null) {
+                        pedido.deshacerPago();
+                    }
+                }
+                escribir(conn, lote, pedidos);
+            }
+            commitEnviado = true;
+            conn.commit();
+            confirmado = true;
+        } catch (SQLException ex) {
+            if (confirmado) {
+                LOGGER.log(Level.WARNING, "Error al devolver la conexión tras confirmar un lote", ex);
+            } else if (!commitEnviado || !comprobarCommit(lote, pedidos, ex)) {
+                if (!commitEnviado) {
+                    LOGGER.log(Level.SEVERE, "Error al escribir un lote de " + lote.size() + " pedidos", ex);
+                    anularTodos(pedidos);
+                }
+                fallarPendientes(lote, ex);
+                return;
+            }
+        }
+
+        for (int i = 0; i < lote.size(); i++) {
+            Pedido pedido = pedidos.get(i);
+            if (pedido != null) {
+                pedido.confirmar();
+                confirmados.incrementAndGet();
+                lote.get(i).futuro.complete(pedido);
+            }
+        }
+    }
+
+    /**
+     * Tras un fallo del commit comprueba con otra conexión si el lote quedó guardado. Como es
+     * una única transacción basta con mirar uno de sus pedidos. Solo si seguro que no se
+     * guardó se anulan los pagos; si no se puede comprobar se dejan como están, para no
+     * devolver el dinero de pedidos que sí existen.
+     *
+     * @return true si el lote se guardó y debe darse por confirmado
+     */
+    private boolean comprobarCommit(List<Solicitud> lote, List<Pedido> pedidos, SQLException errorCommit) {
+        String idPedido = null;
+        for (Pedido pedido : pedidos) {
+            if (pedido != null) {
+                idPedido = pedido.getIdPedido();
+                break;
+            }
+        }
+        if (idPedido == null) {
+            return false;
+        }
+        LOGGER.log(Level.WARNING, "Falló el commit de un lote de " + lote.size() +
+                " pedidos; se comprueba si llegó a guardarse", errorCommit);
+        try {
+            if (PedidoFactory.comprobarGuardado(dataSource, idPedido)) {
+                return true;
+            }
+            anularTodos(pedidos);
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "No se pudo comprobar si se guardó el lote de los pedidos " +
+                    idsPedidos(pedidos) + "; no se anulan sus pagos", ex);
+            errorCommit.addSuppressed(ex);
+        }
+        return false;
+    }
+
+    private void anularTodos(List<Pedido> pedidos) {
+        for (Pedido pedido : pedidos) {
+            if (pedido != null) {
+                pedido.anularPago(pasarela);
+            }
+        }
+    }
+
+    private static List<String> idsPedidos(List<Pedido> pedidos) {
+        List<String> ids = new ArrayList<>(pedidos.size());
+        for (Pedido pedido : pedidos) {
+            if (pedido != null) {
+                ids.add(pedido.getIdPedido());
+            }
+        }
+        return ids;
+    }
+
+    private void autorizar(Connection conn, List<Solicitud> lote, List<Pedido> pedidos) {
+        List<CompletableFuture<PasarelaPago.Autorizacion>> respuestas = new ArrayList<>(lote.size());
+        for (Solicitud solicitud : lote) {
+            try {
+                Pedido pedido = PedidoFactory.prepararPedido(conn, solicitud.items, solicitud.idMetodoPago,
+                        solicitud.codigoDescuento, solicitud.usuario);
+                respuestas.add(pedido.autorizarPago(pasarela));
+                pedidos.add(pedido);
+            } catch (SQLException | RuntimeException ex) {
+                respuestas.add(null);
+                pedidos.add(null);
+                fallar(solicitud, ex);
+            }
+        }
+        for (int i = 0; i < lote.size(); i++) {
+            if (pedidos.get(i) == null) {
+                continue;
+            }
+            try {
+                PedidoFactory.exigirAutorizacion(PedidoFactory.esperar(respuestas.get(i)));
+            } catch (SQLException | RuntimeException ex) {
+                pedidos.set(i, null);
+                fallar(lote.get(i), ex);
+            }
+        }
+    }
+
+    private void escribir(Connection conn, List<Solicitud> lote, List<Pedido> pedidos) throws SQLException {
+        for (int i = 0; i < lote.size(); i++) {
+            Pedido pedido = pedidos.get(i);
+            if (pedido == null) {
+                continue;
+            }
+            Savepoint savepoint = conn.setSavepoint();
+            try {
+                PedidoFactory.registrarPedido(conn, pedido, lote.get(i).codigoDescuento);
+            } catch (SQLException | RuntimeException ex) {
+                // Si el propio rollback falla (p. ej. deadlock) cae el lote entero
+                conn.rollback(savepoint);
+                pedidos.set(i, null);
+                pedido.anularPago(pasarela);
+                fallar(lote.get(i), ex);
+            }
+        }
+    }
+
+    /**
+     * Captura en paralelo los pagos de los pedidos escritos. Devuelve false si alguno falló.
+     */
+    private boolean capturar(List<Solicitud> lote, List<Pedido> pedidos) {
+        List<CompletableFuture<Void>> capturas = new ArrayList<>(lote.size());
+        for (Pedido pedido : pedidos) {
+            capturas.add(pedido == null ? null : pedido.capturarPago(pasarela));
+        }
+        boolean todas = true;
+        for (int i = 0; i < lote.size(); i++) {
+            if (capturas.get(i) == null) {
+                continue;
+            }
+            try {
+                PedidoFactory.esperar(capturas.get(i));
+            } catch (RuntimeException ex) {
+                pedidos.get(i).anularPago(pasarela);
+                pedidos.set(i, null);
+                fallar(lote.get(i), ex);
+                todas = false;
+            }
+        }
+        return todas;
+    }
+
+    private void fallar(Solicitud solicitud, Exception causa) {
+        fallidos.incrementAndGet();
+        solicitud.futuro.completeExceptionally(causa);
+    }
+
+    private void fallarPendientes(List<Solicitud> lote, Exception causa) {
+        for (Solicitud solicitud : lote) {
+            if (solicitud.futuro.completeExceptionally(causa)) {
+                fallidos.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Deja de aceptar pedidos y espera a que los escritores vacíen la cola.
+     */
+    @Override
+    public void close() {
+        cerrada = true;
+        for (Thread hilo : escritores) {
+            try {
+                hilo.join(10_000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Pedidos encolados justo al cerrar: se rechazan en lugar de dejarlos sin respuesta
+        List<Solicitud> restantes = new ArrayList<>();
+        cola.drainTo(restantes);
+        fallarPendientes(restantes, new RejectedExecutionException("La cola de pedidos está cerrada"));
+    }
+
+    // Métricas
+    public int getEnCola() { return cola.size(); }
+    public long getConfirmados() { return confirmados.get(); }
+    public long getFallidos() { return fallidos.get(); }
+    public long getRechazados() { return rechazados.get(); }
+    public long getLotes() { return lotes.get(); }
+
+    private static final class Solicitud {
+        private final Usuario usuario;
+        private final List<ItemCarrito> items;
+        private final int idMetodoPago;
+        private final String codigoDescuento;
+        private final CompletableFuture<Pedido> futuro;
+
+        private Solicitud(Usuario usuario, List<ItemCarrito> items, int idMetodoPago,
+                          String codigoDescuento, CompletableFuture<Pedido> futuro) {
+            this.usuario = usuario;
+            this.items = items;
+            this.idMetodoPago = idMetodoPago;
+            this.codigoDescuento = codigoDescuento;
+            this.futuro = futuro;
+        }
+    }
+}
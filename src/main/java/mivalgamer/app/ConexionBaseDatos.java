@@ -1,24 +1,66 @@
 package mivalgamer.app;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class ConexionBaseDatos {
     private static final Logger LOGGER = Logger.getLogger(ConexionBaseDatos.class.getName());
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/mival_gamer";
+    private static final String DB_URL = "jdbc:mysql://localhost:3306/mival_gamer?useServerPrepStmts=true&rewriteBatchedStatements=true";
     private static final String DB_USER = "root";
     private static final String DB_PASS = "root";
 
+    // Parámetros del pool, ajustables con -Dmivalgamer.pool.*
+    private static final int POOL_MIN = Integer.getInteger("mivalgamer.pool.min", 2);
+    private static final int POOL_MAX = Integer.getInteger("mivalgamer.pool.max", 10);
+    private static final long POOL_TIMEOUT_MS = Long.getLong("mivalgamer.pool.timeoutMs", 5_000L);
+    private static final long POOL_INACTIVIDAD_MS = Long.getLong("mivalgamer.pool.inactividadMs", 300_000L);
+    private static final long POOL_FUGA_MS = Long.getLong("mivalgamer.pool.fugaMs", 60_000L);
+    private static final int POOL_SENTENCIAS = Integer.getInteger("mivalgamer.pool.sentencias", 64);
+
+    private static volatile PoolConexiones pool;
+
     private Connection connection;
 
+    /**
+     * Pool compartido por toda la aplicación. Se crea en el primer uso.
+     */
+    public static PoolConexiones getDataSource() {
+        PoolConexiones actual = pool;
+        if (actual == null) {
+            synchronized (ConexionBaseDatos.class) {
+                actual = pool;
+                if (actual == null) {
+                    actual = new PoolConexiones(DB_URL, DB_USER, DB_PASS, POOL_MIN, POOL_MAX,
+                            POOL_TIMEOUT_MS, POOL_INACTIVIDAD_MS, POOL_FUGA_MS, POOL_SENTENCIAS);
+                    pool = actual;
+                }
+            }
+        }
+        return actual;
+    }
+
+    /**
+     * Cierra el pool compartido y todas sus conexiones inactivas.
+     */
+    public static synchronized void cerrarPool() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    /**
+     * Obtiene la conexión de sesión de la aplicación de consola: la usan el usuario conectado,
+     * su carrito y sus métodos de pago mientras dure la sesión, así que el detector de fugas
+     * del pool no la vigila. Las operaciones puntuales piden su propia conexión a
+     * {@link #getDataSource()}. Al cerrarla vuelve al pool.
+     */
     public Connection conectar() {
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS);
+            connection = getDataSource().getConexionSesion();
             return connection;
-        } catch (ClassNotFoundException | SQLException ex) {
+        } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error de conexión", ex);
             return null;
         }
@@ -33,4 +75,4 @@ public class ConexionBaseDatos {
             LOGGER.log(Level.SEVERE, "Error al cerrar conexión", ex);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package mivalgamer.app;
+
+/**
+ * Conjunto de valores long sin objetos envoltorio: tabla de direccionamiento abierto con
+ * sondeo lineal sobre un long[]. Solo admite altas, que es lo que necesitan los ids de la
+ * biblioteca (un juego comprado no se pierde). Es seguro entre hilos; las consultas son
+ * O(1) y no reservan memoria.
+ */
+final class ConjuntoLong {
+    // Marca de hueco libre; el 0 se guarda aparte
+    private static final long VACIO = 0L;
+    private static final int CAPACIDAD_MINIMA = 16;
+
+    private long[] tabla;
+    private int mascara;
+    private int tamano;
+    private boolean contieneCero;
+
+    ConjuntoLong(int esperados) {
+        int capacidad = CAPACIDAD_MINIMA;
+        // Carga máxima del 50 %
+        while (capacidad < esperados * 2) {
+            capacidad <<= 1;
+        }
+        this.tabla = new long[capacidad];
+        this.mascara = capacidad - 1;
+    }
+
+    synchronized boolean contiene(long valor) {
+        return valor == VACIO ? contieneCero : tabla[buscar(tabla, mascara, valor)] == valor;
+    }
+
+    /**
+     * Para cada valor indica si está en el conjunto, consultando todos bajo un único cerrojo.
+     */
+    synchronized boolean[] contieneTodos(long[] valores) {
+        boolean[] resultado = new boolean[valores.length];
+        for (int i = 0; i < valores.length; i++) {
+            long valor = valores[i];
+            resultado[i] = valor == VACIO ? contieneCero : tabla[buscar(tabla, mascara, valor)] == valor;
+        }
+        return resultado;
+    }
+
+    /**
+     * Añade el valor. Devuelve false si ya estaba.
+     */
+    synchronized boolean agregar(long valor) {
+        if (valor == VACIO) {
+            if (contieneCero) {
+                return false;
+            }
+            contieneCero = true;
+            tamano++;
+            return true;
+        }
+        int posicion = buscar(tabla, mascara, valor);
+        if (tabla[posicion] == valor) {
+            return false;
+        }
+        tabla[posicion] = valor;
+        tamano++;
+        if (tamano * 2 > tabla.length) {
+            crecer();
+        }
+        return true;
+    }
+
+    synchronized int tamano() {
+        return tamano;
+    }
+
+    private void crecer() {
+        long[] nueva = new long[tabla.length * 2];
+        int nuevaMascara = nueva.length - 1;
+        for (long valor : tabla) {
+            if (valor != VACIO) {
+                nueva[buscar(nueva, nuevaMascara, valor)] = valor;
+            }
+        }
+        tabla = nueva;
+        mascara = nuevaMascara;
+    }
+
+    // Posición del valor o del primer hueco libre de su secuencia de sondeo
+    private static int buscar(long[] tabla, int mascara, long valor) {
+        int posicion = mezclar(valor) & mascara;
+        while (tabla[posicion] != VACIO && tabla[posicion] != valor) {
+            posicion = (posicion + 1) & mascara;
+        }
+        return posicion;
+    }
+
+    // Los ids autoincrementales son consecutivos; se mezclan para no formar racimos
+    private static int mezclar(long valor) {
+        long h = valor * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -34,6 +34,9 @@ public class RegisterController {
         try {
             Usuario usuario = autentificacion.registrarUsuario(nombre, email, password);
             showAlert("Registro Exitoso", "Usuario registrado: " + usuario.getNombre() + " (" + usuario.getEmail() + ")");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // Datos inválidos o cola de hashes llena: el mensaje ya es para el usuario
+            showAlert("Error", e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             showAlert("Error", "Ha ocurrido un error al registrar el usuario.");
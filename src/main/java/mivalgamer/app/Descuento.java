@@ -6,19 +6,19 @@ import java.time.format.DateTimeFormatter;
 public class Descuento {
     private final String codigo;
     private final String nombre;
-    private final double porcentaje;
+    private final long porcentaje; // puntos básicos: 1500 = 15 %
     private final LocalDateTime fechaInicio;
     private final LocalDateTime fechaExpiracion;
     private final boolean esAcumulable;
     private final String tituloJuego;
     private final String estudioJuego;
-    private final double precioOriginal;
+    private final long precioOriginal; // centavos
 
     // Constructor desde BD
-    public Descuento(String codigo, String nombre, double porcentaje,
+    public Descuento(String codigo, String nombre, long porcentaje,
                      LocalDateTime fechaInicio, LocalDateTime fechaExpiracion,
                      boolean esAcumulable, String tituloJuego, String estudioJuego,
-                     double precioOriginal) {
+                     long precioOriginal) {
         this.codigo = codigo;
         this.nombre = nombre;
         this.porcentaje = porcentaje;
@@ -33,18 +33,25 @@ public class Descuento {
     public String obtenerInfoDescuento() {
         return String.format(
                 "%s - %s\n" +
-                        "   Precio original: $%.2f\n" +
-                        "   Precio con %.0f%% OFF: $%.2f\n" +
+                        "   Precio original: $%s\n" +
+                        "   Precio con %.0f%% OFF: $%s\n" +
                         "   Válido hasta: %s\n" +
                         "-----------------------------------",
-                tituloJuego, estudioJuego, precioOriginal, porcentaje,
-                calcularPrecioConDescuento(),
+                tituloJuego, estudioJuego, Monto.formatear(precioOriginal), getPorcentaje(),
+                Monto.formatear(calcularPrecioConDescuentoCentavos()),
                 fechaExpiracion.format(DateTimeFormatter.ISO_LOCAL_DATE)
         );
     }
 
+    public long calcularPrecioConDescuentoCentavos() {
+        if (!esVigente()) {
+            return precioOriginal;
+        }
+        return precioOriginal - Monto.aplicarTasa(precioOriginal, porcentaje, Monto.REDONDEO);
+    }
+
     public double calcularPrecioConDescuento() {
-        return esVigente() ? precioOriginal * (1 - porcentaje / 100) : precioOriginal;
+        return Monto.aDouble(calcularPrecioConDescuentoCentavos());
     }
 
     public boolean esVigente() {
@@ -55,7 +62,8 @@ public class Descuento {
     // Getters
     public String getCodigo() { return codigo; }
     public String getNombre() { return nombre; }
-    public double getPorcentaje() { return porcentaje; }
+    public double getPorcentaje() { return porcentaje / 100.0; }
+    public long getPorcentajePuntosBasicos() { return porcentaje; }
     public LocalDateTime getFechaExpiracion() { return fechaExpiracion; }
     public boolean isEsAcumulable() { return esAcumulable; }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package mivalgamer.app;
+
+/**
+ * Resultado de las validaciones de {@link Validador}. OK indica que el valor es válido;
+ * el resto lleva el mensaje que se muestra al usuario.
+ */
+public enum ErrorValidacion {
+    OK(""),
+
+    PASSWORD_CORTA("La contraseña debe tener al menos 8 caracteres"),
+    PASSWORD_SIN_MAYUSCULA("La contraseña debe tener al menos una mayúscula"),
+    PASSWORD_SIN_MINUSCULA("La contraseña debe tener al menos una minúscula"),
+    PASSWORD_SIN_NUMERO("La contraseña debe tener al menos un número"),
+
+    EMAIL_VACIO("Introduce un correo electrónico"),
+    EMAIL_FORMATO("Formato de correo inválido"),
+    EMAIL_DOMINIO("Dominio inválido. Por favor, ingrese un correo con dominio válido.\n" +
+            "Ejemplos válidos: usuario@gmail.com, usuario@hotmail.com, usuario@outlook.com"),
+
+    TARJETA_FORMATO("Introduce una tarjeta valida (10 dígitos numéricos)"),
+    TARJETA_CONTROL("El número de tarjeta no es válido (dígito de control incorrecto)"),
+    CVV_FORMATO("CVV no valido"),
+
+    FECHA_VACIA("Por favor ingrese una tarjeta valida"),
+    FECHA_FORMATO("Formato de fecha inválido (YYYY-MM-DD)"),
+    FECHA_MES_INVALIDO("Mes de expiración inválido"),
+    FECHA_DIA_INVALIDO("Día de expiración inválido"),
+    FECHA_CADUCADA("Tarjeta caducada");
+
+    private final String mensaje;
+
+    ErrorValidacion(String mensaje) {
+        this.mensaje = mensaje;
+    }
+
+    public String getMensaje() {
+        return mensaje;
+    }
+
+    public boolean esValido() {
+        return this == OK;
+    }
+
+    /**
+     * Lanza IllegalArgumentException con el mensaje si no es OK.
+     */
+    public void exigir() {
+        if (this != OK) {
+            throw new IllegalArgumentException(mensaje);
+        }
+    }
+}
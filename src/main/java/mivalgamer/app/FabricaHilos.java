@@ -0,0 +1,24 @@
+package mivalgamer.app;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crea hilos demonio con nombre para las tareas en segundo plano de la aplicación,
+ * de forma que no impidan que la JVM termine.
+ */
+class FabricaHilos implements ThreadFactory {
+    private final String prefijo;
+    private final AtomicInteger contador = new AtomicInteger();
+
+    FabricaHilos(String prefijo) {
+        this.prefijo = prefijo;
+    }
+
+    @Override
+    public Thread newThread(Runnable tarea) {
+        Thread hilo = new Thread(tarea, prefijo + "-" + contador.incrementAndGet());
+        hilo.setDaemon(true);
+        return hilo;
+    }
+}
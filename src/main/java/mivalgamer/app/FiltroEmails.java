@@ -0,0 +1,299 @@
+package mivalgamer.app;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Filtro de Bloom con los emails registrados (en minúsculas).
+ * Si el filtro dice que un email no está, seguro que no está: el login puede rechazarlo y
+ * el registro darlo por libre sin consultar la BD. Si dice que sí, hay que confirmarlo.
+ * Se construye recorriendo la tabla usuario en modo streaming y se actualiza con cada
+ * registro. Mientras no termina la primera construcción no descarta nada.
+ * Los registros hechos desde otras instancias no pasan por agregar(): el filtro compartido
+ * se reconstruye cada -Dmivalgamer.emails.reconstruirMs (5 minutos por defecto) para
+ * recogerlos, así que un email registrado en otra instancia puede tardar ese tiempo en
+ * poder iniciar sesión en esta.
+ */
+public class FiltroEmails implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(FiltroEmails.class.getName());
+
+    private static volatile FiltroEmails global;
+
+    private final DataSource dataSource;
+    private final long esperados;
+    private final double tasaObjetivo;
+
+    // Filtro en uso y, durante una reconstrucción, el que se está llenando
+    private volatile Bits actual;
+    private volatile Bits enConstruccion;
+    private final AtomicBoolean reconstruyendo = new AtomicBoolean();
+    private ScheduledExecutorService reconstruccionPeriodica;
+
+    private final AtomicLong consultas = new AtomicLong();
+    private final AtomicLong descartes = new AtomicLong();
+    private final AtomicLong reconstrucciones = new AtomicLong();
+
+    public FiltroEmails(DataSource dataSource, long esperados, double tasaObjetivo) {
+        if (dataSource == null || esperados <= 0 || tasaObjetivo <= 0 || tasaObjetivo >= 1) {
+            throw new IllegalArgumentException("Parámetros inválidos para el filtro de emails");
+        }
+        this.dataSource = dataSource;
+        this.esperados = esperados;
+        this.tasaObjetivo = tasaObjetivo;
+    }
+
+    /**
+     * Filtro compartido. La primera llamada lanza su construcción en segundo plano.
+     */
+    public static FiltroEmails global() {
+        FiltroEmails filtro = global;
+        if (filtro == null) {
+            synchronized (FiltroEmails.class) {
+                filtro = global;
+                if (filtro == null) {
+                    filtro = new FiltroEmails(ConexionBaseDatos.getDataSource(),
+                            Long.getLong("mivalgamer.emails.esperados", 100_000L),
+                            Double.parseDouble(System.getProperty("mivalgamer.emails.tasaFalsosPositivos", "0.01")));
+                    global = filtro;
+                    long periodoMs = Long.getLong("mivalgamer.emails.reconstruirMs", 300_000L);
+                    if (periodoMs > 0) {
+                        filtro.programarReconstruccion(periodoMs);
+                    } else {
+                        filtro.reconstruirEnSegundoPlano();
+                    }
+                }
+            }
+        }
+        return filtro;
+    }
+
+    /**
+     * Detiene la reconstrucción periódica del filtro compartido. Debe llamarse antes de cerrar el pool.
+     */
+    public static synchronized void cerrarGlobal() {
+        if (global != null) {
+            global.close();
+            global = null;
+        }
+    }
+
+    /**
+     * false solo si el email seguro que no está registrado.
+     */
+    public boolean podriaExistir(String email) {
+        Bits bits = actual;
+        if (bits == null) {
+            return true;
+        }
+        consultas.incrementAndGet();
+        if (bits.contiene(email)) {
+            return true;
+        }
+        descartes.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Añade un email recién registrado (llamar después de confirmar el INSERT).
+     */
+    public void agregar(String email) {
+        // Primero el filtro en construcción: reconstruir() publica el nuevo en 'actual' antes
+        // de retirarlo de 'enConstruccion', así que en este orden nunca se pierde un email
+        Bits nuevo = enConstruccion;
+        Bits bits = actual;
+        if (nuevo != null) {
+            nuevo.agregar(email);
+        }
+        if (bits != null && bits != nuevo) {
+            bits.agregar(email);
+        }
+    }
+
+    public void reconstruirEnSegundoPlano() {
+        Thread hilo = new FabricaHilos("filtro-emails").newThread(() -> {
+            try {
+                reconstruir();
+            } catch (SQLException ex) {
+                LOGGER.log(Level.WARNING, "No se pudo construir el filtro de emails", ex);
+            }
+        });
+        hilo.start();
+    }
+
+    /**
+     * Construye el filtro ahora y lo vuelve a construir cada {@code periodoMs}.
+     */
+    public synchronized void programarReconstruccion(long periodoMs) {
+        if (periodoMs <= 0) {
+            throw new IllegalArgumentException("Periodo de reconstrucción inválido: " + periodoMs);
+        }
+        if (reconstruccionPeriodica != null) {
+            throw new IllegalStateException("La reconstrucción periódica ya está programada");
+        }
+        reconstruccionPeriodica = Executors.newSingleThreadScheduledExecutor(new FabricaHilos("filtro-emails"));
+        reconstruccionPeriodica.scheduleWithFixedDelay(() -> {
+            try {
+                reconstruir();
+            } catch (SQLException | RuntimeException ex) {
+                // Se sigue con el filtro anterior hasta el siguiente intento
+                LOGGER.log(Level.WARNING, "No se pudo reconstruir el filtro de emails", ex);
+            }
+        }, 0, periodoMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (reconstruccionPeriodica != null) {
+            reconstruccionPeriodica.shutdownNow();
+        }
+    }
+
+    /**
+     * Vuelve a llenar el filtro desde la tabla usuario y lo sustituye al terminar.
+     * El tamaño se recalcula con el número actual de usuarios.
+     */
+    public void reconstruir() throws SQLException {
+        if (!reconstruyendo.compareAndSet(false, true)) {
+            return;
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            long usuarios;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM usuario")) {
+                usuarios = rs.next() ? rs.getLong(1) : 0;
+            }
+            Bits nuevo = Bits.dimensionar(Math.max(esperados, usuarios * 2), tasaObjetivo);
+            // Se publica antes de leer: lo registrado a partir de aquí llega por agregar()
+            enConstruccion = nuevo;
+
+            try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Con Connector/J, MIN_VALUE hace que las filas lleguen una a una sin cargarse en memoria
+                stmt.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet rs = stmt.executeQuery("SELECT email FROM usuario")) {
+                    while (rs.next()) {
+                        String email = rs.getString(1);
+                        if (email != null) {
+                            nuevo.agregar(email);
+                        }
+                    }
+                }
+            }
+            actual = nuevo;
+            reconstrucciones.incrementAndGet();
+            LOGGER.info("Filtro de emails construido: " + nuevo.getElementos() + " emails, " +
+                    nuevo.numBits + " bits, " + nuevo.numFunciones + " funciones");
+        } finally {
+            enConstruccion = null;
+            reconstruyendo.set(false);
+        }
+    }
+
+    // Métricas
+    public boolean isConstruido() { return actual != null; }
+    public long getConsultas() { return consultas.get(); }
+    public long getDescartes() { return descartes.get(); }
+    public long getReconstrucciones() { return reconstrucciones.get(); }
+
+    public long getElementos() {
+        Bits bits = actual;
+        return bits == null ? 0 : bits.getElementos();
+    }
+
+    public long getTamanoBits() {
+        Bits bits = actual;
+        return bits == null ? 0 : bits.numBits;
+    }
+
+    /**
+     * Tasa de falsos positivos estimada con los elementos actuales: (1 - e^(-kn/m))^k.
+     */
+    public double getTasaFalsosPositivos() {
+        Bits bits = actual;
+        if (bits == null) {
+            return 1.0;
+        }
+        double k = bits.numFunciones;
+        return Math.pow(1 - Math.exp(-k * bits.getElementos() / bits.numBits), k);
+    }
+
+    private static final class Bits {
+        private final AtomicLongArray palabras;
+        private final long numBits;
+        private final int numFunciones;
+        private final AtomicLong elementos = new AtomicLong();
+
+        private Bits(long numBits, int numFunciones) {
+            this.palabras = new AtomicLongArray((int) ((numBits + 63) >>> 6));
+            this.numBits = numBits;
+            this.numFunciones = numFunciones;
+        }
+
+        // m = -n·ln(p) / ln(2)², k = (m/n)·ln(2)
+        static Bits dimensionar(long n, double p) {
+            long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+            m = Math.max(64, Math.min(m, (long) Integer.MAX_VALUE * 64));
+            int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+            return new Bits(m, k);
+        }
+
+        void agregar(String email) {
+            long h1 = hash(email, 0x9E3779B97F4A7C15L);
+            long h2 = hash(email, 0xC2B2AE3D27D4EB4FL) | 1;
+            for (int i = 0; i < numFunciones; i++) {
+                long bit = Math.floorMod(h1 + i * h2, numBits);
+                int indice = (int) (bit >>> 6);
+                long mascara = 1L << bit;
+                long palabra;
+                do {
+                    palabra = palabras.get(indice);
+                    if ((palabra & mascara) != 0) {
+                        break;
+                    }
+                } while (!palabras.compareAndSet(indice, palabra, palabra | mascara));
+            }
+            elementos.incrementAndGet();
+        }
+
+        boolean contiene(String email) {
+            long h1 = hash(email, 0x9E3779B97F4A7C15L);
+            long h2 = hash(email, 0xC2B2AE3D27D4EB4FL) | 1;
+            for (int i = 0; i < numFunciones; i++) {
+                long bit = Math.floorMod(h1 + i * h2, numBits);
+                if ((palabras.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long getElementos() {
+            return elementos.get();
+        }
+
+        // Hash de 64 bits sobre el email en minúsculas, sin crear la cadena en minúsculas
+        private static long hash(String email, long semilla) {
+            long h = semilla;
+            for (int i = 0; i < email.length(); i++) {
+                h ^= Character.toLowerCase(email.charAt(i));
+                h *= 0x100000001B3L;
+            }
+            // Mezcla final (splitmix64) para repartir bien los bits
+            h ^= h >>> 30;
+            h *= 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 27;
+            h *= 0x94D049BB133111EBL;
+            return h ^ (h >>> 31);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package mivalgamer.app;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Generador central de identificadores ordenados en el tiempo.
+ * Cada id es un long de 64 bits: 41 bits de milisegundos desde 2024-01-01 UTC, 10 bits
+ * de nodo (-Dmivalgamer.nodo) y 12 bits de secuencia dentro del mismo milisegundo.
+ * Cada instancia que comparta la BD necesita su propio nodo; sin la propiedad se deriva
+ * uno del nombre de la máquina y del pid, que se anota en el log.
+ * Se entrega como prefijo + 13 caracteres Crockford base32 de ancho fijo, de modo que
+ * el orden alfabético coincide con el de creación y las inserciones van siempre al final
+ * del índice primario. Si el reloj retrocede o se agota la secuencia se sigue a partir
+ * del último id emitido, así que los ids de un nodo nunca se repiten ni retroceden.
+ */
+public final class GeneradorIds {
+    private static final Logger LOGGER = Logger.getLogger(GeneradorIds.class.getName());
+
+    public static final String PREFIJO_PEDIDO = "PED-";
+    public static final String PREFIJO_USUARIO = "USR-";
+    public static final String PREFIJO_TRANSACCION = "TXN-";
+
+    private static final long EPOCA_MS = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+    private static final int BITS_NODO = 10;
+    private static final int BITS_SECUENCIA = 12;
+    private static final int DESPLAZAMIENTO_TIEMPO = BITS_NODO + BITS_SECUENCIA;
+    private static final long MASCARA_SECUENCIA = (1L << BITS_SECUENCIA) - 1;
+    public static final int MAX_NODO = (1 << BITS_NODO) - 1;
+    public static final int MAX_BLOQUE = (int) MASCARA_SECUENCIA + 1;
+
+    private static final char[] BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int LONGITUD_CODIGO = 13;
+
+    private static final GeneradorIds GLOBAL = new GeneradorIds(nodoConfigurado());
+
+    private final int nodo;
+    private final long nodoDesplazado;
+    // Último id entregado (o último de un bloque reservado)
+    private final AtomicLong ultimo = new AtomicLong();
+
+    public GeneradorIds(int nodo) {
+        if (nodo < 0 || nodo > MAX_NODO) {
+            throw new IllegalArgumentException("El nodo debe estar entre 0 y " + MAX_NODO + ": " + nodo);
+        }
+        this.nodo = nodo;
+        this.nodoDesplazado = (long) nodo << BITS_SECUENCIA;
+    }
+
+    // -Dmivalgamer.nodo si se indicó; si no, un nodo derivado de la máquina y el proceso para que
+    // dos instancias arrancadas sin configurar no generen los mismos ids
+    private static int nodoConfigurado() {
+        Integer configurado = Integer.getInteger("mivalgamer.nodo");
+        if (configurado != null) {
+            return configurado;
+        }
+        String maquina;
+        try {
+            maquina = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            maquina = String.valueOf(System.getenv("HOSTNAME"));
+        }
+        long pid = ProcessHandle.current().pid();
+        long h = maquina.hashCode() * 0x9E3779B97F4A7C15L + pid;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        int nodo = (int) (h & MAX_NODO);
+        LOGGER.warning("Sin -Dmivalgamer.nodo: se usa el nodo " + nodo + " derivado de " + maquina +
+                " y el pid " + pid + ". Asigna un nodo distinto a cada instancia que comparta la BD.");
+        return nodo;
+    }
+
+    public static GeneradorIds global() {
+        return GLOBAL;
+    }
+
+    public static String idPedido() {
+        return GLOBAL.nuevoId(PREFIJO_PEDIDO);
+    }
+
+    public static String idUsuario() {
+        return GLOBAL.nuevoId(PREFIJO_USUARIO);
+    }
+
+    public static String idTransaccion() {
+        return GLOBAL.nuevoId(PREFIJO_TRANSACCION);
+    }
+
+    public long siguiente() {
+        return reservar(1);
+    }
+
+    public String nuevoId(String prefijo) {
+        return formatear(prefijo, siguiente());
+    }
+
+    /**
+     * Reserva de una vez {@code cantidad} ids consecutivos (como máximo {@link #MAX_BLOQUE}).
+     * El bloque no es seguro entre hilos: está pensado para que un solo hilo lo consuma
+     * sin volver a tocar el contador compartido.
+     */
+    public Bloque reservarBloque(int cantidad) {
+        if (cantidad <= 0 || cantidad > MAX_BLOQUE) {
+            throw new IllegalArgumentException("Tamaño de bloque inválido: " + cantidad);
+        }
+        long primero = reservar(cantidad);
+        return new Bloque(primero, primero + cantidad - 1);
+    }
+
+    private long reservar(int cantidad) {
+        while (true) {
+            long anterior = ultimo.get();
+            long tiempoAnterior = anterior >>> DESPLAZAMIENTO_TIEMPO;
+            long ahora = System.currentTimeMillis() - EPOCA_MS;
+            long tiempo;
+            long secuencia;
+            if (ahora > tiempoAnterior) {
+                tiempo = ahora;
+                secuencia = 0;
+            } else {
+                // Mismo milisegundo o reloj atrasado: se continúa la secuencia del último id
+                tiempo = tiempoAnterior;
+                secuencia = (anterior & MASCARA_SECUENCIA) + 1;
+                if (secuencia + cantidad - 1 > MASCARA_SECUENCIA) {
+                    tiempo++;
+                    secuencia = 0;
+                }
+            }
+            long primero = (tiempo << DESPLAZAMIENTO_TIEMPO) | nodoDesplazado | secuencia;
+            if (ultimo.compareAndSet(anterior, primero + cantidad - 1)) {
+                return primero;
+            }
+        }
+    }
+
+    public int getNodo() {
+        return nodo;
+    }
+
+    /**
+     * Texto de ancho fijo: prefijo seguido de 13 caracteres base32 (Crockford).
+     */
+    public static String formatear(String prefijo, long id) {
+        int inicio = prefijo.length();
+        char[] texto = new char[inicio + LONGITUD_CODIGO];
+        prefijo.getChars(0, inicio, texto, 0);
+        for (int i = texto.length - 1; i >= inicio; i--) {
+            texto[i] = BASE32[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(texto);
+    }
+
+    /**
+     * Instante de creación codificado en un id, útil para diagnóstico.
+     */
+    public static long milisegundosDe(long id) {
+        return (id >>> DESPLAZAMIENTO_TIEMPO) + EPOCA_MS;
+    }
+
+    /**
+     * Ids consecutivos reservados de una vez.
+     */
+    public static final class Bloque {
+        private long siguiente;
+        private final long ultimo;
+
+        private Bloque(long primero, long ultimo) {
+            this.siguiente = primero;
+            this.ultimo = ultimo;
+        }
+
+        public boolean hayMas() {
+            return siguiente <= ultimo;
+        }
+
+        public int restantes() {
+            return (int) (ultimo - siguiente + 1);
+        }
+
+        public long siguiente() {
+            if (siguiente > ultimo) {
+                throw new IllegalStateException("El bloque de ids está agotado");
+            }
+            return siguiente++;
+        }
+
+        public String siguiente(String prefijo) {
+            return formatear(prefijo, siguiente());
+        }
+    }
+}
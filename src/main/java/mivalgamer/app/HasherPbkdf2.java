@@ -0,0 +1,96 @@
+package mivalgamer.app;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * PBKDF2 con HMAC-SHA256 y sal aleatoria, incluido en el JDK.
+ * Formato almacenado: {@code pbkdf2$<iteraciones>$<sal Base64>$<hash Base64>}, así que
+ * al subir el número de iteraciones los hashes antiguos siguen verificándose y se
+ * recalculan en el siguiente login.
+ */
+class HasherPbkdf2 implements PasswordHasher {
+    private static final String PREFIJO = "pbkdf2$";
+    private static final String ALGORITMO = "PBKDF2WithHmacSHA256";
+    private static final int BYTES_SAL = 16;
+    private static final int BITS_HASH = 256;
+
+    private static final Base64.Encoder CODIFICADOR = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODIFICADOR = Base64.getDecoder();
+
+    private final int iteraciones;
+    private final SecureRandom aleatorio = new SecureRandom();
+
+    HasherPbkdf2(int iteraciones) {
+        if (iteraciones < 1_000) {
+            throw new IllegalArgumentException("Demasiado pocas iteraciones para PBKDF2: " + iteraciones);
+        }
+        this.iteraciones = iteraciones;
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] sal = new byte[BYTES_SAL];
+        aleatorio.nextBytes(sal);
+        byte[] derivado = derivar(password, sal, iteraciones);
+        return PREFIJO + iteraciones + '$' + CODIFICADOR.encodeToString(sal) + '$' + CODIFICADOR.encodeToString(derivado);
+    }
+
+    @Override
+    public boolean verificar(String password, String almacenado) {
+        String[] partes = almacenado.split("\\$");
+        if (partes.length != 4) {
+            return false;
+        }
+        try {
+            int iter = Integer.parseInt(partes[1]);
+            byte[] sal = DECODIFICADOR.decode(partes[2]);
+            byte[] esperado = DECODIFICADOR.decode(partes[3]);
+            return MessageDigest.isEqual(derivar(password, sal, iter, esperado.length * 8), esperado);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean admite(String almacenado) {
+        return almacenado.startsWith(PREFIJO);
+    }
+
+    @Override
+    public boolean necesitaRehash(String almacenado) {
+        int inicio = PREFIJO.length();
+        int fin = almacenado.indexOf('$', inicio);
+        if (fin < 0) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(almacenado, inicio, fin, 10) < iteraciones;
+        } catch (NumberFormatException ex) {
+            return true;
+        }
+    }
+
+    int getIteraciones() {
+        return iteraciones;
+    }
+
+    private static byte[] derivar(String password, byte[] sal, int iteraciones) {
+        return derivar(password, sal, iteraciones, BITS_HASH);
+    }
+
+    private static byte[] derivar(String password, byte[] sal, int iteraciones, int bits) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), sal, iteraciones, bits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITMO).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error al encriptar contraseña", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
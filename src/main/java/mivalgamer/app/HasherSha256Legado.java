@@ -0,0 +1,49 @@
+package mivalgamer.app;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash histórico: SHA-256 sin sal en hexadecimal (64 caracteres).
+ * Solo se usa para verificar contraseñas antiguas; tras un login correcto se recalculan
+ * con el algoritmo actual.
+ */
+class HasherSha256Legado implements PasswordHasher {
+    private static final int LONGITUD_HEX = 64;
+
+    @Override
+    public String hash(String password) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            // Mismo charset que usaba Autentificacion (el de la plataforma)
+            return CodificadorHex.codificar(md.digest(password.getBytes()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error al encriptar contraseña", e);
+        }
+    }
+
+    @Override
+    public boolean verificar(String password, String almacenado) {
+        return MessageDigest.isEqual(hash(password).getBytes(StandardCharsets.US_ASCII),
+                almacenado.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public boolean admite(String almacenado) {
+        if (almacenado.length() != LONGITUD_HEX) {
+            return false;
+        }
+        for (int i = 0; i < LONGITUD_HEX; i++) {
+            if (Character.digit(almacenado.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean necesitaRehash(String almacenado) {
+        return true;
+    }
+}
@@ -1,7 +1,11 @@
 package mivalgamer.app;
+import javax.sql.DataSource;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -9,70 +13,163 @@ public class HistorialCompras {
     private static final Logger LOGGER = Logger.getLogger(HistorialCompras.class.getName());
 
     private final Usuario usuario;
-    private final Connection connection;
+    // Cada consulta pide su propia conexión y la devuelve al terminar
+    private final DataSource dataSource;
 
-    public HistorialCompras(Usuario usuario, Connection connection) {
-        if (usuario == null || connection == null) {
-            throw new IllegalArgumentException("Parámetros inválidos");
-        }
-        this.usuario = usuario;
-        this.connection = connection;
+    /**
+     * Órdenes del historial paginado, de mayor a menor. Cada uno desempata por id_pedido.
+     */
+    public enum Orden {
+        FECHA,
+        TOTAL
     }
 
-    public void registrarPedido(Pedido pedido) {
-        String sql = "INSERT INTO historial_compras (id_usuario, id_pedido, fecha_compra, total) "
-                + "VALUES (?, ?, ?, ?)";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, usuario.getIdUsuario());
-            stmt.setString(2, pedido.getIdPedido());
-            stmt.setDate(3, Date.valueOf(pedido.getFechaCreacion().toLocalDate()));
-            stmt.setDouble(4, pedido.getTotal());
-            stmt.executeUpdate();
-        } catch (SQLException ex) {
-            LOGGER.log(Level.SEVERE, "Error al registrar pedido", ex);
-            throw new RuntimeException("Error en historial", ex);
+    public HistorialCompras(Usuario usuario, DataSource dataSource) {
+        if (usuario == null || dataSource == null) {
+            throw new IllegalArgumentException("Parámetros inválidos");
         }
+        this.usuario = usuario;
+        this.dataSource = dataSource;
     }
 
+    /**
+     * Carga el historial completo. Para historiales largos usar
+     * {@link #getPedidos(Orden, int, String)} o {@link #recorrerPedidos(Orden, int)}.
+     */
     public List<Pedido> getPedidosRecientes() {
         List<Pedido> pedidos = new ArrayList<>();
         String sql = "SELECT p.* FROM pedido p WHERE p.id_usuario = ? ORDER BY p.fecha_creacion DESC";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, usuario.getIdUsuario());
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, usuario.getIdUsuario());
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    pedidos.add(mapPedido(rs));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        pedidos.add(mapPedido(rs));
+                    }
                 }
             }
+            cargarItems(conn, pedidos);
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error al obtener pedidos", ex);
         }
         return pedidos;
     }
 
+    /**
+     * Una página del historial en el orden indicado, con los items de sus pedidos ya cargados.
+     *
+     * @param token null para la primera página, o {@link Pagina#getSiguiente()} de la anterior
+     */
+    public Pagina<Pedido> getPedidos(Orden orden, int tamano, String token) throws SQLException {
+        if (orden == null || tamano <= 0) {
+            throw new IllegalArgumentException("Orden y tamaño de página obligatorios");
+        }
+        String[] desde = Pagina.leerToken(token, orden.name());
+
+        String sql = switch (orden) {
+            case FECHA -> "SELECT p.* FROM pedido p WHERE p.id_usuario = ?" +
+                    (desde == null ? "" : " AND (p.fecha_creacion < ? OR (p.fecha_creacion = ? AND p.id_pedido < ?))") +
+                    " ORDER BY p.fecha_creacion DESC, p.id_pedido DESC LIMIT ?";
+            // El total cobrado está en historial_compras; se recorre su índice y se une el pedido
+            case TOTAL -> "SELECT p.*, h.total FROM historial_compras h " +
+                    "STRAIGHT_JOIN pedido p ON p.id_pedido = h.id_pedido WHERE h.id_usuario = ?" +
+                    (desde == null ? "" : " AND (h.total < ? OR (h.total = ? AND h.id_pedido < ?))") +
+                    " ORDER BY h.total DESC, h.id_pedido DESC LIMIT ?";
+        };
+
+        List<Pedido> pedidos = new ArrayList<>(Math.min(tamano, 1000));
+        String ultimoValor = null;
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                int i = 1;
+                stmt.setString(i++, usuario.getIdUsuario());
+                if (desde != null) {
+                    if (orden == Orden.FECHA) {
+                        Timestamp fecha = Timestamp.valueOf(LocalDateTime.parse(desde[0]));
+                        stmt.setTimestamp(i++, fecha);
+                        stmt.setTimestamp(i++, fecha);
+                    } else {
+                        long total = Long.parseLong(desde[0]);
+                        Monto.escribir(stmt, i++, total);
+                        Monto.escribir(stmt, i++, total);
+                    }
+                    stmt.setString(i++, desde[1]);
+                }
+                // Una fila de más para saber si hay página siguiente
+                stmt.setInt(i, tamano + 1);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (pedidos.size() < tamano && rs.next()) {
+                        Pedido pedido = mapPedido(rs);
+                        pedidos.add(pedido);
+                        ultimoValor = orden == Orden.FECHA
+                                ? pedido.getFechaCreacion().toString()
+                                : String.valueOf(Monto.leer(rs, "total"));
+                    }
+                    if (!rs.next()) {
+                        ultimoValor = null; // última página, sin token
+                    }
+                }
+            }
+            cargarItems(conn, pedidos);
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            throw new IllegalArgumentException("Token de continuación inválido", ex);
+        }
+
+        if (ultimoValor == null) {
+            return new Pagina<>(pedidos, null);
+        }
+        Pedido ultimo = pedidos.get(pedidos.size() - 1);
+        return new Pagina<>(pedidos, Pagina.token(orden.name(), ultimoValor, ultimo.getIdPedido()));
+    }
+
+    /**
+     * Recorre todo el historial página a página (para exportaciones). Nunca tiene en memoria
+     * más de una página.
+     */
+    public Iterable<Pedido> recorrerPedidos(Orden orden, int tamanoPagina) {
+        return () -> Pagina.recorrer(token -> getPedidos(orden, tamanoPagina, token));
+    }
+
+    /**
+     * Carga los items de todos los pedidos en una sola consulta, para que calcular sus
+     * totales no haga una consulta por pedido.
+     */
+    private void cargarItems(Connection conn, List<Pedido> pedidos) throws SQLException {
+        if (pedidos.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(pedidos.size());
+        for (Pedido pedido : pedidos) {
+            ids.add(pedido.getIdPedido());
+        }
+        Map<String, List<ItemPedido>> itemsPorPedido = ItemPedido.obtenerPorPedidos(ids, conn);
+        for (Pedido pedido : pedidos) {
+            pedido.setItems(itemsPorPedido.get(pedido.getIdPedido()));
+        }
+    }
+
     private Pedido mapPedido(ResultSet rs) throws SQLException {
         return new Pedido(
                 rs.getString("id_pedido"),
-                null,// idPedido
+                usuario,                          // usuario
                 rs.getTimestamp("fecha_creacion").toLocalDateTime(), // fechaCreacion
                 rs.getInt("metodo_pago"),      // metodoPagoId
-                rs.getDouble("descuento_total"),  // descuentoTotal
-                rs.getDouble("impuestos"),        // impuestos
+                Monto.leer(rs, "descuento_total"),      // descuentoTotal
+                Monto.leerTasa(rs, "impuestos"),        // impuestos
                 EstadoPedido.desdeString(rs.getString("estado")), // estado
-                connection                        // connection
+                usuario.getConexionSesion()       // connection
         );
     }
 
+    /**
+     * Gasto total del usuario, del {@link ResumenUsuario} de la sesión.
+     */
     public double getGastoTotal() {
-        String sql = "SELECT SUM(total) AS total FROM historial_compras WHERE id_usuario = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, usuario.getIdUsuario());
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next() ? rs.getDouble("total") : 0.0;
-            }
+        try {
+            return usuario.getResumen().getTotalGastado();
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error al calcular gasto", ex);
             return 0.0;
@@ -1,15 +1,14 @@
 package mivalgamer.app;
 
-import java.sql.SQLException;
 import java.util.List;
 
 public class ItemCarrito {
     private final Videojuego videojuego;
     private int cantidad;
-    private final double precioUnitario;
+    private final long precioUnitario; // centavos
 
     // Constructor principal
-    public ItemCarrito(Videojuego videojuego, int cantidad, double precioUnitario) {
+    public ItemCarrito(Videojuego videojuego, int cantidad, long precioUnitario) {
         if (videojuego == null) {
             throw new IllegalArgumentException("Videojuego no puede ser nulo");
         }
@@ -21,8 +20,12 @@ public class ItemCarrito {
         this.precioUnitario = precioUnitario;
     }
 
+    public long calcularSubtotalCentavos() {
+        return Monto.porCantidad(precioUnitario, cantidad);
+    }
+
     public double calcularSubtotal() {
-        return precioUnitario * cantidad;
+        return Monto.aDouble(calcularSubtotalCentavos());
     }
 
     public double getSubtotal() {
@@ -37,10 +40,14 @@ public class ItemCarrito {
     }
 
     // Nuevo método para obtener el precio unitario (necesario para CarritoCompra)
-    public double getPrecioUnitario() {
+    public long getPrecioUnitarioCentavos() {
         return precioUnitario;
     }
 
+    public double getPrecioUnitario() {
+        return Monto.aDouble(precioUnitario);
+    }
+
     // Getter del videojuego
     public Videojuego getVideojuego() {
         return videojuego;
@@ -65,14 +72,12 @@ public class ItemCarrito {
         }
     }
 
-
-
     @Override
     public String toString() {
-        return String.format("%s - %d x $%.2f = $%.2f",
+        return String.format("%s - %d x $%s = $%s",
                 videojuego.getTitulo(),
                 cantidad,
-                precioUnitario,
-                calcularSubtotal());
+                Monto.formatear(precioUnitario),
+                Monto.formatear(calcularSubtotalCentavos()));
     }
 }
\ No newline at end of file
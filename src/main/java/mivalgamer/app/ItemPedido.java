@@ -1,21 +1,25 @@
 package mivalgamer.app;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ItemPedido {
     private final String idPedido;
     private final Videojuego juego;
-    private final double precioUnitario;
+    // Importes en centavos (ver Monto)
+    private final long precioUnitario;
     private final int cantidad;
-    private final double subtotal;
+    private final long subtotal;
 
-    public ItemPedido(String idPedido, Videojuego juego, double precioUnitario, int cantidad) {
+    public ItemPedido(String idPedido, Videojuego juego, long precioUnitario, int cantidad) {
         this.idPedido = idPedido;
         this.juego = juego;
         this.precioUnitario = precioUnitario;
         this.cantidad = cantidad;
-        this.subtotal = precioUnitario * cantidad;
+        this.subtotal = Monto.porCantidad(precioUnitario, cantidad);
     }
 
     public static List<ItemPedido> obtenerPorPedido(String idPedido, Connection conn) throws SQLException {
@@ -32,7 +36,7 @@ public class ItemPedido {
                     items.add(new ItemPedido(
                             rs.getString("id_pedido"),
                             juego,
-                            rs.getDouble("precio_unitario"),
+                            Monto.leer(rs, "precio_unitario"),
                             rs.getInt("cantidad")
                     ));
                 }
@@ -41,10 +45,49 @@ public class ItemPedido {
         return items;
     }
 
+    /**
+     * Items de varios pedidos agrupados por id de pedido, con una consulta por cada tramo de
+     * {@link UtilSql#MAX_PARAMETROS_IN} ids. Todo id pedido aparece en el mapa, aunque su
+     * lista quede vacía.
+     */
+    public static Map<String, List<ItemPedido>> obtenerPorPedidos(Collection<String> idsPedido, Connection conn)
+            throws SQLException {
+        Map<String, List<ItemPedido>> itemsPorPedido = new HashMap<>();
+        for (String id : idsPedido) {
+            itemsPorPedido.putIfAbsent(id, new ArrayList<>());
+        }
+        List<String> ids = new ArrayList<>(itemsPorPedido.keySet());
+        for (int desde = 0; desde < ids.size(); desde += UtilSql.MAX_PARAMETROS_IN) {
+            List<String> tramo = ids.subList(desde, Math.min(ids.size(), desde + UtilSql.MAX_PARAMETROS_IN));
+            String sql = "SELECT ip.*, v.* FROM item_pedido ip " +
+                    "JOIN videojuego v ON ip.id_videojuego = v.id_videojuego " +
+                    "WHERE ip.id_pedido IN (" + UtilSql.marcadores(tramo.size()) + ")";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < tramo.size(); i++) {
+                    stmt.setString(i + 1, tramo.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String idPedido = rs.getString("id_pedido");
+                        itemsPorPedido.get(idPedido).add(new ItemPedido(
+                                idPedido,
+                                Videojuego.fromResultSet(conn, rs),
+                                Monto.leer(rs, "precio_unitario"),
+                                rs.getInt("cantidad")
+                        ));
+                    }
+                }
+            }
+        }
+        return itemsPorPedido;
+    }
+
     // Getters
     public String getIdPedido() { return idPedido; }
     public Videojuego getJuego() { return juego; }
-    public double getPrecioUnitario() { return precioUnitario; }
+    public long getPrecioUnitarioCentavos() { return precioUnitario; }
     public int getCantidad() { return cantidad; }
-    public double getSubtotal() { return subtotal; }
+    public long getSubtotalCentavos() { return subtotal; }
+    public double getPrecioUnitario() { return Monto.aDouble(precioUnitario); }
+    public double getSubtotal() { return Monto.aDouble(subtotal); }
 }
\ No newline at end of file
@@ -0,0 +1,235 @@
+package mivalgamer.app;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Crédito disponible de cada tarjeta de crédito, en memoria.
+ * Por cada método se lleva el importe comprometido (pagos ya registrados en transaccion más
+ * reservas de pedidos en curso) en un AtomicLong que se actualiza con CAS: reservar,
+ * confirmar y liberar son O(1) y dos checkouts simultáneos no pueden pasarse del límite
+ * sin necesidad de SELECT ... FOR UPDATE. Las cuentas viven en un ConcurrentHashMap, así
+ * que métodos distintos no compiten entre sí.
+ *
+ * Se siembra con la suma de transaccion por método y se concilia periódicamente con la BD
+ * (pagos hechos desde otros nodos, cambios de límite). Todas las carreras con la
+ * conciliación dejan el crédito por debajo del real, nunca por encima, y la siguiente
+ * conciliación lo corrige.
+ */
+public class LibroCredito implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(LibroCredito.class.getName());
+
+    private static final String SQL_CUENTAS = "SELECT tc.id_metodo, tc.limite_credito, " +
+            "COALESCE(SUM(t.monto), 0) AS usado FROM tarjeta_credito tc " +
+            "LEFT JOIN transaccion t ON t.id_metodo = tc.id_metodo AND t.tipo = 'PAGO' ";
+
+    private static volatile LibroCredito global;
+
+    private final DataSource dataSource;
+    private final Map<Integer, Cuenta> cuentas = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService conciliador =
+            Executors.newSingleThreadScheduledExecutor(new FabricaHilos("libro-credito"));
+
+    private final AtomicLong reservas = new AtomicLong();
+    private final AtomicLong rechazos = new AtomicLong();
+    private final AtomicLong conciliaciones = new AtomicLong();
+    private final AtomicLong ajustes = new AtomicLong();
+
+    public LibroCredito(DataSource dataSource, long intervaloConciliacionMs) {
+        if (dataSource == null || intervaloConciliacionMs <= 0) {
+            throw new IllegalArgumentException("Parámetros inválidos para el libro de crédito");
+        }
+        this.dataSource = dataSource;
+        // La primera conciliación es la siembra inicial
+        conciliador.scheduleWithFixedDelay(this::conciliarSinFallar, 0, intervaloConciliacionMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static LibroCredito global() {
+        LibroCredito actual = global;
+        if (actual == null) {
+            synchronized (LibroCredito.class) {
+                actual = global;
+                if (actual == null) {
+                    actual = new LibroCredito(ConexionBaseDatos.getDataSource(),
+                            Long.getLong("mivalgamer.credito.conciliacionMs", 60_000L));
+                    global = actual;
+                }
+            }
+        }
+        return actual;
+    }
+
+    public static synchronized void cerrarGlobal() {
+        if (global != null) {
+            global.close();
+            global = null;
+        }
+    }
+
+    /**
+     * Reserva el importe si cabe en el crédito disponible.
+     *
+     * @return false si supera el crédito disponible
+     * @throws SQLException si el método aún no estaba cargado y no se pudo leer
+     */
+    public boolean reservar(int idMetodo, long monto) throws SQLException {
+        if (monto <= 0) {
+            throw new IllegalArgumentException("El importe a reservar debe ser positivo");
+        }
+        Cuenta cuenta = cuenta(idMetodo);
+        // En vuelo antes que comprometido: una conciliación simultánea cuenta la reserva de más, no de menos
+        cuenta.enVuelo.addAndGet(monto);
+        long comprometido;
+        do {
+            comprometido = cuenta.comprometido.get();
+            if (comprometido + monto > cuenta.limite) {
+                cuenta.enVuelo.addAndGet(-monto);
+                rechazos.incrementAndGet();
+                return false;
+            }
+        } while (!cuenta.comprometido.compareAndSet(comprometido, comprometido + monto));
+        reservas.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * El pago reservado quedó registrado en transaccion (llamar tras el commit).
+     */
+    public void confirmar(int idMetodo, long monto) {
+        Cuenta cuenta = cuentas.get(idMetodo);
+        if (cuenta != null) {
+            cuenta.confirmaciones.incrementAndGet();
+            cuenta.enVuelo.addAndGet(-monto);
+        }
+    }
+
+    /**
+     * Devuelve una reserva cuyo pago no llegó a confirmarse.
+     */
+    public void liberar(int idMetodo, long monto) {
+        Cuenta cuenta = cuentas.get(idMetodo);
+        if (cuenta != null) {
+            cuenta.comprometido.addAndGet(-monto);
+            cuenta.enVuelo.addAndGet(-monto);
+        }
+    }
+
+    /**
+     * Crédito disponible en centavos.
+     */
+    public long getDisponible(int idMetodo) throws SQLException {
+        Cuenta cuenta = cuenta(idMetodo);
+        return cuenta.limite - cuenta.comprometido.get();
+    }
+
+    private Cuenta cuenta(int idMetodo) throws SQLException {
+        Cuenta cuenta = cuentas.get(idMetodo);
+        if (cuenta != null) {
+            return cuenta;
+        }
+        // Tarjeta dada de alta después de la última conciliación
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_CUENTAS +
+                     "WHERE tc.id_metodo = ? GROUP BY tc.id_metodo, tc.limite_credito")) {
+            stmt.setInt(1, idMetodo);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Tarjeta de crédito no encontrada: " + idMetodo);
+                }
+                Cuenta nueva = new Cuenta(Monto.leer(rs, "limite_credito"), Monto.leer(rs, "usado"));
+                Cuenta existente = cuentas.putIfAbsent(idMetodo, nueva);
+                return existente != null ? existente : nueva;
+            }
+        }
+    }
+
+    /**
+     * Recalcula lo comprometido de todas las tarjetas como la suma de transaccion más las
+     * reservas en vuelo. Se salta las cuentas con confirmaciones durante la consulta, porque
+     * no se sabe si la suma ya las incluye; se ajustan en la siguiente pasada.
+     */
+    public void conciliar() throws SQLException {
+        Map<Integer, Long> versiones = new HashMap<>();
+        for (Map.Entry<Integer, Cuenta> entrada : cuentas.entrySet()) {
+            versiones.put(entrada.getKey(), entrada.getValue().confirmaciones.get());
+        }
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SQL_CUENTAS + "GROUP BY tc.id_metodo, tc.limite_credito");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int idMetodo = rs.getInt("id_metodo");
+                long limite = Monto.leer(rs, "limite_credito");
+                long usado = Monto.leer(rs, "usado");
+
+                Cuenta cuenta = cuentas.get(idMetodo);
+                if (cuenta == null) {
+                    cuentas.putIfAbsent(idMetodo, new Cuenta(limite, usado));
+                    continue;
+                }
+                Long version = versiones.get(idMetodo);
+                if (version == null || version != cuenta.confirmaciones.get()) {
+                    continue;
+                }
+                cuenta.limite = limite;
+                long comprometido;
+                long objetivo;
+                do {
+                    comprometido = cuenta.comprometido.get();
+                    // Se relee en cada intento para incluir reservas que entraron mientras tanto
+                    objetivo = usado + cuenta.enVuelo.get();
+                } while (!cuenta.comprometido.compareAndSet(comprometido, objetivo));
+                if (objetivo != comprometido) {
+                    ajustes.incrementAndGet();
+                }
+            }
+        }
+        conciliaciones.incrementAndGet();
+    }
+
+    private void conciliarSinFallar() {
+        try {
+            conciliar();
+        } catch (SQLException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "No se pudo conciliar el crédito de las tarjetas", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        conciliador.shutdownNow();
+    }
+
+    // Métricas
+    public int getCuentas() { return cuentas.size(); }
+    public long getReservas() { return reservas.get(); }
+    public long getRechazos() { return rechazos.get(); }
+    public long getConciliaciones() { return conciliaciones.get(); }
+    public long getAjustes() { return ajustes.get(); }
+
+    private static final class Cuenta {
+        private volatile long limite;
+        // Pagos registrados más reservas en curso; el disponible es limite - comprometido
+        private final AtomicLong comprometido;
+        // Reservas todavía no confirmadas ni liberadas
+        private final AtomicLong enVuelo = new AtomicLong();
+        private final AtomicLong confirmaciones = new AtomicLong();
+
+        private Cuenta(long limite, long usado) {
+            this.limite = limite;
+            this.comprometido = new AtomicLong(usado);
+        }
+    }
+}
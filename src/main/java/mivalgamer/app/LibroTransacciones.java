@@ -0,0 +1,302 @@
+package mivalgamer.app;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ingresos acumulados por día (ingreso_diario).
+ * Cada pedido pagado anota un movimiento en movimiento_pendiente dentro de su propia
+ * transacción, así que el movimiento existe si y solo si el pedido se confirmó. Tras el
+ * commit se publica su id y un hilo en segundo plano aplica los movimientos por lotes:
+ * en una transacción bloquea los pendientes, los borra y suma sus importes a los acumulados
+ * con un upsert por día. Todos los pedidos de un día tocan la misma fila, así que agruparlos
+ * evita que cada checkout espere por ella. El total de un día se lee de una fila en lugar
+ * de sumar todo el historial. El gasto por usuario lo lleva {@link ResumenUsuario}.
+ *
+ * Lo que no llega a aplicarse (cola llena, fallo de la BD, JVM terminada) sigue en
+ * movimiento_pendiente y lo recoge el barrido periódico. Un movimiento solo se aplica
+ * desde la transacción que consigue borrarlo, de modo que nunca se cuenta dos veces.
+ */
+public class LibroTransacciones implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(LibroTransacciones.class.getName());
+
+    private static final String SQL_ANOTAR = "INSERT INTO movimiento_pendiente " +
+            "(id_pedido, fecha, monto) VALUES (?, ?, ?)";
+    private static final String SQL_SUMAR_DIA = "INSERT INTO ingreso_diario (fecha, total, pedidos) " +
+            "VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE total = total + VALUES(total), pedidos = pedidos + VALUES(pedidos)";
+
+    private static volatile LibroTransacciones global;
+
+    private final DataSource dataSource;
+    private final int maxLote;
+    private final BlockingQueue<String> publicados;
+    private final Object volcadoLock = new Object();
+    private final ScheduledExecutorService volcador =
+            Executors.newSingleThreadScheduledExecutor(new FabricaHilos("libro-transacciones"));
+
+    private final AtomicLong aplicados = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+
+    public LibroTransacciones(DataSource dataSource, int capacidad, int maxLote,
+                              long intervaloMs, long intervaloBarridoMs) {
+        if (dataSource == null || capacidad <= 0 || maxLote <= 0 || maxLote > UtilSql.MAX_PARAMETROS_IN
+                || intervaloMs <= 0 || intervaloBarridoMs <= 0) {
+            throw new IllegalArgumentException("Parámetros inválidos para el libro de transacciones");
+        }
+        this.dataSource = dataSource;
+        this.maxLote = maxLote;
+        this.publicados = new ArrayBlockingQueue<>(capacidad);
+        volcador.scheduleWithFixedDelay(this::volcar, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+        // El primer barrido recoge lo que dejó pendiente la ejecución anterior
+        volcador.scheduleWithFixedDelay(this::barrer, 0, intervaloBarridoMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static LibroTransacciones global() {
+        LibroTransacciones actual = global;
+        if (actual == null) {
+            synchronized (LibroTransacciones.class) {
+                actual = global;
+                if (actual == null) {
+                    actual = new LibroTransacciones(ConexionBaseDatos.getDataSource(),
+                            Integer.getInteger("mivalgamer.libro.capacidad", 10_000),
+                            Integer.getInteger("mivalgamer.libro.maxLote", 500),
+                            Long.getLong("mivalgamer.libro.volcadoMs", 500L),
+                            Long.getLong("mivalgamer.libro.barridoMs", 60_000L));
+                    global = actual;
+                }
+            }
+        }
+        return actual;
+    }
+
+    /**
+     * Aplica lo publicado y detiene el libro compartido. Debe llamarse antes de cerrar el pool.
+     */
+    public static synchronized void cerrarGlobal() {
+        if (global != null) {
+            global.close();
+            global = null;
+        }
+    }
+
+    /**
+     * Anota el cobro de un pedido en la transacción abierta en la conexión. Se aplicará a
+     * los acumulados cuando se publique o, si no, en el siguiente barrido.
+     */
+    static void anotar(Connection conn, String idPedido, LocalDate fecha, long monto) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_ANOTAR)) {
+            stmt.setString(1, idPedido);
+            stmt.setDate(2, Date.valueOf(fecha));
+            Monto.escribir(stmt, 3, monto);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Avisa de que el movimiento del pedido ya está confirmado (llamar tras el commit).
+     * Nunca bloquea: con la cola llena el movimiento espera al barrido.
+     */
+    public void publicar(String idPedido) {
+        if (!publicados.offer(idPedido)) {
+            descartados.incrementAndGet();
+        }
+    }
+
+    /**
+     * Aplica los movimientos publicados en lotes de como mucho maxLote. Si un lote falla
+     * sus movimientos quedan para el barrido.
+     */
+    public void volcar() {
+        synchronized (volcadoLock) {
+            List<String> lote = new ArrayList<>(maxLote);
+            while (publicados.drainTo(lote, maxLote) > 0) {
+                aplicarSinFallar(lote);
+                lote.clear();
+            }
+        }
+    }
+
+    /**
+     * Aplica todos los movimientos que sigan en movimiento_pendiente, hayan sido publicados
+     * o no.
+     */
+    public void barrer() {
+        synchronized (volcadoLock) {
+            String sql = "SELECT id_pedido FROM movimiento_pendiente LIMIT " + maxLote;
+            List<String> lote = new ArrayList<>(maxLote);
+            do {
+                lote.clear();
+                try (Connection conn = dataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        lote.add(rs.getString(1));
+                    }
+                } catch (SQLException ex) {
+                    fallos.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "No se pudieron leer los movimientos pendientes", ex);
+                    return;
+                }
+            } while (!lote.isEmpty() && aplicarSinFallar(lote) && lote.size() == maxLote);
+        }
+    }
+
+    private boolean aplicarSinFallar(List<String> idsPedido) {
+        try {
+            aplicar(idsPedido);
+            return true;
+        } catch (SQLException ex) {
+            fallos.incrementAndGet();
+            LOGGER.log(Level.WARNING, "No se pudo aplicar un lote de " + idsPedido.size() +
+                    " movimientos; se reintentará en el barrido", ex);
+            return false;
+        }
+    }
+
+    private void aplicar(List<String> idsPedido) throws SQLException {
+        String marcadores = UtilSql.marcadores(idsPedido.size());
+        // Orden fijo para que lotes concurrentes de varios nodos bloqueen filas en el mismo orden
+        Map<LocalDate, long[]> porDia = new TreeMap<>(); // fecha -> {total, pedidos}
+        List<String> bloqueados = new ArrayList<>(idsPedido.size());
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Lo que ya aplicó otro lote o nodo no aparece: solo se suma lo que este lote borra
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT id_pedido, fecha, monto " +
+                        "FROM movimiento_pendiente WHERE id_pedido IN (" + marcadores + ") " +
+                        "ORDER BY id_pedido FOR UPDATE")) {
+                    for (int i = 0; i < idsPedido.size(); i++) {
+                        stmt.setString(i + 1, idsPedido.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            long monto = Monto.leer(rs, "monto");
+                            bloqueados.add(rs.getString("id_pedido"));
+                            sumar(porDia.computeIfAbsent(rs.getDate("fecha").toLocalDate(), k -> new long[2]), monto);
+                        }
+                    }
+                }
+                if (bloqueados.isEmpty()) {
+                    conn.rollback();
+                    return;
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM movimiento_pendiente " +
+                        "WHERE id_pedido IN (" + UtilSql.marcadores(bloqueados.size()) + ")")) {
+                    for (int i = 0; i < bloqueados.size(); i++) {
+                        stmt.setString(i + 1, bloqueados.get(i));
+                    }
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_SUMAR_DIA)) {
+                    for (Map.Entry<LocalDate, long[]> entrada : porDia.entrySet()) {
+                        stmt.setDate(1, Date.valueOf(entrada.getKey()));
+                        Monto.escribir(stmt, 2, entrada.getValue()[0]);
+                        stmt.setLong(3, entrada.getValue()[1]);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        }
+        lotes.incrementAndGet();
+        aplicados.addAndGet(bloqueados.size());
+    }
+
+    private static void sumar(long[] acumulado, long monto) {
+        acumulado[0] = Monto.sumar(acumulado[0], monto);
+        acumulado[1]++;
+    }
+
+    /**
+     * Ingresos de los días entre desde y hasta (ambos incluidos) en centavos, con los
+     * movimientos aún sin aplicar. Lee una fila por día. Es una sola sentencia, así que ve
+     * ambas tablas en la misma instantánea y un lote aplicado a la vez no se cuenta dos veces
+     * ni se pierde.
+     */
+    public static long leerIngresos(Connection conn, LocalDate desde, LocalDate hasta) throws SQLException {
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("Rango de fechas inválido");
+        }
+        String sql = "SELECT COALESCE((SELECT SUM(total) FROM ingreso_diario WHERE fecha BETWEEN ? AND ?), 0) + " +
+                "COALESCE((SELECT SUM(monto) FROM movimiento_pendiente WHERE fecha BETWEEN ? AND ?), 0) AS total";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setDate(1, Date.valueOf(desde));
+            stmt.setDate(2, Date.valueOf(hasta));
+            stmt.setDate(3, Date.valueOf(desde));
+            stmt.setDate(4, Date.valueOf(hasta));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? Monto.leer(rs, "total") : Monto.CERO;
+            }
+        }
+    }
+
+    public static long leerIngresosDia(Connection conn, LocalDate fecha) throws SQLException {
+        return leerIngresos(conn, fecha, fecha);
+    }
+
+    /**
+     * Recalcula los ingresos diarios desde historial_compras, que tiene una fila por pedido pagado.
+     * Para reparaciones manuales: recorre todo el historial y debe ejecutarse sin pedidos
+     * en curso.
+     */
+    public void reconstruir() throws SQLException {
+        synchronized (volcadoLock) {
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement borrarPendientes = conn.prepareStatement("DELETE FROM movimiento_pendiente");
+                     PreparedStatement borrarDias = conn.prepareStatement("DELETE FROM ingreso_diario");
+                     PreparedStatement dias = conn.prepareStatement("INSERT INTO ingreso_diario " +
+                             "(fecha, total, pedidos) SELECT fecha_compra, SUM(total), COUNT(*) " +
+                             "FROM historial_compras GROUP BY fecha_compra")) {
+                    borrarPendientes.executeUpdate();
+                    borrarDias.executeUpdate();
+                    dias.executeUpdate();
+                    conn.commit();
+                } catch (SQLException ex) {
+                    conn.rollback();
+                    throw ex;
+                }
+            }
+            // Ya contados en la reconstrucción
+            publicados.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        volcador.shutdown();
+        volcar();
+    }
+
+    // Métricas
+    public int getEnCola() { return publicados.size(); }
+    public long getAplicados() { return aplicados.get(); }
+    public long getDescartados() { return descartados.get(); }
+    public long getLotes() { return lotes.get(); }
+    public long getFallos() { return fallos.get(); }
+}
@@ -0,0 +1,143 @@
+package mivalgamer.app;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limitador de intentos por clave (email u origen) con cubeta de fichas.
+ * Cada clave guarda un único instante teórico de llegada (algoritmo GCRA): admite ráfagas
+ * de hasta {@code capacidad} intentos y repone una ficha cada {@code 60 s / porMinuto}.
+ * Las claves se reparten en franjas con su propio cerrojo, de modo que cada comprobación
+ * es O(1) y los hilos solo compiten si caen en la misma franja. Un hilo en segundo plano
+ * elimina las claves inactivas, que de todos modos ya tendrían la cubeta llena.
+ */
+public class LimitadorIntentos implements AutoCloseable {
+    // Origen usado por la consola y la interfaz de escritorio
+    public static final String ORIGEN_LOCAL = "local";
+
+    private static final LimitadorIntentos POR_EMAIL = new LimitadorIntentos("email",
+            Integer.getInteger("mivalgamer.login.rafagaEmail", 5),
+            Integer.getInteger("mivalgamer.login.porMinutoEmail", 5),
+            600_000L, 64);
+    private static final LimitadorIntentos POR_ORIGEN = new LimitadorIntentos("origen",
+            Integer.getInteger("mivalgamer.login.rafagaOrigen", 50),
+            Integer.getInteger("mivalgamer.login.porMinutoOrigen", 120),
+            600_000L, 64);
+
+    private final long intervaloNanos;
+    private final long toleranciaNanos;
+    private final long inactividadNanos;
+    private final Franja[] franjas;
+    private final int mascara;
+    private final ScheduledExecutorService limpieza;
+
+    private final AtomicLong permitidos = new AtomicLong();
+    private final AtomicLong rechazados = new AtomicLong();
+    private final AtomicLong desalojadas = new AtomicLong();
+
+    public LimitadorIntentos(String nombre, int capacidad, int porMinuto, long inactividadMs, int numFranjas) {
+        if (capacidad <= 0 || porMinuto <= 0 || inactividadMs <= 0 || Integer.bitCount(numFranjas) != 1) {
+            throw new IllegalArgumentException("Parámetros inválidos para el limitador " + nombre);
+        }
+        this.intervaloNanos = TimeUnit.MINUTES.toNanos(1) / porMinuto;
+        this.toleranciaNanos = intervaloNanos * (capacidad - 1);
+        this.inactividadNanos = TimeUnit.MILLISECONDS.toNanos(inactividadMs);
+        this.franjas = new Franja[numFranjas];
+        for (int i = 0; i < numFranjas; i++) {
+            franjas[i] = new Franja();
+        }
+        this.mascara = numFranjas - 1;
+        this.limpieza = Executors.newSingleThreadScheduledExecutor(new FabricaHilos("limitador-" + nombre));
+        long periodo = Math.max(1_000L, inactividadMs / 2);
+        limpieza.scheduleWithFixedDelay(this::eliminarInactivas, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    public static LimitadorIntentos porEmail() {
+        return POR_EMAIL;
+    }
+
+    public static LimitadorIntentos porOrigen() {
+        return POR_ORIGEN;
+    }
+
+    /**
+     * Consume un intento de la clave. Devuelve false si la clave agotó su cupo.
+     */
+    public boolean intentar(String clave) {
+        long ahora = System.nanoTime();
+        Franja franja = franjaDe(clave);
+        synchronized (franja) {
+            Cubeta cubeta = franja.cubetas.get(clave);
+            if (cubeta == null) {
+                cubeta = new Cubeta(ahora);
+                franja.cubetas.put(clave, cubeta);
+            }
+            long llegada = Math.max(cubeta.llegadaTeorica, ahora);
+            if (llegada - ahora > toleranciaNanos) {
+                rechazados.incrementAndGet();
+                return false;
+            }
+            cubeta.llegadaTeorica = llegada + intervaloNanos;
+            permitidos.incrementAndGet();
+            return true;
+        }
+    }
+
+    private Franja franjaDe(String clave) {
+        int h = clave.hashCode();
+        return franjas[(h ^ (h >>> 16)) & mascara];
+    }
+
+    private void eliminarInactivas() {
+        long limite = System.nanoTime() - inactividadNanos;
+        for (Franja franja : franjas) {
+            synchronized (franja) {
+                Iterator<Cubeta> it = franja.cubetas.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().llegadaTeorica - limite < 0) {
+                        it.remove();
+                        desalojadas.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        limpieza.shutdownNow();
+    }
+
+    // Métricas
+    public long getPermitidos() { return permitidos.get(); }
+    public long getRechazados() { return rechazados.get(); }
+    public long getDesalojadas() { return desalojadas.get(); }
+
+    public int getClaves() {
+        int total = 0;
+        for (Franja franja : franjas) {
+            synchronized (franja) {
+                total += franja.cubetas.size();
+            }
+        }
+        return total;
+    }
+
+    private static final class Franja {
+        private final Map<String, Cubeta> cubetas = new HashMap<>();
+    }
+
+    private static final class Cubeta {
+        // Instante a partir del cual la cubeta vuelve a estar llena
+        private long llegadaTeorica;
+
+        private Cubeta(long ahora) {
+            this.llegadaTeorica = ahora;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package mivalgamer.app;
 import java.sql.*;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Clase abstracta que representa un método de pago genérico.
@@ -8,6 +9,14 @@ import java.util.UUID;
  * tarjetas de crédito y débito.
  */
 public abstract class MetodoPago {
+    /** Columnas de metodo_pago con las de su tarjeta de crédito o débito */
+    private static final String SELECT_METODO = "SELECT mp.*, " +
+            "COALESCE(tc.limite_credito, 0) as limite_credito, " +
+            "COALESCE(td.numero_cuenta, '') as numero_cuenta " +
+            "FROM metodo_pago mp " +
+            "LEFT JOIN tarjeta_credito tc ON mp.id_metodo = tc.id_metodo " +
+            "LEFT JOIN tarjeta_debito td ON mp.id_metodo = td.id_metodo ";
+
     /** Conexión a la base de datos */
     protected final Connection connection;
 
@@ -84,7 +93,7 @@ public abstract class MetodoPago {
             String sqlCredito = "INSERT INTO tarjeta_credito (id_metodo, limite_credito) VALUES (?, ?)";
             try (PreparedStatement stmt = connection.prepareStatement(sqlCredito)) {
                 stmt.setInt(1, idMetodo);
-                stmt.setDouble(2, ((TarjetaCredito) this).getLimiteCredito());
+                Monto.escribir(stmt, 2, ((TarjetaCredito) this).getLimiteCreditoCentavos());
                 stmt.executeUpdate();
             }
         } else if (this instanceof TarjetaDebito) {
@@ -106,46 +115,88 @@ public abstract class MetodoPago {
      * @throws SQLException Si ocurre un error al acceder a la BD o no se encuentra el método
      */
     public static MetodoPago cargarDesdeBD(int idMetodo, Connection conn) throws SQLException {
-        String sql = "SELECT mp.*, " +
-                "COALESCE(tc.limite_credito, 0) as limite_credito, " +
-                "COALESCE(td.numero_cuenta, '') as numero_cuenta " +
-                "FROM metodo_pago mp " +
-                "LEFT JOIN tarjeta_credito tc ON mp.id_metodo = tc.id_metodo " +
-                "LEFT JOIN tarjeta_debito td ON mp.id_metodo = td.id_metodo " +
-                "WHERE mp.id_metodo = ?";
+        String sql = SELECT_METODO + "WHERE mp.id_metodo = ?";
 
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, idMetodo);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    TipoMetodoPago tipo = TipoMetodoPago.valueOf(rs.getString("tipo"));
-                    return switch (tipo) {
-                        case CREDITO -> new TarjetaCredito(conn, rs);
-                        case DEBITO -> new TarjetaDebito(conn, rs);
-                    };
+                    return desdeFila(conn, rs);
                 }
             }
         }
         throw new SQLException("Método de pago no encontrado");
     }
 
+    /**
+     * Carga todos los métodos de pago de un usuario con una sola consulta.
+     *
+     * @param idUsuario ID del usuario
+     * @param conn Conexión a la base de datos
+     * @return Métodos de pago del usuario, en orden de alta
+     * @throws SQLException Si ocurre un error al acceder a la BD
+     */
+    public static List<MetodoPago> cargarPorUsuario(String idUsuario, Connection conn) throws SQLException {
+        String sql = SELECT_METODO +
+                "JOIN usuario_metodo_pago ump ON ump.id_metodo = mp.id_metodo " +
+                "WHERE ump.id_usuario = ? ORDER BY mp.id_metodo";
+
+        List<MetodoPago> metodos = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, idUsuario);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    metodos.add(desdeFila(conn, rs));
+                }
+            }
+        }
+        return metodos;
+    }
+
+    // Construye la subclase que corresponde a la fila actual de una consulta SELECT_METODO
+    private static MetodoPago desdeFila(Connection conn, ResultSet rs) throws SQLException {
+        TipoMetodoPago tipo = TipoMetodoPago.valueOf(rs.getString("tipo"));
+        return switch (tipo) {
+            case CREDITO -> new TarjetaCredito(conn, rs);
+            case DEBITO -> new TarjetaDebito(conn, rs);
+        };
+    }
+
     /**
      * Procesa un pago con este método.
      * Método abstracto que debe ser implementado por las subclases.
      *
-     * @param monto Cantidad a pagar
+     * @param monto Cantidad a pagar, en centavos
      * @return true si el pago fue exitoso
      * @throws SQLException Si ocurre un error al procesar el pago
      */
-    public abstract boolean procesarPago(double monto) throws SQLException;
+    public abstract boolean procesarPago(long monto) throws SQLException;
+
+    /**
+     * Avisa de que la transacción en la que se registró el pago se confirmó.
+     * Por defecto no hace nada; las tarjetas de crédito consolidan su reserva.
+     *
+     * @param monto Cantidad pagada, en centavos
+     */
+    public void confirmarPago(long monto) {
+    }
+
+    /**
+     * Avisa de que la transacción en la que se registró el pago se deshizo.
+     * Por defecto no hace nada; las tarjetas de crédito devuelven su reserva.
+     *
+     * @param monto Cantidad que se había pagado, en centavos
+     */
+    public void liberarPago(long monto) {
+    }
 
     /**
      * Genera un ID único para transacciones.
      *
-     * @return ID de transacción generado con formato TXN-XXXXXX
+     * @return ID de transacción ordenado en el tiempo con formato TXN-XXXXXXXXXXXXX
      */
     protected String generarIdTransaccion() {
-        return "TXN-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        return GeneradorIds.idTransaccion();
     }
 
     /**
@@ -6,25 +6,23 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import mivalgamer.app.Controllers.LoginController;
 import  mivalgamer.app.Controllers.RegisterController;
 
 public class MivalGamerInterfaz extends Application {
 
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/tu_base_de_datos";
-    private static final String DB_USER = "tu_usuario";
-    private static final String DB_PASSWORD = "tu_contraseña";
-
     private Connection connection;
 
     @Override
     public void start(Stage primaryStage) {
         try {
-            // Crear una conexión con la base de datos
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+            // Conexión de sesión para los usuarios que inicien sesión; el detector de fugas del pool
+            // no la vigila porque vive tanto como la ventana. Las consultas de Autentificacion
+            // piden su propia conexión al pool
+            connection = ConexionBaseDatos.getDataSource().getConexionSesion();
             System.out.println("Conexión a la base de datos establecida.");
+            FiltroEmails.global();
             mostrarPantallaLogin(primaryStage);
         } catch (SQLException e) {
             System.err.println("Error al conectar a la base de datos: " + e.getMessage());
@@ -38,7 +36,7 @@ public class MivalGamerInterfaz extends Application {
 
             // Pasar la conexión al controlador
             LoginController loginController = loader.getController();
-            loginController.setAutentificacion(new Autentificacion(connection));
+            loginController.setAutentificacion(new Autentificacion(ConexionBaseDatos.getDataSource(), connection));
 
             stage.setTitle("MiVal Gamer - Inicio de Sesión");
             stage.setScene(new Scene(root));
@@ -56,7 +54,7 @@ public class MivalGamerInterfaz extends Application {
 
             // Pasar la conexión al controlador
             RegisterController registerController = loader.getController();
-            registerController.setAutentificacion(new Autentificacion(connection));
+            registerController.setAutentificacion(new Autentificacion(ConexionBaseDatos.getDataSource(), connection));
 
             stage.setTitle("MiVal Gamer - Registro");
             stage.setScene(new Scene(root));
@@ -74,6 +72,10 @@ public class MivalGamerInterfaz extends Application {
             connection.close();
             System.out.println("Conexión con la base de datos cerrada.");
         }
+        CarritoCompra.cerrarTodos();
+        RegistroUltimoLogin.cerrarGlobal();
+        FiltroEmails.cerrarGlobal();
+        ConexionBaseDatos.cerrarPool();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,161 @@
+package mivalgamer.app;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Aritmética monetaria en punto fijo.
+ * Los importes se manejan como long en centavos y las tasas (impuestos, descuentos) en
+ * puntos básicos, donde 10 000 equivale al 100 %. Todas las operaciones son primitivas y
+ * el redondeo es explícito; BigDecimal solo aparece al leer o escribir columnas DECIMAL.
+ * Los valores double se usan únicamente para mostrar importes.
+ */
+public final class Monto {
+    public static final long CERO = 0L;
+    public static final long PUNTOS_BASICOS_100 = 10_000L;
+    public static final RoundingMode REDONDEO = RoundingMode.HALF_UP;
+
+    private static final int DECIMALES = 2;
+    private static final int DECIMALES_TASA = 4;
+
+    private Monto() {
+    }
+
+    // — Conversión con columnas DECIMAL —
+
+    public static long deDecimal(BigDecimal valor) {
+        if (valor == null) {
+            return CERO;
+        }
+        return valor.movePointRight(DECIMALES).setScale(0, REDONDEO).longValueExact();
+    }
+
+    public static BigDecimal aDecimal(long centavos) {
+        return BigDecimal.valueOf(centavos, DECIMALES);
+    }
+
+    /**
+     * Lee un importe DECIMAL; NULL se interpreta como cero.
+     */
+    public static long leer(ResultSet rs, String columna) throws SQLException {
+        return deDecimal(rs.getBigDecimal(columna));
+    }
+
+    public static void escribir(PreparedStatement stmt, int indice, long centavos) throws SQLException {
+        stmt.setBigDecimal(indice, aDecimal(centavos));
+    }
+
+    /**
+     * Lee una tasa guardada como fracción (0.19) y la devuelve en puntos básicos (1900).
+     */
+    public static long leerTasa(ResultSet rs, String columna) throws SQLException {
+        BigDecimal valor = rs.getBigDecimal(columna);
+        return valor == null ? CERO : valor.movePointRight(DECIMALES_TASA).setScale(0, REDONDEO).longValueExact();
+    }
+
+    public static void escribirTasa(PreparedStatement stmt, int indice, long puntosBasicos) throws SQLException {
+        stmt.setBigDecimal(indice, BigDecimal.valueOf(puntosBasicos, DECIMALES_TASA));
+    }
+
+    /**
+     * Lee un porcentaje guardado como número (15.00) y lo devuelve en puntos básicos (1500).
+     */
+    public static long leerPorcentaje(ResultSet rs, String columna) throws SQLException {
+        // Un porcentaje con dos decimales ya son puntos básicos al escalarlo como importe
+        return leer(rs, columna);
+    }
+
+    /**
+     * Interpreta un importe escrito por el usuario ("12", "12.5", "12.50").
+     *
+     * @throws NumberFormatException si el texto no es un número
+     */
+    public static long deTexto(String texto) {
+        return deDecimal(new BigDecimal(texto.trim()));
+    }
+
+    // — Aritmética —
+
+    public static long sumar(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long restar(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    public static long porCantidad(long centavos, int cantidad) {
+        return Math.multiplyExact(centavos, (long) cantidad);
+    }
+
+    /**
+     * Aplica una tasa en puntos básicos: {@code aplicarTasa(1000, 1900, HALF_UP)} = 190.
+     */
+    public static long aplicarTasa(long centavos, long puntosBasicos, RoundingMode modo) {
+        return dividir(Math.multiplyExact(centavos, puntosBasicos), PUNTOS_BASICOS_100, modo);
+    }
+
+    /**
+     * División entera con el modo de redondeo indicado, sin crear objetos.
+     */
+    public static long dividir(long dividendo, long divisor, RoundingMode modo) {
+        if (divisor == 0) {
+            throw new ArithmeticException("División por cero");
+        }
+        long cociente = dividendo / divisor;
+        long resto = dividendo % divisor;
+        if (resto == 0) {
+            return cociente;
+        }
+        // Signo del cociente exacto: hacia dónde se aleja de cero al redondear
+        long signo = (dividendo ^ divisor) < 0 ? -1 : 1;
+        long restoAbs = Math.abs(resto);
+        int mitad = Long.compare(restoAbs, Math.abs(divisor) - restoAbs);
+        switch (modo) {
+            case DOWN:
+                return cociente;
+            case UP:
+                return cociente + signo;
+            case FLOOR:
+                return signo < 0 ? cociente - 1 : cociente;
+            case CEILING:
+                return signo > 0 ? cociente + 1 : cociente;
+            case HALF_UP:
+                return mitad >= 0 ? cociente + signo : cociente;
+            case HALF_DOWN:
+                return mitad > 0 ? cociente + signo : cociente;
+            case HALF_EVEN:
+                if (mitad == 0) {
+                    return (cociente & 1) == 0 ? cociente : cociente + signo;
+                }
+                return mitad > 0 ? cociente + signo : cociente;
+            default:
+                throw new ArithmeticException("La división requiere redondeo: " + dividendo + "/" + divisor);
+        }
+    }
+
+    // — Presentación —
+
+    public static double aDouble(long centavos) {
+        return centavos / 100.0;
+    }
+
+    /**
+     * Tasa en puntos básicos como fracción (1900 → 0.19), solo para mostrar.
+     */
+    public static double tasaADouble(long puntosBasicos) {
+        return puntosBasicos / (double) PUNTOS_BASICOS_100;
+    }
+
+    /**
+     * Texto con dos decimales ("1234.05", "-0.50").
+     */
+    public static String formatear(long centavos) {
+        long abs = Math.abs(centavos);
+        long decimales = abs % 100;
+        return (centavos < 0 ? "-" : "") + abs / 100 + (decimales < 10 ? ".0" : ".") + decimales;
+    }
+}
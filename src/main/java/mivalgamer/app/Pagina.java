@@ -0,0 +1,115 @@
+package mivalgamer.app;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Una página de resultados de una consulta paginada por clave (keyset).
+ * El token de continuación guarda los valores de ordenación de la última fila; la página
+ * siguiente empieza justo después de ellos recorriendo un índice, así que el coste depende
+ * del tamaño de página y no de cuántas filas haya antes.
+ */
+public final class Pagina<T> {
+    private static final char SEPARADOR = '\n';
+    private static final Base64.Encoder CODIFICADOR = Base64.getUrlEncoder().withoutPadding();
+
+    private final List<T> elementos;
+    private final String siguiente;
+
+    Pagina(List<T> elementos, String siguiente) {
+        this.elementos = Collections.unmodifiableList(elementos);
+        this.siguiente = siguiente;
+    }
+
+    public List<T> getElementos() {
+        return elementos;
+    }
+
+    /**
+     * Token para pedir la página siguiente, o null si esta es la última.
+     */
+    public String getSiguiente() {
+        return siguiente;
+    }
+
+    public boolean hayMas() {
+        return siguiente != null;
+    }
+
+    /**
+     * Codifica la posición de la última fila. El nombre del orden va dentro para rechazar
+     * tokens usados con otro orden.
+     */
+    static String token(String orden, String valor, String id) {
+        String texto = orden + SEPARADOR + valor + SEPARADOR + id;
+        return CODIFICADOR.encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Devuelve {valor, id} del token, o null si el token es null (primera página).
+     *
+     * @throws IllegalArgumentException si el token está mal formado o es de otro orden
+     */
+    static String[] leerToken(String token, String orden) {
+        if (token == null) {
+            return null;
+        }
+        String texto;
+        try {
+            texto = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Token de continuación inválido", ex);
+        }
+        int primero = texto.indexOf(SEPARADOR);
+        // El id nunca contiene el separador; el valor (un título) podría
+        int ultimo = texto.lastIndexOf(SEPARADOR);
+        if (primero < 0 || ultimo == primero || !texto.substring(0, primero).equals(orden)) {
+            throw new IllegalArgumentException("Token de continuación inválido");
+        }
+        return new String[]{texto.substring(primero + 1, ultimo), texto.substring(ultimo + 1)};
+    }
+
+    /**
+     * Recorre todas las páginas una a una: en memoria solo hay la página actual.
+     */
+    static <T> Iterator<T> recorrer(CargadorPagina<T> cargador) {
+        return new Iterator<>() {
+            private Iterator<T> actual = Collections.emptyIterator();
+            private String token;
+            private boolean ultima;
+
+            @Override
+            public boolean hasNext() {
+                while (!actual.hasNext() && !ultima) {
+                    Pagina<T> pagina;
+                    try {
+                        pagina = cargador.cargar(token);
+                    } catch (SQLException ex) {
+                        throw new RuntimeException("Error al cargar la página siguiente", ex);
+                    }
+                    actual = pagina.getElementos().iterator();
+                    token = pagina.getSiguiente();
+                    ultima = !pagina.hayMas();
+                }
+                return actual.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return actual.next();
+            }
+        };
+    }
+
+    interface CargadorPagina<T> {
+        Pagina<T> cargar(String token) throws SQLException;
+    }
+}
@@ -0,0 +1,61 @@
+package mivalgamer.app;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pasarela de pagos externa. Todas las operaciones son remotas y asíncronas: nunca deben
+ * esperarse con una transacción de BD abierta salvo la captura, que es lo último antes del
+ * commit. Un rechazo del emisor llega como {@link Autorizacion} no aprobada; los fallos
+ * técnicos (red, tiempo agotado, pasarela caída) completan el futuro con excepción.
+ */
+public interface PasarelaPago {
+
+    /**
+     * Reserva el importe en el método de pago sin cobrarlo todavía.
+     *
+     * @param idMetodo método de pago del usuario
+     * @param monto importe en centavos
+     * @param referencia id del pedido, para conciliar con la pasarela
+     */
+    CompletableFuture<Autorizacion> autorizar(int idMetodo, long monto, String referencia);
+
+    /**
+     * Cobra un importe autorizado.
+     */
+    CompletableFuture<Void> capturar(Autorizacion autorizacion);
+
+    /**
+     * Libera una autorización, o devuelve el cobro si ya se había capturado.
+     */
+    CompletableFuture<Void> anular(Autorizacion autorizacion);
+
+    /**
+     * Resultado de una autorización.
+     */
+    final class Autorizacion {
+        private final String id;
+        private final int idMetodo;
+        private final long monto;
+        private final String referencia;
+        private final boolean aprobada;
+        private final String motivo;
+
+        public Autorizacion(String id, int idMetodo, long monto, String referencia, boolean aprobada, String motivo) {
+            this.id = id;
+            this.idMetodo = idMetodo;
+            this.monto = monto;
+            this.referencia = referencia;
+            this.aprobada = aprobada;
+            this.motivo = motivo;
+        }
+
+        public String getId() { return id; }
+        public int getIdMetodo() { return idMetodo; }
+        public long getMonto() { return monto; }
+        // Id del pedido que se indicó al autorizar
+        public String getReferencia() { return referencia; }
+        public boolean isAprobada() { return aprobada; }
+        // Motivo del rechazo; null si se aprobó
+        public String getMotivo() { return motivo; }
+    }
+}
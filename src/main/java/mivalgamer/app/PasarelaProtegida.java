@@ -0,0 +1,256 @@
+package mivalgamer.app;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Envoltorio de una {@link PasarelaPago} que la protege y protege al checkout de ella:
+ * <ul>
+ *     <li>Tiempo máximo por llamada: el futuro falla con TimeoutException si no responde.</li>
+ *     <li>Concurrencia acotada: por encima de {@code maxEnCurso} llamadas simultáneas se
+ *     rechaza de inmediato en lugar de acumular hilos esperando. Una llamada ocupa su hueco
+ *     hasta que la pasarela responde, aunque el llamante ya haya recibido el timeout.</li>
+ *     <li>Cortocircuito: tras {@code umbralFallos} errores técnicos seguidos deja de llamar
+ *     durante {@code esperaMs}; pasado ese tiempo deja pasar una sola llamada de prueba y
+ *     vuelve a cerrarse si tiene éxito.</li>
+ * </ul>
+ * Un pago rechazado por el emisor no cuenta como fallo: la pasarela respondió bien.
+ * Las anulaciones no pasan por el cortocircuito ni por el límite de concurrencia: las
+ * guarda y reintenta {@link AnulacionesPendientes} hasta que la pasarela las acepta.
+ */
+public class PasarelaProtegida implements PasarelaPago, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(PasarelaProtegida.class.getName());
+
+    private static volatile PasarelaProtegida global;
+
+    public enum EstadoCircuito {
+        CERRADO,     // llamadas normales
+        ABIERTO,     // se rechaza todo sin llamar
+        SEMIABIERTO  // una llamada de prueba en curso
+    }
+
+    private final PasarelaPago pasarela;
+    private final AnulacionesPendientes anulaciones;
+    private final long timeoutMs;
+    private final int umbralFallos;
+    private final long esperaNanos;
+    private final int maxEnCurso;
+    private final Semaphore enCurso;
+
+    private final AtomicInteger fallosSeguidos = new AtomicInteger();
+    private volatile long abiertoHasta; // nanoTime; 0 si el circuito está cerrado
+    private final AtomicBoolean pruebaEnCurso = new AtomicBoolean();
+
+    private final AtomicLong llamadas = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong saturadas = new AtomicLong();
+    private final AtomicLong cortocircuitadas = new AtomicLong();
+    private final AtomicLong autorizacionesTardias = new AtomicLong();
+
+    PasarelaProtegida(PasarelaPago pasarela, AnulacionesPendientes anulaciones,
+                      long timeoutMs, int maxEnCurso, int umbralFallos, long esperaMs) {
+        if (pasarela == null || anulaciones == null || timeoutMs <= 0 || maxEnCurso <= 0 || umbralFallos <= 0 || esperaMs <= 0) {
+            throw new IllegalArgumentException("Parámetros inválidos para la pasarela de pago");
+        }
+        this.pasarela = pasarela;
+        this.anulaciones = anulaciones;
+        this.timeoutMs = timeoutMs;
+        this.umbralFallos = umbralFallos;
+        this.esperaNanos = TimeUnit.MILLISECONDS.toNanos(esperaMs);
+        this.maxEnCurso = maxEnCurso;
+        this.enCurso = new Semaphore(maxEnCurso);
+    }
+
+    /**
+     * Pasarela compartida. Mientras no haya integración con un proveedor real envuelve el
+     * {@link SimuladorPasarela}.
+     */
+    public static PasarelaProtegida global() {
+        PasarelaProtegida actual = global;
+        if (actual == null) {
+            synchronized (PasarelaProtegida.class) {
+                actual = global;
+                if (actual == null) {
+                    SimuladorPasarela remota = SimuladorPasarela.desdePropiedades();
+                    long timeoutMs = Long.getLong("mivalgamer.pasarela.timeoutMs", 5_000L);
+                    AnulacionesPendientes anulaciones = new AnulacionesPendientes(ConexionBaseDatos.getDataSource(),
+                            remota, timeoutMs,
+                            Long.getLong("mivalgamer.pasarela.anulacion.esperaBaseMs", 1_000L),
+                            Long.getLong("mivalgamer.pasarela.anulacion.esperaMaxMs", 600_000L),
+                            Long.getLong("mivalgamer.pasarela.anulacion.barridoMs", 60_000L),
+                            Integer.getInteger("mivalgamer.pasarela.anulacion.maxBarrido", 100));
+                    actual = new PasarelaProtegida(remota, anulaciones, timeoutMs,
+                            Integer.getInteger("mivalgamer.pasarela.maxEnCurso", 64),
+                            Integer.getInteger("mivalgamer.pasarela.umbralFallos", 5),
+                            Long.getLong("mivalgamer.pasarela.esperaMs", 30_000L));
+                    global = actual;
+                }
+            }
+        }
+        return actual;
+    }
+
+    public static synchronized void cerrarGlobal() {
+        if (global != null) {
+            global.close();
+            global = null;
+        }
+    }
+
+    /**
+     * Si la autorización agota el tiempo pero la pasarela acaba aprobándola, se anula: el
+     * llamante ya la dio por fallida y nunca la capturará.
+     */
+    @Override
+    public CompletableFuture<Autorizacion> autorizar(int idMetodo, long monto, String referencia) {
+        return llamar(() -> pasarela.autorizar(idMetodo, monto, referencia), tardia -> {
+            if (tardia != null && tardia.isAprobada()) {
+                autorizacionesTardias.incrementAndGet();
+                LOGGER.warning("Autorización " + tardia.getId() + " del pedido " + referencia +
+                        " aprobada tras agotar el tiempo; se anula");
+                anulaciones.anular(tardia);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> capturar(Autorizacion autorizacion) {
+        return llamar(() -> pasarela.capturar(autorizacion), null);
+    }
+
+    /**
+     * Anula o devuelve el pago. Nunca se rechaza: la anulación queda guardada y se reintenta
+     * hasta que la pasarela la confirma, momento en que se completa el futuro.
+     */
+    @Override
+    public CompletableFuture<Void> anular(Autorizacion autorizacion) {
+        return anulaciones.anular(autorizacion);
+    }
+
+    /**
+     * @param siLlegaTarde recibe la respuesta que llega después de agotarse el tiempo, o null
+     */
+    private <T> CompletableFuture<T> llamar(Supplier<CompletableFuture<T>> llamada, Consumer<T> siLlegaTarde) {
+        boolean prueba;
+        try {
+            prueba = admitir();
+        } catch (IllegalStateException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        if (!enCurso.tryAcquire()) {
+            saturadas.incrementAndGet();
+            if (prueba) {
+                pruebaEnCurso.set(false);
+            }
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Demasiados pagos en curso, inténtalo de nuevo"));
+        }
+        llamadas.incrementAndGet();
+
+        CompletableFuture<T> futuro;
+        try {
+            futuro = llamada.get();
+        } catch (RuntimeException ex) {
+            futuro = CompletableFuture.failedFuture(ex);
+        }
+        // El permiso se devuelve cuando termina la llamada real, no cuando se agota el tiempo:
+        // si no, una pasarela lenta acumularía llamadas por encima del límite
+        futuro.whenComplete((resultado, error) -> enCurso.release());
+        CompletableFuture<T> original = futuro;
+        // Copia propia: el timeout no debe completar el futuro de la pasarela envuelta
+        return futuro.copy().orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((resultado, error) -> {
+            registrar(error, prueba);
+            if (siLlegaTarde != null && esTimeout(error)) {
+                original.thenAccept(siLlegaTarde);
+            }
+        });
+    }
+
+    private static boolean esTimeout(Throwable error) {
+        Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return causa instanceof TimeoutException;
+    }
+
+    /**
+     * Decide si la llamada puede pasar según el estado del circuito.
+     *
+     * @return true si es la llamada de prueba del estado semiabierto
+     * @throws IllegalStateException si el circuito está abierto
+     */
+    private boolean admitir() {
+        long hasta = abiertoHasta;
+        if (hasta == 0) {
+            return false;
+        }
+        if (System.nanoTime() - hasta >= 0 && pruebaEnCurso.compareAndSet(false, true)) {
+            return true;
+        }
+        cortocircuitadas.incrementAndGet();
+        throw new IllegalStateException("La pasarela de pago no está disponible, inténtalo más tarde");
+    }
+
+    private void registrar(Throwable error, boolean prueba) {
+        if (error == null) {
+            fallosSeguidos.set(0);
+            if (prueba || abiertoHasta != 0) {
+                abiertoHasta = 0;
+                LOGGER.info("Pasarela de pago recuperada; circuito cerrado");
+            }
+        } else {
+            fallos.incrementAndGet();
+            if (esTimeout(error)) {
+                timeouts.incrementAndGet();
+            }
+            if (prueba || fallosSeguidos.incrementAndGet() >= umbralFallos) {
+                if (abiertoHasta == 0 || prueba) {
+                    LOGGER.warning("Pasarela de pago con fallos; circuito abierto durante "
+                            + TimeUnit.NANOSECONDS.toMillis(esperaNanos) + " ms");
+                }
+                abiertoHasta = System.nanoTime() + esperaNanos;
+            }
+        }
+        if (prueba) {
+            pruebaEnCurso.set(false);
+        }
+    }
+
+    public EstadoCircuito getEstado() {
+        long hasta = abiertoHasta;
+        if (hasta == 0) {
+            return EstadoCircuito.CERRADO;
+        }
+        return pruebaEnCurso.get() ? EstadoCircuito.SEMIABIERTO : EstadoCircuito.ABIERTO;
+    }
+
+    @Override
+    public void close() {
+        anulaciones.close();
+        if (pasarela instanceof AutoCloseable cerrable) {
+            try {
+                cerrable.close();
+            } catch (Exception ex) {
+                LOGGER.warning("Error al cerrar la pasarela de pago: " + ex.getMessage());
+            }
+        }
+    }
+
+    // Métricas
+    public int getEnCurso() { return maxEnCurso - enCurso.availablePermits(); }
+    public long getLlamadas() { return llamadas.get(); }
+    public long getFallos() { return fallos.get(); }
+    public long getTimeouts() { return timeouts.get(); }
+    public long getSaturadas() { return saturadas.get(); }
+    public long getCortocircuitadas() { return cortocircuitadas.get(); }
+    public long getAutorizacionesTardias() { return autorizacionesTardias.get(); }
+    public int getAnulacionesPendientes() { return anulaciones.getPendientes(); }
+}
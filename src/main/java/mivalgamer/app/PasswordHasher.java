@@ -0,0 +1,29 @@
+package mivalgamer.app;
+
+/**
+ * Algoritmo de hash de contraseñas.
+ * Cada implementación reconoce sus propios hashes almacenados, de modo que varios
+ * algoritmos pueden convivir en la tabla usuario mientras se migran los antiguos.
+ */
+public interface PasswordHasher {
+
+    /**
+     * Calcula el hash a guardar para una contraseña nueva.
+     */
+    String hash(String password);
+
+    /**
+     * Comprueba una contraseña contra un hash almacenado por este algoritmo.
+     */
+    boolean verificar(String password, String almacenado);
+
+    /**
+     * Indica si el hash almacenado fue generado por este algoritmo.
+     */
+    boolean admite(String almacenado);
+
+    /**
+     * Indica si el hash debe recalcularse (algoritmo antiguo o coste inferior al actual).
+     */
+    boolean necesitaRehash(String almacenado);
+}
@@ -3,8 +3,9 @@ package mivalgamer.app;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,15 +16,24 @@ public class Pedido {
     private final Usuario usuario;
     private final LocalDateTime fechaCreacion;
     private final int metodoPagoId;
-    private final double descuentoTotal;
-    private final double impuestos;
+    private final long descuentoTotal; // centavos
+    private final long impuestos;      // puntos básicos: 1900 = 19 %
     private EstadoPedido estado;
     private List<ItemPedido> items;
     private final Connection connection;
+    // Juegos que este pedido añadió a la biblioteca, pendientes de confirmar
+    private long[] juegosAgregados = new long[0];
+    // Autorización de la pasarela; se obtiene antes de abrir la transacción
+    private PasarelaPago.Autorizacion autorizacion;
+    // Pago registrado en la transacción en curso, pendiente de confirmar o deshacer
+    private MetodoPago metodoCobrado;
+    private long montoCobrado;
+    // Se anotó el pedido en el resumen del usuario y en el libro de transacciones
+    private boolean movimientoAnotado;
 
     // Constructor principal
     public Pedido(String idPedido, Usuario usuario, LocalDateTime fechaCreacion, int metodoPagoId,
-                  double descuentoTotal, double impuestos, EstadoPedido estado, Connection connection) {
+                  long descuentoTotal, long impuestos, EstadoPedido estado, Connection connection) {
         this.idPedido = idPedido;
         this.usuario = usuario;
         this.fechaCreacion = fechaCreacion;
@@ -36,21 +46,26 @@ public class Pedido {
 
     // Constructor alternativo para nuevos pedidos
     public Pedido(Usuario usuario, int metodoPagoId,
-                  double descuentoTotal, double impuestos, Connection connection) {
-        this(generarIdPedido(), usuario, LocalDateTime.now(), metodoPagoId,
+                  long descuentoTotal, long impuestos, Connection connection) {
+        this(GeneradorIds.idPedido(), usuario, LocalDateTime.now(), metodoPagoId,
                 descuentoTotal, impuestos, EstadoPedido.PENDIENTE, connection);
     }
 
-    private static String generarIdPedido() {
-        return "PED-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-    }
-
     public void setItems(List<ItemPedido> items) {
         this.items = items;
     }
 
+    /**
+     * Guarda el pedido y sus items. Si la conexión ya está dentro de una transacción
+     * (autocommit desactivado) solo escribe y deja el commit al llamante.
+     */
     public void guardarEnBD() throws SQLException {
         boolean autoCommitOriginal = connection.getAutoCommit();
+        if (!autoCommitOriginal) {
+            guardarPedidoEnBD();
+            guardarItemsPedido();
+            return;
+        }
 
         try {
             connection.setAutoCommit(false);
@@ -60,11 +75,7 @@ public class Pedido {
             System.out.println("¡Tu pedido ha sido guardado exitosamente!");
         } catch (SQLException e) {
             connection.rollback();
-<<<<<<< HEAD
             System.out.println("Ocurrió un error al guardar tu pedido. Por favor, inténtalo de nuevo.");
-=======
-            LOGGER.log(Level.SEVERE, "Error al guardar el pedido, se ha hecho rollback.", e);
->>>>>>> 832a7629a1439125ab9c5211116ca639b8163bb8
             throw e;
         } finally {
             connection.setAutoCommit(autoCommitOriginal);
@@ -81,8 +92,8 @@ public class Pedido {
             stmt.setString(2, usuario.getIdUsuario());
             stmt.setTimestamp(3, Timestamp.valueOf(fechaCreacion));
             stmt.setInt(4, metodoPagoId);
-            stmt.setDouble(5, descuentoTotal);
-            stmt.setDouble(6, impuestos);
+            Monto.escribir(stmt, 5, descuentoTotal);
+            Monto.escribirTasa(stmt, 6, impuestos);
             stmt.setString(7, estado.name());
             stmt.executeUpdate();
         }
@@ -100,29 +111,96 @@ public class Pedido {
             for (ItemPedido item : items) {
                 stmt.setString(1, idPedido);
                 stmt.setLong(2, item.getJuego().getIdVideojuego());
-                stmt.setDouble(3, item.getPrecioUnitario());
+                Monto.escribir(stmt, 3, item.getPrecioUnitarioCentavos());
                 stmt.setInt(4, item.getCantidad());
-                stmt.setDouble(5, item.getSubtotal());
+                Monto.escribir(stmt, 5, item.getSubtotalCentavos());
                 stmt.addBatch();
             }
             stmt.executeBatch();
         }
     }
 
-    public boolean procesarPago() throws SQLException {
-        MetodoPago metodo = MetodoPago.cargarDesdeBD(metodoPagoId, connection);
-        double total = calcularTotal();
+    /**
+     * Pide a la pasarela que autorice el total del pedido. Se llama con los items ya
+     * asignados y sin transacción abierta: la respuesta remota no debe retener bloqueos.
+     * Un pedido de total 0 (juegos gratuitos o descontados del todo) queda aprobado sin
+     * llamar a la pasarela, y luego no se captura, anula ni cobra nada.
+     */
+    public CompletableFuture<PasarelaPago.Autorizacion> autorizarPago(PasarelaPago pasarela) throws SQLException {
+        long total = calcularTotalCentavos();
+        if (total == 0) {
+            autorizacion = new PasarelaPago.Autorizacion(null, metodoPagoId, 0, idPedido, true, null);
+            return CompletableFuture.completedFuture(autorizacion);
+        }
+        return pasarela.autorizar(metodoPagoId, total, idPedido)
+                .thenApply(resultado -> {
+                    autorizacion = resultado;
+                    return resultado;
+                });
+    }
 
-        if (metodo.procesarPago(total)) {
-            actualizarEstado(EstadoPedido.PAGADO);
-            registrarEnHistorial(total);
-            agregarABiblioteca();
-            return true;
+    /**
+     * Cobra lo autorizado. Es el último paso antes del commit: si falla, se deshace la
+     * transacción y se anula la autorización.
+     */
+    public CompletableFuture<Void> capturarPago(PasarelaPago pasarela) {
+        if (autorizacion == null || !autorizacion.isAprobada()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("El pago del pedido no está autorizado"));
         }
-        return false;
+        if (esGratuito()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return pasarela.capturar(autorizacion);
+    }
+
+    /**
+     * Libera la autorización (o devuelve el cobro) de un pedido que no llegó a confirmarse.
+     * No espera la respuesta: {@link PasarelaProtegida} guarda la anulación y la reintenta
+     * hasta que la pasarela la acepta, así que un error aquí solo se registra en el log.
+     */
+    public void anularPago(PasarelaPago pasarela) {
+        deshacerPago();
+        if (autorizacion == null || !autorizacion.isAprobada() || esGratuito()) {
+            return;
+        }
+        pasarela.anular(autorizacion).whenComplete((resultado, error) -> {
+            if (error != null) {
+                LOGGER.log(Level.SEVERE, "No se pudo anular el pago " + autorizacion.getId() +
+                        " del pedido " + idPedido, error);
+            }
+        });
     }
 
-    private void registrarEnHistorial(double total) throws SQLException {
+    /**
+     * Registra en la BD el pago ya autorizado por la pasarela, dentro de la transacción del
+     * pedido, y añade los juegos a la biblioteca.
+     */
+    public boolean procesarPago() throws SQLException {
+        if (autorizacion == null || !autorizacion.isAprobada()) {
+            throw new IllegalStateException("El pago del pedido no está autorizado");
+        }
+        long total = calcularTotalCentavos();
+        // Sin importe no se registra transacción ni se reserva crédito
+        if (!esGratuito()) {
+            MetodoPago metodo = MetodoPago.cargarDesdeBD(metodoPagoId, connection);
+            if (!metodo.procesarPago(total)) {
+                return false;
+            }
+            metodoCobrado = metodo;
+            montoCobrado = total;
+        }
+        actualizarEstado(EstadoPedido.PAGADO);
+        registrarEnHistorial(total);
+        agregarABiblioteca();
+        return true;
+    }
+
+    // Autorizado con total 0: no pasa por la pasarela ni por el método de pago
+    private boolean esGratuito() {
+        return autorizacion != null && autorizacion.isAprobada() && autorizacion.getMonto() == 0;
+    }
+
+    private void registrarEnHistorial(long total) throws SQLException {
         String sql = "INSERT INTO historial_compras (id_usuario, id_pedido, fecha_compra, total) " +
                 "VALUES (?, ?, ?, ?)";
 
@@ -130,9 +208,12 @@ public class Pedido {
             stmt.setString(1, usuario.getIdUsuario());
             stmt.setString(2, idPedido);
             stmt.setDate(3, Date.valueOf(fechaCreacion.toLocalDate()));
-            stmt.setDouble(4, total);
+            Monto.escribir(stmt, 4, total);
             stmt.executeUpdate();
         }
+        ResumenUsuario.registrarPedido(connection, usuario.getIdUsuario(), idPedido, total, fechaCreacion);
+        LibroTransacciones.anotar(connection, idPedido, fechaCreacion.toLocalDate(), total);
+        movimientoAnotado = true;
     }
 
     private void agregarABiblioteca() throws SQLException {
@@ -140,51 +221,111 @@ public class Pedido {
             return;
         }
 
-        Biblioteca biblioteca = new Biblioteca(usuario, connection);
-        String sql = "INSERT INTO biblioteca (id_usuario, id_videojuego, fecha_compra, key_activacion) " +
+        // Qué juegos del pedido ya posee el usuario, sin consultar la BD
+        long[] ids = new long[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = items.get(i).getJuego().getIdVideojuego();
+        }
+        boolean[] yaEnBiblioteca = usuario.getJuegosPoseidos().contieneTodos(ids);
+
+        // IGNORE: si otra sesión ya añadió el juego la fila existente se conserva
+        String sql = "INSERT IGNORE INTO biblioteca (id_usuario, id_videojuego, fecha_compra, key_activacion) " +
                 "VALUES (?, ?, ?, ?)";
 
+        long[] candidatos = new long[ids.length];
+        String[] keys = new String[ids.length];
+        int numCandidatos = 0;
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            for (ItemPedido item : items) {
-                if (!biblioteca.contieneJuego(item.getJuego())) {
-                    String keyActivacion = generarKeyActivacion(item.getJuego());
+            for (int i = 0; i < ids.length; i++) {
+                ItemPedido item = items.get(i);
+                // Un mismo juego puede venir en varias líneas del pedido
+                if (!yaEnBiblioteca[i] && !contiene(candidatos, numCandidatos, ids[i])) {
+                    String keyActivacion = ServicioKeysActivacion.global().siguiente();
 
                     stmt.setString(1, usuario.getIdUsuario());
-                    stmt.setLong(2, item.getJuego().getIdVideojuego());
+                    stmt.setLong(2, ids[i]);
                     stmt.setTimestamp(3, Timestamp.valueOf(fechaCreacion));
                     stmt.setString(4, keyActivacion);
                     stmt.addBatch();
-
-                    LOGGER.info("Juego " + item.getJuego().getTitulo() + " agregado a biblioteca");
+                    candidatos[numCandidatos] = ids[i];
+                    keys[numCandidatos++] = keyActivacion;
                 } else {
                     LOGGER.info("Juego " + item.getJuego().getTitulo() + " ya está en la biblioteca");
                 }
             }
+            if (numCandidatos == 0) {
+                return;
+            }
             stmt.executeBatch();
         }
+        juegosAgregados = insertados(Arrays.copyOf(keys, numCandidatos));
+        LOGGER.info(juegosAgregados.length + " de " + numCandidatos + " juegos del pedido " + idPedido +
+                " agregados a la biblioteca");
     }
 
-    private String generarKeyActivacion(Videojuego juego) {
-<<<<<<< HEAD
-        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-        int blockSize = 5;
-        int blocks = 5;
-        StringBuilder keyBuilder = new StringBuilder();
-        java.security.SecureRandom random = new java.security.SecureRandom();
-
-        for (int i = 0; i < blocks; i++) {
-            if (i > 0) {
-                keyBuilder.append("-");
+    /**
+     * Juegos cuya fila de biblioteca lleva una de las keys dadas, es decir, los que el INSERT
+     * IGNORE insertó de verdad. Con rewriteBatchedStatements el lote no informa filas por sentencia,
+     * así que se consulta dentro de la misma transacción.
+     */
+    private long[] insertados(String[] keys) throws SQLException {
+        long[] ids = new long[keys.length];
+        int cantidad = 0;
+        for (int desde = 0; desde < keys.length; desde += UtilSql.MAX_PARAMETROS_IN) {
+            int hasta = Math.min(keys.length, desde + UtilSql.MAX_PARAMETROS_IN);
+            String sql = "SELECT id_videojuego FROM biblioteca WHERE id_usuario = ? AND key_activacion IN (" +
+                    UtilSql.marcadores(hasta - desde) + ")";
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, usuario.getIdUsuario());
+                for (int i = desde; i < hasta; i++) {
+                    stmt.setString(i - desde + 2, keys[i]);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids[cantidad++] = rs.getLong(1);
+                    }
+                }
             }
-            for (int j = 0; j < blockSize; j++) {
-                int index = random.nextInt(chars.length());
-                keyBuilder.append(chars.charAt(index));
+        }
+        return Arrays.copyOf(ids, cantidad);
+    }
+
+    private static boolean contiene(long[] valores, int cantidad, long valor) {
+        for (int i = 0; i < cantidad; i++) {
+            if (valores[i] == valor) {
+                return true;
             }
         }
-        return keyBuilder.toString();
-=======
-        return "KEY-" + idPedido + "-" + juego.getIdVideojuego() + "-" + System.currentTimeMillis();
->>>>>>> 832a7629a1439125ab9c5211116ca639b8163bb8
+        return false;
+    }
+
+    /**
+     * Aplica en memoria lo que el commit hizo definitivo: los juegos añadidos a la biblioteca
+     * del usuario, el pago del método, su resumen de compras y el movimiento del libro de
+     * transacciones. Llamar después del commit.
+     */
+    void confirmar() {
+        usuario.registrarJuegosComprados(juegosAgregados);
+        if (metodoCobrado != null) {
+            metodoCobrado.confirmarPago(montoCobrado);
+            metodoCobrado = null;
+        }
+        if (movimientoAnotado) {
+            usuario.registrarCompraConfirmada();
+            LibroTransacciones.global().publicar(idPedido);
+            movimientoAnotado = false;
+        }
+    }
+
+    /**
+     * Devuelve el pago registrado cuando la transacción se deshace.
+     */
+    void deshacerPago() {
+        movimientoAnotado = false;
+        if (metodoCobrado != null) {
+            metodoCobrado.liberarPago(montoCobrado);
+            metodoCobrado = null;
+        }
     }
 
     public List<ItemPedido> getItems() throws SQLException {
@@ -194,11 +335,21 @@ public class Pedido {
         return items;
     }
 
+    /**
+     * Total en centavos: (subtotal - descuento) más impuestos, redondeado a favor del centavo
+     * más cercano (HALF_UP).
+     */
+    public long calcularTotalCentavos() throws SQLException {
+        long subtotal = 0;
+        for (ItemPedido item : getItems()) {
+            subtotal = Monto.sumar(subtotal, item.getSubtotalCentavos());
+        }
+        long base = Monto.restar(subtotal, descuentoTotal);
+        return Monto.sumar(base, Monto.aplicarTasa(base, impuestos, Monto.REDONDEO));
+    }
+
     public double calcularTotal() throws SQLException {
-        double subtotal = getItems().stream()
-                .mapToDouble(ItemPedido::getSubtotal)
-                .sum();
-        return (subtotal - descuentoTotal) * (1 + impuestos);
+        return Monto.aDouble(calcularTotalCentavos());
     }
 
     private void actualizarEstado(EstadoPedido nuevoEstado) throws SQLException {
@@ -216,9 +367,19 @@ public class Pedido {
     public Usuario getUsuario() { return usuario; }
     public LocalDateTime getFechaCreacion() { return fechaCreacion; }
     public int getMetodoPagoId() { return metodoPagoId; }
-    public double getDescuentoTotal() { return descuentoTotal; }
-    public double getImpuestos() { return impuestos; }
+    public long getDescuentoTotalCentavos() { return descuentoTotal; }
+    public long getImpuestosPuntosBasicos() { return impuestos; }
+    public double getDescuentoTotal() { return Monto.aDouble(descuentoTotal); }
+    public double getImpuestos() { return Monto.tasaADouble(impuestos); }
     public EstadoPedido getEstado() { return estado; }
+    public long getTotalCentavos() {
+        try {
+            return calcularTotalCentavos();
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al calcular total del pedido", e);
+        }
+    }
+
     public double getTotal() {
         try {
             return calcularTotal();
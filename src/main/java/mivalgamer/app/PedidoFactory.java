@@ -1,84 +1,194 @@
 package mivalgamer.app;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class PedidoFactory {
     private static final Logger LOGGER = Logger.getLogger(PedidoFactory.class.getName());
+    private static final int INTENTOS_COMPROBACION = 3;
 
+    /**
+     * Checkout síncrono: autoriza el pago fuera de la transacción, escribe el pedido, captura
+     * el cobro y solo entonces confirma. Si algo falla se deshace todo y se anula el pago.
+     */
     public static Pedido crearPedidoDesdeCarrito(Connection connection, List<ItemCarrito> itemsCarrito,
                                                  int idMetodoPago, String codigoDescuento,
                                                  Usuario usuario) throws SQLException {
+        PasarelaPago pasarela = PasarelaProtegida.global();
+        Pedido pedido = prepararPedido(connection, itemsCarrito, idMetodoPago, codigoDescuento, usuario);
+        exigirAutorizacion(esperar(pedido.autorizarPago(pasarela)));
+
         connection.setAutoCommit(false);
         try {
-            List<ItemPedido> itemsPedido = convertirItems(connection, itemsCarrito);
-            double descuento = calcularDescuento(connection, codigoDescuento, itemsPedido);
-
-            Pedido pedido = new Pedido(
-                    generarIdPedido(),
-                    usuario,
-                    LocalDateTime.now(),
-                    idMetodoPago,
-                    descuento,
-                    calcularImpuestos(),
-                    EstadoPedido.PAGADO,
-                    connection
-            );
-
-            pedido.setItems(itemsPedido);
-            pedido.guardarEnBD();
-
-            // Procesar pago y agregar a biblioteca
-            if (pedido.procesarPago()) {
-                if (codigoDescuento != null && !codigoDescuento.isEmpty()) {
-                    marcarDescuentoUsado(connection, codigoDescuento);
-                }
-                connection.commit();
-
-                // Eliminada la línea que causaba el error:
-                // usuario.setBiblioteca(new Biblioteca(usuario, connection));
-
-                return pedido;
-            } else {
+            try {
+                registrarPedido(connection, pedido, codigoDescuento);
+                esperar(pedido.capturarPago(pasarela));
+            } catch (SQLException | RuntimeException e) {
                 connection.rollback();
-                throw new SQLException("El pago no pudo ser procesado");
+                pedido.anularPago(pasarela);
+                LOGGER.log(Level.SEVERE, "Error al crear pedido", e);
+                throw e;
+            }
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                // No se sabe si el commit llegó a aplicarse: solo se anula si seguro que no
+                LOGGER.log(Level.WARNING, "Falló el commit del pedido " + pedido.getIdPedido() +
+                        "; se comprueba si llegó a guardarse", e);
+                boolean guardado;
+                try {
+                    guardado = comprobarGuardado(ConexionBaseDatos.getDataSource(), pedido.getIdPedido());
+                } catch (SQLException comprobacion) {
+                    LOGGER.log(Level.SEVERE, "No se pudo comprobar si se guardó el pedido " +
+                            pedido.getIdPedido() + "; no se anula su pago", comprobacion);
+                    e.addSuppressed(comprobacion);
+                    throw e;
+                }
+                if (!guardado) {
+                    pedido.anularPago(pasarela);
+                    throw e;
+                }
             }
-        } catch (SQLException e) {
-            connection.rollback();
-            LOGGER.log(Level.SEVERE, "Error al crear pedido", e);
-            throw e;
+            pedido.confirmar();
+            return pedido;
         } finally {
             connection.setAutoCommit(true);
         }
     }
 
-    private static String generarIdPedido() {
-        return "PED-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    /**
+     * Construye el pedido con sus items, precios vigentes y descuento. Solo lee de la BD,
+     * así que puede hacerse antes de abrir la transacción.
+     */
+    static Pedido prepararPedido(Connection connection, List<ItemCarrito> itemsCarrito,
+                                 int idMetodoPago, String codigoDescuento,
+                                 Usuario usuario) throws SQLException {
+        List<ItemPedido> itemsPedido = convertirItems(connection, itemsCarrito);
+        long descuento = calcularDescuento(connection, codigoDescuento, itemsPedido);
+
+        Pedido pedido = new Pedido(
+                GeneradorIds.idPedido(),
+                usuario,
+                LocalDateTime.now(),
+                idMetodoPago,
+                descuento,
+                calcularImpuestos(),
+                EstadoPedido.PAGADO,
+                connection
+        );
+        pedido.setItems(itemsPedido);
+        return pedido;
+    }
+
+    /**
+     * Escribe el pedido ya autorizado (pedido, items, pago, historial y biblioteca) dentro de
+     * la transacción ya abierta en la conexión, sin confirmarla ni deshacerla.
+     * Lo usan el checkout síncrono y {@link ColaPedidos}, que agrupa varios pedidos por commit.
+     *
+     * @throws SQLException si algo falla o el pago es rechazado; el llamante debe deshacer
+     */
+    static void registrarPedido(Connection connection, Pedido pedido, String codigoDescuento) throws SQLException {
+        pedido.guardarEnBD();
+
+        // Registrar el pago y agregar a biblioteca
+        if (!pedido.procesarPago()) {
+            throw new SQLException("El pago no pudo ser procesado");
+        }
+        if (codigoDescuento != null && !codigoDescuento.isEmpty()) {
+            marcarDescuentoUsado(connection, codigoDescuento);
+        }
+    }
+
+    /**
+     * Comprueba con una conexión nueva si el pedido está en la BD, tras un commit que falló
+     * sin saber si llegó a aplicarse. Reintenta unas pocas veces antes de rendirse.
+     *
+     * @throws SQLException si no se pudo consultar
+     */
+    static boolean comprobarGuardado(DataSource dataSource, String idPedido) throws SQLException {
+        String sql = "SELECT 1 FROM pedido WHERE id_pedido = ?";
+        SQLException ultimo = null;
+        for (int intento = 0; intento < INTENTOS_COMPROBACION; intento++) {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, idPedido);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+            } catch (SQLException ex) {
+                ultimo = ex;
+                try {
+                    Thread.sleep(500L << intento);
+                } catch (InterruptedException interrupcion) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        throw ultimo;
+    }
+
+    /**
+     * Espera la respuesta de la pasarela. Los fallos técnicos llegan como
+     * IllegalStateException.
+     */
+    static <T> T esperar(CompletableFuture<T> futuro) {
+        try {
+            return futuro.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando a la pasarela de pago", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IllegalStateException causa) {
+                throw causa;
+            }
+            throw new IllegalStateException("La pasarela de pago no respondió correctamente", ex.getCause());
+        }
+    }
+
+    static void exigirAutorizacion(PasarelaPago.Autorizacion autorizacion) throws SQLException {
+        if (!autorizacion.isAprobada()) {
+            throw new SQLException("El pago fue rechazado: " + autorizacion.getMotivo());
+        }
     }
 
     private static List<ItemPedido> convertirItems(Connection conn, List<ItemCarrito> itemsCarrito) throws SQLException {
+        // Precios vigentes de todos los juegos del carrito en una sola consulta
+        List<Long> ids = new ArrayList<>(itemsCarrito.size());
+        for (ItemCarrito item : itemsCarrito) {
+            ids.add(item.getVideojuego().getIdVideojuego());
+        }
+        Map<Long, Videojuego> juegos = Videojuego.cargarPorIds(conn, ids);
+
         List<ItemPedido> itemsPedido = new ArrayList<>();
         for (ItemCarrito item : itemsCarrito) {
-            Videojuego juego = Videojuego.obtenerPorId(conn, item.getVideojuego().getIdVideojuego());
+            Videojuego juego = juegos.get(item.getVideojuego().getIdVideojuego());
+            if (juego == null) {
+                throw new SQLException("Videojuego no encontrado");
+            }
+            CacheCatalogo.global().guardar(juego);
             itemsPedido.add(new ItemPedido(
                     null, // id_item se generará automáticamente
                     juego,
-                    juego.getPrecio(),
+                    juego.getPrecioCentavos(),
                     item.getCantidad()
             ));
         }
         return itemsPedido;
     }
 
-    private static double calcularDescuento(Connection conn, String codigoDescuento,
-                                            List<ItemPedido> items) throws SQLException {
+    private static long calcularDescuento(Connection conn, String codigoDescuento,
+                                          List<ItemPedido> items) throws SQLException {
         if (codigoDescuento == null || codigoDescuento.isEmpty()) {
-            return 0.0;
+            return Monto.CERO;
         }
 
         String sql = "SELECT valor, tipo FROM descuento " +
@@ -89,16 +199,16 @@ public class PedidoFactory {
             stmt.setString(1, codigoDescuento);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    double valor = rs.getDouble("valor");
                     String tipo = rs.getString("tipo");
-                    double subtotal = items.stream()
-                            .mapToDouble(ItemPedido::getSubtotal)
-                            .sum();
+                    long subtotal = 0;
+                    for (ItemPedido item : items) {
+                        subtotal = Monto.sumar(subtotal, item.getSubtotalCentavos());
+                    }
 
                     if (tipo.equals("PORCENTAJE")) {
-                        return subtotal * (valor / 100);
+                        return Monto.aplicarTasa(subtotal, Monto.leerPorcentaje(rs, "valor"), Monto.REDONDEO);
                     } else if (tipo.equals("MONTO_FIJO")) {
-                        return valor;
+                        return Monto.leer(rs, "valor");
                     }
                 }
             }
@@ -106,23 +216,9 @@ public class PedidoFactory {
         throw new SQLException("Código de descuento no válido o expirado");
     }
 
-<<<<<<< HEAD
-    private static double calcularImpuestos() {
-        // IVA fijo del 19%
-        return 0.19;
-=======
-    private static double calcularImpuestos(Connection conn) throws SQLException {
-        try {
-            String sql = "SELECT valor FROM configuracion WHERE clave = 'IVA'";
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery(sql)) {
-                return rs.next() ? rs.getDouble("valor") / 100 : 0.19;
-            }
-        } catch (SQLException e) {
-            LOGGER.warning("Tabla 'configuracion' no encontrada. Usando valor predeterminado de 16% para IVA.");
-            return 0.16;
-        }
->>>>>>> 832a7629a1439125ab9c5211116ca639b8163bb8
+    private static long calcularImpuestos() {
+        // IVA fijo del 19% (en puntos básicos)
+        return 1_900L;
     }
 
     private static void marcarDescuentoUsado(Connection conn, String codigo) throws SQLException {
@@ -1,7 +1,11 @@
 package mivalgamer.app;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 public class Plataforma {
     private final long idPlataforma;
@@ -75,6 +79,69 @@ public class Plataforma {
         return plataformas;
     }
 
+    /**
+     * Obtiene las plataformas de varios videojuegos en una sola consulta por cada
+     * tramo de {@link UtilSql#MAX_PARAMETROS_IN} ids. El mapa contiene una entrada por
+     * cada id solicitado (lista vacía si no tiene plataformas).
+     */
+    public static Map<Long, List<Plataforma>> obtenerPorVideojuegos(Connection conn, Collection<Long> idsVideojuego)
+            throws SQLException {
+        Map<Long, List<Plataforma>> resultado = new HashMap<>();
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(idsVideojuego));
+        for (Long id : ids) {
+            resultado.put(id, new ArrayList<>());
+        }
+
+        // Las plataformas son pocas: se comparte una instancia por id entre todos los juegos
+        Map<Long, Plataforma> instancias = new HashMap<>();
+        for (int desde = 0; desde < ids.size(); desde += UtilSql.MAX_PARAMETROS_IN) {
+            List<Long> tramo = ids.subList(desde, Math.min(ids.size(), desde + UtilSql.MAX_PARAMETROS_IN));
+            String sql = "SELECT vp.id_videojuego, p.* " +
+                    "FROM plataforma p " +
+                    "JOIN videojuego_plataforma vp ON p.id_plataforma = vp.id_plataforma " +
+                    "WHERE vp.id_videojuego IN (" + UtilSql.marcadores(tramo.size()) + ")";
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < tramo.size(); i++) {
+                    stmt.setLong(i + 1, tramo.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        long idPlataforma = rs.getLong("id_plataforma");
+                        Plataforma plataforma = instancias.get(idPlataforma);
+                        if (plataforma == null) {
+                            plataforma = new Plataforma(
+                                    idPlataforma,
+                                    rs.getString("nombre_comercial"),
+                                    rs.getString("fabricante")
+                            );
+                            instancias.put(idPlataforma, plataforma);
+                        }
+                        resultado.get(rs.getLong("id_videojuego")).add(plataforma);
+                    }
+                }
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Une los nombres comerciales separados por coma, o devuelve siVacia si no hay plataformas.
+     */
+    public static String unirNombres(List<Plataforma> plataformas, String siVacia) {
+        if (plataformas == null || plataformas.isEmpty()) {
+            return siVacia;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Plataforma plataforma : plataformas) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(plataforma.getNombreComercial());
+        }
+        return sb.toString();
+    }
+
     // Getters
     public long getIdPlataforma() { return idPlataforma; }
     public String getNombreComercial() { return nombreComercial; }
@@ -0,0 +1,341 @@
+package mivalgamer.app;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool acotado de conexiones JDBC.
+ * Las conexiones prestadas se devuelven al pool al llamar a close(); se validan
+ * al prestarse, se cierran las inactivas por encima del mínimo y se avisa de las
+ * que llevan demasiado tiempo prestadas junto con la traza de quien las pidió
+ * (salvo las conexiones de sesión, ver {@link #getConexionSesion()}).
+ * Cada conexión física mantiene su propia caché de sentencias preparadas.
+ */
+public class PoolConexiones implements DataSource, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(PoolConexiones.class.getName());
+
+    // Una conexión usada hace menos de esto no se vuelve a validar al prestarla
+    private static final long VALIDACION_OMITIDA_MS = 500;
+    private static final int TIMEOUT_VALIDACION_SEG = 2;
+
+    private final String url;
+    private final String usuario;
+    private final String password;
+    private final int minimo;
+    private final int maximo;
+    private final long timeoutAdquisicionMs;
+    private final long tiempoInactividadMs;
+    private final long umbralFugaMs;
+    private final int sentenciasPorConexion;
+
+    private final Semaphore permisos;
+    private final LinkedBlockingDeque<ConexionFisica> libres = new LinkedBlockingDeque<>();
+    private final Set<Prestamo> prestadas = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totales = new AtomicInteger();
+    private final Map<String, CacheSentencias.Contadores> estadisticasSentencias = CacheSentencias.nuevasEstadisticas();
+    private final ScheduledExecutorService mantenimiento;
+    private volatile boolean cerrado;
+
+    public PoolConexiones(String url, String usuario, String password, int minimo, int maximo,
+                          long timeoutAdquisicionMs, long tiempoInactividadMs, long umbralFugaMs,
+                          int sentenciasPorConexion) {
+        if (minimo < 0 || maximo <= 0 || minimo > maximo) {
+            throw new IllegalArgumentException("Tamaños de pool inválidos: min=" + minimo + ", max=" + maximo);
+        }
+        this.url = url;
+        this.usuario = usuario;
+        this.password = password;
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.timeoutAdquisicionMs = timeoutAdquisicionMs;
+        this.tiempoInactividadMs = tiempoInactividadMs;
+        this.umbralFugaMs = umbralFugaMs;
+        this.sentenciasPorConexion = sentenciasPorConexion;
+        this.permisos = new Semaphore(maximo, true);
+
+        this.mantenimiento = Executors.newSingleThreadScheduledExecutor(new FabricaHilos("pool-conexiones"));
+        long periodo = Math.max(1000, Math.min(tiempoInactividadMs, umbralFugaMs) / 2);
+        mantenimiento.scheduleWithFixedDelay(this::mantener, periodo, periodo, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < minimo; i++) {
+            try {
+                libres.offerLast(crearConexionFisica());
+            } catch (SQLException ex) {
+                LOGGER.log(Level.WARNING, "No se pudo precargar el pool de conexiones", ex);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return prestar(false);
+    }
+
+    /**
+     * Conexión que acompaña a toda una sesión interactiva (el usuario conectado y su carrito).
+     * Se presta igual que {@link #getConnection()} y ocupa uno de los permisos del pool, pero
+     * el detector de fugas no la vigila: se sabe que vive tanto como la sesión. Las operaciones
+     * puntuales deben usar getConnection() y cerrarla al terminar.
+     */
+    public Connection getConexionSesion() throws SQLException {
+        return prestar(true);
+    }
+
+    private Connection prestar(boolean sesion) throws SQLException {
+        if (cerrado) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+        try {
+            if (!permisos.tryAcquire(timeoutAdquisicionMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Tiempo de espera agotado al obtener conexión del pool (" +
+                        timeoutAdquisicionMs + " ms, activas=" + getActivas() + ")");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión del pool", ex);
+        }
+
+        try {
+            ConexionFisica fisica = tomarValida();
+            Prestamo prestamo = new Prestamo(fisica, sesion);
+            prestadas.add(prestamo);
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, prestamo);
+        } catch (SQLException | RuntimeException ex) {
+            permisos.release();
+            throw ex;
+        }
+    }
+
+    private ConexionFisica tomarValida() throws SQLException {
+        ConexionFisica fisica;
+        while ((fisica = libres.pollLast()) != null) {
+            if (System.currentTimeMillis() - fisica.ultimoUso < VALIDACION_OMITIDA_MS || esValida(fisica)) {
+                return fisica;
+            }
+            descartar(fisica);
+        }
+        return crearConexionFisica();
+    }
+
+    private boolean esValida(ConexionFisica fisica) {
+        try {
+            return fisica.real.isValid(TIMEOUT_VALIDACION_SEG);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private ConexionFisica crearConexionFisica() throws SQLException {
+        Connection real = DriverManager.getConnection(url, usuario, password);
+        totales.incrementAndGet();
+        CacheSentencias cache = sentenciasPorConexion > 0
+                ? new CacheSentencias(real, sentenciasPorConexion, estadisticasSentencias)
+                : null;
+        return new ConexionFisica(real, cache);
+    }
+
+    private void devolver(Prestamo prestamo) {
+        prestadas.remove(prestamo);
+        ConexionFisica fisica = prestamo.fisica;
+        try {
+            if (cerrado || fisica.real.isClosed()) {
+                descartar(fisica);
+            } else {
+                if (fisica.cache != null) {
+                    fisica.cache.liberarTodas();
+                }
+                if (!fisica.real.getAutoCommit()) {
+                    fisica.real.rollback();
+                    fisica.real.setAutoCommit(true);
+                }
+                fisica.real.clearWarnings();
+                fisica.ultimoUso = System.currentTimeMillis();
+                libres.offerLast(fisica);
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "Conexión descartada al devolverla al pool", ex);
+            descartar(fisica);
+        } finally {
+            permisos.release();
+        }
+    }
+
+    private void descartar(ConexionFisica fisica) {
+        totales.decrementAndGet();
+        try {
+            fisica.real.close();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.FINE, "Error al cerrar conexión descartada", ex);
+        }
+    }
+
+    private void mantener() {
+        long ahora = System.currentTimeMillis();
+
+        // Desalojo de conexiones inactivas, empezando por las más antiguas
+        Iterator<ConexionFisica> it = libres.iterator();
+        while (it.hasNext() && totales.get() > minimo) {
+            ConexionFisica fisica = it.next();
+            if (ahora - fisica.ultimoUso > tiempoInactividadMs && libres.remove(fisica)) {
+                descartar(fisica);
+            }
+        }
+
+        // Detección de fugas: se avisa una sola vez por préstamo; las conexiones de sesión no cuentan
+        for (Prestamo prestamo : prestadas) {
+            if (!prestamo.sesion && !prestamo.fugaReportada && ahora - prestamo.desde > umbralFugaMs) {
+                prestamo.fugaReportada = true;
+                LOGGER.log(Level.WARNING, "Posible fuga de conexión: prestada hace " +
+                        (ahora - prestamo.desde) + " ms sin devolverse", prestamo.origen);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        cerrado = true;
+        mantenimiento.shutdownNow();
+        ConexionFisica fisica;
+        while ((fisica = libres.pollFirst()) != null) {
+            descartar(fisica);
+        }
+    }
+
+    // Métricas
+    public int getActivas() { return prestadas.size(); }
+    public int getInactivas() { return libres.size(); }
+    public int getTotales() { return totales.get(); }
+    public int getEsperando() { return permisos.getQueueLength(); }
+    public int getMaximo() { return maximo; }
+
+    /**
+     * Aciertos y fallos de la caché de sentencias por texto SQL, sumados en todas las conexiones.
+     */
+    public Map<String, CacheSentencias.Contadores> getEstadisticasSentencias() {
+        return Collections.unmodifiableMap(estadisticasSentencias);
+    }
+
+    // — Métodos de DataSource sin uso en la aplicación —
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("El pool usa credenciales fijas");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() { return null; }
+
+    @Override
+    public void setLogWriter(PrintWriter out) { }
+
+    @Override
+    public void setLoginTimeout(int seconds) { }
+
+    @Override
+    public int getLoginTimeout() { return 0; }
+
+    @Override
+    public Logger getParentLogger() { return LOGGER; }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("No es un wrapper de " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static final class ConexionFisica {
+        private final Connection real;
+        private final CacheSentencias cache;
+        private volatile long ultimoUso = System.currentTimeMillis();
+
+        private ConexionFisica(Connection real, CacheSentencias cache) {
+            this.real = real;
+            this.cache = cache;
+        }
+    }
+
+    /**
+     * Conexión entregada al llamante. close() la devuelve al pool en lugar de cerrarla.
+     */
+    private final class Prestamo implements InvocationHandler {
+        private final ConexionFisica fisica;
+        private final boolean sesion;
+        private final long desde = System.currentTimeMillis();
+        private final Throwable origen = new Throwable("Conexión obtenida en el hilo " + Thread.currentThread().getName());
+        private volatile boolean fugaReportada;
+        private volatile boolean devuelta;
+
+        private Prestamo(ConexionFisica fisica, boolean sesion) {
+            this.fisica = fisica;
+            this.sesion = sesion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!devuelta) {
+                        devuelta = true;
+                        devolver(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return devuelta || fisica.real.isClosed();
+                case "unwrap":
+                    return ((Class<?>) args[0]).isInstance(proxy) ? proxy : fisica.real.unwrap((Class<?>) args[0]);
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy) || fisica.real.isWrapperFor((Class<?>) args[0]);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexionPool[" + fisica.real + "]";
+                default:
+                    break;
+            }
+            if (devuelta) {
+                throw new SQLException("La conexión ya fue devuelta al pool");
+            }
+            if (fisica.cache != null && "prepareStatement".equals(method.getName()) && args.length == 1) {
+                return fisica.cache.preparar((String) args[0], (Connection) proxy);
+            }
+            try {
+                return method.invoke(fisica.real, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -3,16 +3,26 @@ import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.InputMismatchException;
 
 public class Proyecto {
     private static final Logger LOGGER = Logger.getLogger(Proyecto.class.getName());
+    // Conexión de sesión para el usuario conectado, su carrito y sus métodos de pago; el resto
+    // de consultas (login, catálogo, biblioteca, historial) pide una conexión del pool cada vez
     private static Connection connection;
     static Usuario usuarioActual;
     private static final Scanner scanner = new Scanner(System.in);
+    // Filas por página en la biblioteca y el historial
+    private static final int TAMANO_PAGINA = 20;
+    // Espera máxima por la confirmación de un pedido encolado
+    private static final long ESPERA_PEDIDO_MS = Long.getLong("mivalgamer.checkout.esperaMs", 30_000L);
 
     public static void main(String[] args) {
         System.setProperty("java.util.logging.SimpleFormatter.format", "%4$s: %5$s%6$s%n");
@@ -26,6 +36,12 @@ public class Proyecto {
                 LOGGER.severe("No se pudo establecer conexion con la base de datos");
                 return;
             }
+            // Empieza a llenar la reserva de keys, el filtro de emails y el libro de crédito antes de que se necesiten
+            ServicioKeysActivacion.global();
+            FiltroEmails.global();
+            LibroCredito.global();
+            // Aplica los movimientos que quedaron pendientes en la ejecución anterior
+            LibroTransacciones.global();
 
             mostrarMenuPrincipal();
         } catch (Exception e) {
@@ -39,6 +55,14 @@ public class Proyecto {
                     LOGGER.log(Level.SEVERE, "Error al cerrar conexion", ex);
                 }
             }
+            ColaPedidos.cerrarGlobal();
+            PasarelaProtegida.cerrarGlobal();
+            LibroCredito.cerrarGlobal();
+            LibroTransacciones.cerrarGlobal();
+            CarritoCompra.cerrarTodos();
+            RegistroUltimoLogin.cerrarGlobal();
+            FiltroEmails.cerrarGlobal();
+            ConexionBaseDatos.cerrarPool();
         }
     }
 
@@ -82,7 +106,7 @@ public class Proyecto {
         String password = scanner.nextLine();
 
         try {
-            Autentificacion auth = new Autentificacion(connection);
+            Autentificacion auth = new Autentificacion(ConexionBaseDatos.getDataSource(), connection);
             usuarioActual = auth.iniciarSesion(email, password);
 
             if (usuarioActual != null) {
@@ -91,6 +115,9 @@ public class Proyecto {
             } else {
                 System.out.println("\nCredenciales incorrectas");
             }
+        } catch (IllegalStateException e) {
+            // Límite de intentos superado
+            System.out.println("\n" + e.getMessage());
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "Error de autenticacion", e);
             System.out.println("\nError al iniciar sesion");
@@ -103,7 +130,7 @@ public class Proyecto {
             return;
         }
 
-        Autentificacion auth = new Autentificacion(connection);
+        Autentificacion auth = new Autentificacion(ConexionBaseDatos.getDataSource(), connection);
 
         System.out.print("\nNombre: ");
         String nombre = scanner.nextLine();
@@ -117,6 +144,9 @@ public class Proyecto {
 
             if (!emailValido) {
                 System.out.println("Error: Formato de correo invalido.");
+            } else if (!auth.emailDisponible(email)) {
+                System.out.println("Error: Este correo ya esta registrado");
+                emailValido = false;
             }
         } while (!emailValido);
 
@@ -141,6 +171,9 @@ public class Proyecto {
             System.out.println("\nRegistro exitoso! Ahora puedes iniciar sesion");
         } catch (IllegalArgumentException e) {
             System.out.println("\nError: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            // Cola de hashes llena: el usuario no se ha creado y puede reintentarlo
+            System.out.println("\n" + e.getMessage());
         } catch (SQLException e) {
             if (e.getSQLState().equals("23505")) {
                 System.out.println("\nError: Este correo ya esta registrado");
@@ -152,7 +185,7 @@ public class Proyecto {
     }
 
     private static void mostrarMenuUsuario() throws SQLException {
-        Autentificacion auth = new Autentificacion(connection);
+        Autentificacion auth = new Autentificacion(ConexionBaseDatos.getDataSource(), connection);
 
         while (true) {
             System.out.println("\n=== MENU PRINCIPAL ===");
@@ -169,6 +202,15 @@ public class Proyecto {
 
             int opcion = leerEntero();
             scanner.nextLine();
+            // Cada cambio de pantalla presenta el token: renueva la sesión o la da por terminada
+            if (!auth.sesionVigente(usuarioActual)) {
+                if (usuarioActual.getCarrito() != null) {
+                    usuarioActual.getCarrito().cerrar();
+                }
+                usuarioActual = null;
+                System.out.println("\nTu sesion ha caducado. Inicia sesion de nuevo.");
+                return;
+            }
             switch (opcion) {
                 case 1 -> mostrarCatalogoCompleto();
                 case 2 -> mostrarPorPlataforma();
@@ -177,7 +219,14 @@ public class Proyecto {
                 case 5 -> mostrarBiblioteca();
                 case 6 -> mostrarPedidos();
                 case 7 -> gestionarMetodosPago();
-                case 8 -> { usuarioActual = null; return; }
+                case 8 -> {
+                    if (usuarioActual.getCarrito() != null) {
+                        usuarioActual.getCarrito().cerrar();
+                    }
+                    auth.cerrarSesion(usuarioActual);
+                    usuarioActual = null;
+                    return;
+                }
                 case 9 -> {
                     System.out.print("\nContrasena actual: ");
                     String actual = scanner.nextLine();
@@ -200,7 +249,7 @@ public class Proyecto {
                         auth.cambiarContrasena(usuarioActual.getIdUsuario(), nueva);
                         System.out.println("Contrasena cambiada exitosamente");
 
-                    } catch (IllegalArgumentException e) {
+                    } catch (IllegalArgumentException | IllegalStateException e) {
                         System.out.println("Error: " + e.getMessage());
                     } catch (SQLException e) {
                         System.out.println("Error al cambiar contrasena: " + e.getMessage());
@@ -215,17 +264,18 @@ public class Proyecto {
 
     private static void mostrarCatalogoCompleto() {
         try {
-            List<Videojuego> juegos = Videojuego.obtenerTodos(connection);
-            for (Videojuego juego : juegos) {
-                // Obtener todas las plataformas del videojuego
-                List<Plataforma> plataformas = Plataforma.obtenerPorVideojuego(connection, juego.getIdVideojuego());
+            List<Videojuego> juegos;
+            Map<Long, List<Plataforma>> plataformasPorJuego;
+            try (Connection conn = ConexionBaseDatos.getDataSource().getConnection()) {
+                juegos = Videojuego.obtenerTodos(conn);
+                // Plataformas de todo el catálogo en una sola consulta
+                plataformasPorJuego = Plataforma.obtenerPorVideojuegos(conn, idsDe(juegos));
+            }
+            boolean[] enBiblioteca = usuarioActual.getBiblioteca().contieneTodos(idsArray(juegos));
+            for (int i = 0; i < juegos.size(); i++) {
+                Videojuego juego = juegos.get(i);
                 System.out.print(juego.getTitulo() + " | Plataformas: ");
-                for (int i = 0; i < plataformas.size(); i++) {
-                    System.out.print(plataformas.get(i).getNombreComercial());
-                    if (i < plataformas.size() - 1) {
-                        System.out.print(", ");
-                    }
-                }
+                System.out.print(Plataforma.unirNombres(plataformasPorJuego.get(juego.getIdVideojuego()), ""));
                 // Aquí agregamos el estado a la impresión
                 System.out.print(" | Estado: ");
                 if (juego.getEstado() != null) {
@@ -235,6 +285,9 @@ public class Proyecto {
                 }
                 // También puedes incluir precio si lo necesitas
                 System.out.printf(" | Precio: $%.2f", juego.getPrecio());
+                if (enBiblioteca[i]) {
+                    System.out.print(" | En tu biblioteca");
+                }
                 System.out.println();
             }
 
@@ -255,24 +308,27 @@ public class Proyecto {
     private static void mostrarDetallesJuego(Videojuego juego) throws SQLException {
         // Obtener género
         String nombreGenero = "";
-        try {
-            // Consulta para obtener el nombre del género
-            String sqlGenero = "SELECT nombre FROM genero WHERE id_genero = ?";
-            try (PreparedStatement stmt = connection.prepareStatement(sqlGenero)) {
-                stmt.setLong(1, juego.getIdGenero());
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        nombreGenero = rs.getString("nombre");
+        List<Plataforma> plataformas;
+        try (Connection conn = ConexionBaseDatos.getDataSource().getConnection()) {
+            try {
+                // Consulta para obtener el nombre del género
+                String sqlGenero = "SELECT nombre FROM genero WHERE id_genero = ?";
+                try (PreparedStatement stmt = conn.prepareStatement(sqlGenero)) {
+                    stmt.setLong(1, juego.getIdGenero());
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            nombreGenero = rs.getString("nombre");
+                        }
                     }
                 }
+            } catch (SQLException e) {
+                nombreGenero = "Desconocido";
+                LOGGER.log(Level.WARNING, "Error al obtener género del juego", e);
             }
-        } catch (SQLException e) {
-            nombreGenero = "Desconocido";
-            LOGGER.log(Level.WARNING, "Error al obtener género del juego", e);
-        }
 
-        // Obtener plataformas
-        List<Plataforma> plataformas = juego.obtenerPlataformas(connection);
+            // Obtener plataformas
+            plataformas = juego.obtenerPlataformas(conn);
+        }
         StringBuilder plataformasStr = new StringBuilder();
         for (int i = 0; i < plataformas.size(); i++) {
             plataformasStr.append(plataformas.get(i).getNombreComercial());
@@ -308,7 +364,10 @@ public class Proyecto {
 
     private static void mostrarPorPlataforma() {
         try {
-            List<Plataforma> plataformas = Plataforma.obtenerTodas(connection);
+            List<Plataforma> plataformas;
+            try (Connection conn = ConexionBaseDatos.getDataSource().getConnection()) {
+                plataformas = Plataforma.obtenerTodas(conn);
+            }
             System.out.println("\n=== PLATAFORMAS DISPONIBLES ===");
             for (int i = 0; i < plataformas.size(); i++) {
                 System.out.printf("%d. %s%n", i + 1, plataformas.get(i).getNombreComercial());
@@ -317,8 +376,10 @@ public class Proyecto {
             System.out.print("\nSeleccione una plataforma (0 para volver): ");
             int seleccion = leerEntero();
             if (seleccion > 0 && seleccion <= plataformas.size()) {
-                List<Videojuego> juegos = Videojuego.obtenerPorPlataforma(
-                        connection, plataformas.get(seleccion - 1).getIdPlataforma());
+                List<Videojuego> juegos;
+                try (Connection conn = ConexionBaseDatos.getDataSource().getConnection()) {
+                    juegos = Videojuego.obtenerPorPlataforma(conn, plataformas.get(seleccion - 1).getIdPlataforma());
+                }
 
                 System.out.println("\n=== JUEGOS DISPONIBLES ===");
                 mostrarListaJuegos(juegos);
@@ -354,7 +415,10 @@ public class Proyecto {
 
     private static void mostrarJuegosEnDescuento() {
         try {
-            List<Videojuego> juegos = Videojuego.obtenerEnDescuento(connection);
+            List<Videojuego> juegos;
+            try (Connection conn = ConexionBaseDatos.getDataSource().getConnection()) {
+                juegos = Videojuego.obtenerEnDescuento(conn);
+            }
             System.out.println("\n=== JUEGOS EN DESCUENTO ===");
             mostrarListaJuegos(juegos);
 
@@ -388,21 +452,53 @@ public class Proyecto {
     }
 
     private static void mostrarListaJuegos(List<Videojuego> juegos) {
+        Map<Long, List<Plataforma>> plataformasPorJuego;
+        try (Connection conn = ConexionBaseDatos.getDataSource().getConnection()) {
+            plataformasPorJuego = Plataforma.obtenerPorVideojuegos(conn, idsDe(juegos));
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Error al cargar plataformas", e);
+            plataformasPorJuego = null;
+        }
+        boolean[] enBiblioteca;
+        try {
+            enBiblioteca = usuarioActual.getBiblioteca().contieneTodos(idsArray(juegos));
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Error al cargar la biblioteca", e);
+            enBiblioteca = new boolean[juegos.size()];
+        }
+
         int i = 1;
         for (Videojuego juego : juegos) {
             // Ejemplo de cómo mostrar título, plataformas y estado
-            try {
-                List<Plataforma> plataformas = juego.obtenerPlataformas(connection);
-                String plataformasStr = plataformas.isEmpty() ? "Sin plataformas" :
-                        plataformas.stream().map(Plataforma::getNombreComercial).reduce((a,b) -> a + ", " + b).orElse("");
-                System.out.printf("%d) %s | Plataformas: %s | Estado: %s | Precio: $%.2f\n",
-                        i++, juego.getTitulo(), plataformasStr, juego.getEstado().name(), juego.getPrecio());
-            } catch (SQLException e) {
+            if (plataformasPorJuego == null) {
                 System.out.println(i++ + ") " + juego.getTitulo() + " (Error cargando plataformas)");
-            }
+                continue;
+            }
+            String plataformasStr = Plataforma.unirNombres(
+                    plataformasPorJuego.get(juego.getIdVideojuego()), "Sin plataformas");
+            System.out.printf("%d) %s | Plataformas: %s | Estado: %s | Precio: $%.2f%s\n",
+                    i, juego.getTitulo(), plataformasStr, juego.getEstado().name(), juego.getPrecio(),
+                    enBiblioteca[i - 1] ? " | En tu biblioteca" : "");
+            i++;
         }
     }
 
+    private static List<Long> idsDe(List<Videojuego> juegos) {
+        List<Long> ids = new ArrayList<>(juegos.size());
+        for (Videojuego juego : juegos) {
+            ids.add(juego.getIdVideojuego());
+        }
+        return ids;
+    }
+
+    private static long[] idsArray(List<Videojuego> juegos) {
+        long[] ids = new long[juegos.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = juegos.get(i).getIdVideojuego();
+        }
+        return ids;
+    }
+
     private static void agregarAlCarrito(Videojuego juego) {
         System.out.print("Cantidad: ");
         int cantidad = leerEntero();
@@ -411,7 +507,8 @@ public class Proyecto {
         try {
             // Verificar y crear carrito si no existe
             if (usuarioActual.getCarrito() == null) {
-                usuarioActual.setCarrito(new CarritoCompra(usuarioActual, connection));
+                usuarioActual.setCarrito(CarritoCompra.conEscrituraDiferida(
+                        usuarioActual, connection, ConexionBaseDatos.getDataSource()));
             }
 
             CarritoCompra carrito = usuarioActual.getCarrito();
@@ -436,20 +533,27 @@ public class Proyecto {
             }
 
             Biblioteca biblioteca = usuarioActual.getBiblioteca();
-            List<Biblioteca.ItemBiblioteca> items = biblioteca.getJuegos();
+            Pagina<Biblioteca.ItemBiblioteca> pagina =
+                    biblioteca.getJuegos(Biblioteca.Orden.FECHA_COMPRA, TAMANO_PAGINA, null);
 
             System.out.println("\n=== TU BIBLIOTECA ===");
-            if (items.isEmpty()) {
+            if (pagina.getElementos().isEmpty()) {
                 System.out.println("No tienes juegos en tu biblioteca");
-            } else {
-                for (int i = 0; i < items.size(); i++) {
-                    Biblioteca.ItemBiblioteca item = items.get(i);
+                return;
+            }
+            int numero = 1;
+            while (true) {
+                for (Biblioteca.ItemBiblioteca item : pagina.getElementos()) {
                     System.out.printf("%d. %s - Key: %s | Comprado: %s%n",
-                            i + 1,
+                            numero++,
                             item.getJuego().getTitulo(),
                             item.getKeyActivacion(),
                             item.getFechaCompra().toLocalDate());
                 }
+                if (!pagina.hayMas() || !verMas()) {
+                    break;
+                }
+                pagina = biblioteca.getJuegos(Biblioteca.Orden.FECHA_COMPRA, TAMANO_PAGINA, pagina.getSiguiente());
             }
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error al cargar la biblioteca", e);
@@ -464,23 +568,38 @@ public class Proyecto {
                 return;
             }
 
-            HistorialCompras historial = new HistorialCompras(usuarioActual, connection);
-            List<Pedido> pedidos = historial.getPedidosRecientes();
+            HistorialCompras historial = usuarioActual.getHistorialCompras();
+            Pagina<Pedido> pagina = historial.getPedidos(HistorialCompras.Orden.FECHA, TAMANO_PAGINA, null);
 
-            if (pedidos.isEmpty()) {
+            if (pagina.getElementos().isEmpty()) {
                 System.out.println("\nNo tienes compras registradas");
                 return;
             }
 
             System.out.println("\n=== HISTORIAL DE COMPRAS ===");
-            for (int i = 0; i < pedidos.size(); i++) {
-                Pedido pedido = pedidos.get(i);
-                System.out.printf("%d. Pedido #%s - Total: $%.2f - Fecha: %s - Estado: %s%n",
-                        i + 1,
-                        pedido.getIdPedido(),
-                        pedido.getTotal(),
-                        pedido.getFechaCreacion().toLocalDate(),
-                        pedido.getEstado());
+            ResumenUsuario resumen = usuarioActual.getResumen();
+            System.out.printf("Total gastado: $%.2f en %d pedidos%n",
+                    resumen.getTotalGastado(), resumen.getPedidos());
+            if (resumen.getUltimaCompra() != null) {
+                System.out.println("Ultima compra: " + resumen.getUltimaCompra().toLocalDate());
+            }
+            if (resumen.getPlataformaFavorita() != null) {
+                System.out.println("Plataforma favorita: " + resumen.getPlataformaFavorita().getNombreComercial());
+            }
+            int numero = 1;
+            while (true) {
+                for (Pedido pedido : pagina.getElementos()) {
+                    System.out.printf("%d. Pedido #%s - Total: $%.2f - Fecha: %s - Estado: %s%n",
+                            numero++,
+                            pedido.getIdPedido(),
+                            pedido.getTotal(),
+                            pedido.getFechaCreacion().toLocalDate(),
+                            pedido.getEstado());
+                }
+                if (!pagina.hayMas() || !verMas()) {
+                    break;
+                }
+                pagina = historial.getPedidos(HistorialCompras.Orden.FECHA, TAMANO_PAGINA, pagina.getSiguiente());
             }
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error al cargar el historial", e);
@@ -488,29 +607,17 @@ public class Proyecto {
         }
     }
 
+    private static boolean verMas() {
+        System.out.print("Ver más? (s/n): ");
+        return scanner.nextLine().trim().equalsIgnoreCase("s");
+    }
+
     private static void eliminarMetodoPago(int idMetodo) {
         try {
-            // Primero eliminar la relación usuario-metodo_pago
-            String sql = "DELETE FROM usuario_metodo_pago WHERE id_usuario = ? AND id_metodo = ?";
-
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setString(1, usuarioActual.getIdUsuario());
-                stmt.setInt(2, idMetodo);
-                int filasAfectadas = stmt.executeUpdate();
-
-                if (filasAfectadas > 0) {
-                    System.out.println("Método de pago eliminado correctamente");
-
-                    // Opcional: Eliminar también el método de pago de la tabla principal
-                    // si no hay otras referencias a él
-                    String sqlEliminarMetodo = "DELETE FROM metodo_pago WHERE id_metodo = ?";
-                    try (PreparedStatement stmtMetodo = connection.prepareStatement(sqlEliminarMetodo)) {
-                        stmtMetodo.setInt(1, idMetodo);
-                        stmtMetodo.executeUpdate();
-                    }
-                } else {
-                    System.out.println("No se encontró el método de pago");
-                }
+            if (usuarioActual.eliminarMetodoPago(idMetodo)) {
+                System.out.println("Método de pago eliminado correctamente");
+            } else {
+                System.out.println("No se encontró el método de pago");
             }
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "Error al eliminar método de pago", e);
@@ -587,10 +694,11 @@ public class Proyecto {
         while (true) {
             System.out.print("Numero de tarjeta: ");
             numero = scanner.nextLine();
-            if (numero.matches("\\d{10}")) {
+            ErrorValidacion error = Validador.validarNumeroTarjeta(numero);
+            if (error.esValido()) {
                 break;
             } else {
-                System.out.println("El número de tarjeta debe tener exactamente 10 dígitos numéricos.");
+                System.out.println(error.getMensaje());
             }
         }
 
@@ -598,17 +706,13 @@ public class Proyecto {
         Date fechaExpiracion;
         while (true) {
             System.out.print("Fecha de expiracion (YYYY-MM-DD): ");
-            String fechaInput = scanner.nextLine();
-            try {
+            String fechaInput = scanner.nextLine().trim();
+            ErrorValidacion error = Validador.validarFechaExpiracion(fechaInput, LocalDate.now());
+            if (error.esValido()) {
                 fechaExpiracion = Date.valueOf(fechaInput);
-                LocalDate fechaIngresada = fechaExpiracion.toLocalDate();
-                if (fechaIngresada.isAfter(LocalDate.now())) {
-                    break;
-                } else {
-                    System.out.println("Tarjeta expirada.");
-                }
-            } catch (IllegalArgumentException e) {
-                System.out.println("Formato de fecha inválido. Intente de nuevo (YYYY-MM-DD).");
+                break;
+            } else {
+                System.out.println(error.getMensaje());
             }
         }
 
@@ -617,7 +721,7 @@ public class Proyecto {
         while (true) {
             System.out.print("CVV: ");
             cvv = scanner.nextLine();
-            if (cvv.matches("\\d{3,4}")) {
+            if (Validador.validarCvv(cvv).esValido()) {
                 break;
             } else {
                 System.out.println("CVV no valido.");
@@ -630,11 +734,11 @@ public class Proyecto {
                 // Si decides pedir el número de cuenta para débito, agrégalo aquí si hace falta
                 metodo = new TarjetaDebito(connection, titular, numero, fechaExpiracion, cvv);
             } else {
-                double limite;
+                long limite;
                 while (true) {
                     System.out.print("Limite de credito: ");
                     try {
-                        limite = Double.parseDouble(scanner.nextLine());
+                        limite = Monto.deTexto(scanner.nextLine());
                         if (limite > 0) {
                             break;
                         } else {
@@ -650,12 +754,7 @@ public class Proyecto {
             metodo.guardarEnBD();
             System.out.println("Metodo de pago agregado exitosamente!");
 
-            String sql = "INSERT INTO usuario_metodo_pago (id_usuario, id_metodo) VALUES (?, ?)";
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setString(1, usuarioActual.getIdUsuario());
-                stmt.setInt(2, metodo.getIdMetodo());
-                stmt.executeUpdate();
-            }
+            usuarioActual.agregarMetodoPago(metodo);
 
         } catch (SQLException e) {
             System.out.println("Error al guardar metodo de pago: " + e.getMessage());
@@ -702,20 +801,32 @@ public class Proyecto {
 
             // Aquí ya no se pregunta ni se usa el código de descuento
 
-            Pedido pedido = PedidoFactory.crearPedidoDesdeCarrito(
-                    connection,
-                    carrito.getItems(),
-                    metodoPagoId,
-                    null,  // El parámetro del código de descuento se pone null si es necesario
-                    usuarioActual);
+            // El pedido se confirma en la cola de checkout junto con los de otras sesiones
+            Pedido pedido;
+            try {
+                pedido = ColaPedidos.global().enviar(
+                        usuarioActual,
+                        carrito.getItems(),
+                        metodoPagoId,
+                        null  // El parámetro del código de descuento se pone null si es necesario
+                ).get(ESPERA_PEDIDO_MS, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception causa ? causa : e;
+            } catch (TimeoutException e) {
+                // El pedido sigue en la cola: no se vacía el carrito para no perderlo si acaba fallando
+                System.out.println("Tu pedido sigue procesándose. Revisa tu historial de compras en unos minutos " +
+                        "antes de volver a intentarlo.");
+                return;
+            }
 
             System.out.println("Pedido creado exitosamente con ID: " + pedido.getIdPedido());
             System.out.println("\n¡Gracias por tu compra! Aquí tienes las claves de activación de tus juegos:");
             int index = 1;
             for (ItemPedido item : pedido.getItems()) {
                 String key = "";
-                try (PreparedStatement stmt = connection.prepareStatement(
-                        "SELECT key_activacion FROM biblioteca WHERE id_usuario = ? AND id_videojuego = ?")) {
+                try (Connection conn = ConexionBaseDatos.getDataSource().getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(
+                             "SELECT key_activacion FROM biblioteca WHERE id_usuario = ? AND id_videojuego = ?")) {
                     stmt.setString(1, usuarioActual.getIdUsuario());
                     stmt.setLong(2, item.getJuego().getIdVideojuego());
                     try (ResultSet rs = stmt.executeQuery()) {
@@ -731,7 +842,9 @@ public class Proyecto {
 
                 System.out.printf("%d. %s - Key: %s%n", index++, item.getJuego().getTitulo(), key);
             }
+            carrito.sincronizar();
             carrito.cambiarEstado(EstadoCarrito.FINALIZADO);
+            carrito.cerrar();
             usuarioActual.setCarrito(null); // Vaciar carrito al finalizar la compra
 
         } catch (Exception e) {
@@ -0,0 +1,135 @@
+package mivalgamer.app;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registro diferido de autenticacion.ultimo_login.
+ * El login solo anota la hora en memoria; un hilo en segundo plano vuelca periódicamente
+ * todas las anotaciones en un único lote de UPDATE dentro de una transacción. Varios logins
+ * del mismo usuario entre volcados se funden en uno. Como mucho se pierde el último
+ * intervalo si la JVM termina de forma abrupta; al cerrar se hace un volcado final.
+ */
+public class RegistroUltimoLogin implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(RegistroUltimoLogin.class.getName());
+
+    private static volatile RegistroUltimoLogin global;
+
+    private final DataSource dataSource;
+    private final Map<String, Long> pendientes = new ConcurrentHashMap<>(); // id_usuario -> epoch ms
+    private final Object volcadoLock = new Object();
+    private final ScheduledExecutorService volcador =
+            Executors.newSingleThreadScheduledExecutor(new FabricaHilos("ultimo-login"));
+
+    private final AtomicLong registrados = new AtomicLong();
+    private final AtomicLong volcados = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+
+    public RegistroUltimoLogin(DataSource dataSource, long intervaloMs) {
+        if (dataSource == null || intervaloMs <= 0) {
+            throw new IllegalArgumentException("Parámetros inválidos para el registro de último login");
+        }
+        this.dataSource = dataSource;
+        volcador.scheduleWithFixedDelay(this::volcar, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static RegistroUltimoLogin global() {
+        RegistroUltimoLogin actual = global;
+        if (actual == null) {
+            synchronized (RegistroUltimoLogin.class) {
+                actual = global;
+                if (actual == null) {
+                    actual = new RegistroUltimoLogin(ConexionBaseDatos.getDataSource(),
+                            Long.getLong("mivalgamer.login.volcadoMs", 10_000L));
+                    Runtime.getRuntime().addShutdownHook(new Thread(actual::volcar, "ultimo-login-volcado-final"));
+                    global = actual;
+                }
+            }
+        }
+        return actual;
+    }
+
+    /**
+     * Vuelca lo pendiente y detiene el registro compartido. Debe llamarse antes de cerrar el pool.
+     */
+    public static synchronized void cerrarGlobal() {
+        if (global != null) {
+            global.close();
+            global = null;
+        }
+    }
+
+    public void registrar(String idUsuario) {
+        pendientes.merge(idUsuario, System.currentTimeMillis(), Math::max);
+        registrados.incrementAndGet();
+    }
+
+    /**
+     * Escribe todas las horas pendientes en un solo lote. Si falla se conservan para el
+     * siguiente volcado.
+     */
+    public void volcar() {
+        synchronized (volcadoLock) {
+            if (pendientes.isEmpty()) {
+                return;
+            }
+            // Orden fijo por id para que volcados concurrentes de varios nodos bloqueen filas en el mismo orden
+            Map<String, Long> lote = new TreeMap<>(pendientes);
+
+            String sql = "UPDATE autenticacion SET ultimo_login = ? WHERE id_usuario = ?";
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (Map.Entry<String, Long> entrada : lote.entrySet()) {
+                        stmt.setTimestamp(1, new Timestamp(entrada.getValue()));
+                        stmt.setString(2, entrada.getKey());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    conn.commit();
+                } catch (SQLException ex) {
+                    conn.rollback();
+                    throw ex;
+                }
+            } catch (SQLException ex) {
+                fallos.incrementAndGet();
+                LOGGER.log(Level.WARNING, "No se pudo volcar el último login de " + lote.size() +
+                        " usuarios; se reintentará", ex);
+                return;
+            }
+
+            // Un login posterior durante el volcado deja su hora para el siguiente lote
+            for (Map.Entry<String, Long> entrada : lote.entrySet()) {
+                pendientes.remove(entrada.getKey(), entrada.getValue());
+            }
+            lotes.incrementAndGet();
+            volcados.addAndGet(lote.size());
+        }
+    }
+
+    @Override
+    public void close() {
+        volcador.shutdown();
+        volcar();
+    }
+
+    // Métricas
+    public int getPendientes() { return pendientes.size(); }
+    public long getRegistrados() { return registrados.get(); }
+    public long getVolcados() { return volcados.get(); }
+    public long getLotes() { return lotes.get(); }
+    public long getFallos() { return fallos.get(); }
+}
@@ -0,0 +1,114 @@
+package mivalgamer.app;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Resumen de compras de un usuario: gasto total, número de pedidos, última compra y
+ * plataforma favorita (la de más unidades compradas). Se mantiene en resumen_usuario y
+ * compras_plataforma con upserts dentro de la transacción de cada pedido, así que leerlo
+ * es una sola fila por clave primaria aunque el historial tenga años.
+ */
+public final class ResumenUsuario {
+    private static final String SQL_SUMAR_PEDIDO = "INSERT INTO resumen_usuario " +
+            "(id_usuario, total, pedidos, ultima_compra) VALUES (?, ?, 1, ?) " +
+            "ON DUPLICATE KEY UPDATE total = total + VALUES(total), pedidos = pedidos + 1, " +
+            "ultima_compra = GREATEST(ultima_compra, VALUES(ultima_compra))";
+    // Cada unidad de un item cuenta para todas las plataformas de su juego: comprar dos copias
+    // pesa lo mismo que comprar dos juegos distintos
+    private static final String SQL_SUMAR_PLATAFORMAS = "INSERT INTO compras_plataforma " +
+            "(id_usuario, id_plataforma, juegos) " +
+            "SELECT ?, vp.id_plataforma, SUM(ip.cantidad) FROM item_pedido ip " +
+            "JOIN videojuego_plataforma vp ON vp.id_videojuego = ip.id_videojuego " +
+            "WHERE ip.id_pedido = ? GROUP BY vp.id_plataforma " +
+            "ON DUPLICATE KEY UPDATE juegos = juegos + VALUES(juegos)";
+    private static final String SQL_ELEGIR_FAVORITA = "UPDATE resumen_usuario SET id_plataforma_favorita = " +
+            "(SELECT cp.id_plataforma FROM compras_plataforma cp WHERE cp.id_usuario = ? " +
+            "ORDER BY cp.juegos DESC, cp.id_plataforma LIMIT 1) WHERE id_usuario = ?";
+
+    private static final ResumenUsuario VACIO = new ResumenUsuario(0, 0, null, null);
+
+    private final long totalGastado; // centavos
+    private final int pedidos;
+    private final LocalDateTime ultimaCompra;
+    private final Plataforma plataformaFavorita;
+
+    private ResumenUsuario(long totalGastado, int pedidos, LocalDateTime ultimaCompra,
+                           Plataforma plataformaFavorita) {
+        this.totalGastado = totalGastado;
+        this.pedidos = pedidos;
+        this.ultimaCompra = ultimaCompra;
+        this.plataformaFavorita = plataformaFavorita;
+    }
+
+    /**
+     * Lee el resumen del usuario; si aún no ha comprado nada devuelve uno vacío.
+     */
+    static ResumenUsuario cargar(Connection conn, String idUsuario) throws SQLException {
+        String sql = "SELECT r.total, r.pedidos, r.ultima_compra, " +
+                "p.id_plataforma, p.nombre_comercial, p.fabricante " +
+                "FROM resumen_usuario r " +
+                "LEFT JOIN plataforma p ON p.id_plataforma = r.id_plataforma_favorita " +
+                "WHERE r.id_usuario = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, idUsuario);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return VACIO;
+                }
+                Timestamp ultima = rs.getTimestamp("ultima_compra");
+                long idPlataforma = rs.getLong("id_plataforma");
+                Plataforma favorita = rs.wasNull() ? null : new Plataforma(
+                        idPlataforma, rs.getString("nombre_comercial"), rs.getString("fabricante"));
+                return new ResumenUsuario(Monto.leer(rs, "total"), rs.getInt("pedidos"),
+                        ultima == null ? null : ultima.toLocalDateTime(), favorita);
+            }
+        }
+    }
+
+    /**
+     * Suma un pedido pagado al resumen de su usuario. Se llama dentro de la transacción del
+     * pedido, con sus items ya guardados, para que el resumen se confirme o se deshaga con él.
+     */
+    static void registrarPedido(Connection conn, String idUsuario, String idPedido,
+                                long total, LocalDateTime fecha) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_SUMAR_PEDIDO)) {
+            stmt.setString(1, idUsuario);
+            Monto.escribir(stmt, 2, total);
+            stmt.setTimestamp(3, Timestamp.valueOf(fecha));
+            stmt.executeUpdate();
+        }
+        int plataformas;
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_SUMAR_PLATAFORMAS)) {
+            stmt.setString(1, idUsuario);
+            stmt.setString(2, idPedido);
+            plataformas = stmt.executeUpdate();
+        }
+        if (plataformas > 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_ELEGIR_FAVORITA)) {
+                stmt.setString(1, idUsuario);
+                stmt.setString(2, idUsuario);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    public long getTotalGastadoCentavos() { return totalGastado; }
+    public double getTotalGastado() { return Monto.aDouble(totalGastado); }
+    public int getPedidos() { return pedidos; }
+
+    /**
+     * Fecha del último pedido pagado, o null si no hay ninguno.
+     */
+    public LocalDateTime getUltimaCompra() { return ultimaCompra; }
+
+    /**
+     * Plataforma con más unidades compradas (a igualdad, la de menor id), o null si ninguno
+     * de los juegos comprados tiene plataforma.
+     */
+    public Plataforma getPlataformaFavorita() { return plataformaFavorita; }
+}
@@ -0,0 +1,163 @@
+package mivalgamer.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hash y verificación de contraseñas en un ejecutor propio y acotado.
+ * El trabajo de CPU de PBKDF2 se limita a unos pocos hilos con una cola de tamaño fijo:
+ * una avalancha de logins espera (o se rechaza si la cola se llena) en lugar de ocupar
+ * todos los núcleos que necesitan el carrito y el checkout. Los hashes nuevos usan el
+ * algoritmo actual; los de algoritmos anteriores se verifican y se indica su rehash.
+ */
+public class ServicioHash implements AutoCloseable {
+    private static volatile ServicioHash global;
+
+    private final PasswordHasher actual;
+    private final List<PasswordHasher> admitidos;
+    private final ThreadPoolExecutor ejecutor;
+
+    private final AtomicLong tareas = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong esperaTotalNanos = new AtomicLong();
+    private final AtomicLong esperaMaximaNanos = new AtomicLong();
+
+    public ServicioHash(PasswordHasher actual, List<PasswordHasher> anteriores, int hilos, int capacidadCola) {
+        if (actual == null || hilos <= 0 || capacidadCola <= 0) {
+            throw new IllegalArgumentException("Parámetros inválidos para el servicio de hash");
+        }
+        this.actual = actual;
+        this.admitidos = new ArrayList<>(anteriores.size() + 1);
+        this.admitidos.add(actual);
+        this.admitidos.addAll(anteriores);
+        this.ejecutor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacidadCola), new FabricaHilos("hash-password"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static ServicioHash global() {
+        ServicioHash servicio = global;
+        if (servicio == null) {
+            synchronized (ServicioHash.class) {
+                servicio = global;
+                if (servicio == null) {
+                    int hilos = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+                    servicio = new ServicioHash(
+                            new HasherPbkdf2(Integer.getInteger("mivalgamer.hash.iteraciones", 310_000)),
+                            List.of(new HasherSha256Legado()),
+                            Integer.getInteger("mivalgamer.hash.hilos", hilos),
+                            Integer.getInteger("mivalgamer.hash.cola", 64));
+                    global = servicio;
+                }
+            }
+        }
+        return servicio;
+    }
+
+    public String hash(String password) {
+        return ejecutar(() -> actual.hash(password));
+    }
+
+    /**
+     * Verifica la contraseña y, si es correcta pero el hash es de un algoritmo o coste
+     * anterior, calcula en la misma tarea el hash nuevo que debe guardarse.
+     */
+    public Verificacion verificar(String password, String almacenado) {
+        if (password == null || almacenado == null) {
+            return Verificacion.INVALIDA;
+        }
+        PasswordHasher hasher = buscar(almacenado);
+        if (hasher == null) {
+            return Verificacion.INVALIDA;
+        }
+        return ejecutar(() -> {
+            if (!hasher.verificar(password, almacenado)) {
+                return Verificacion.INVALIDA;
+            }
+            boolean rehash = hasher != actual || actual.necesitaRehash(almacenado);
+            return new Verificacion(true, rehash ? actual.hash(password) : null);
+        });
+    }
+
+    private PasswordHasher buscar(String almacenado) {
+        for (PasswordHasher hasher : admitidos) {
+            if (hasher.admite(almacenado)) {
+                return hasher;
+            }
+        }
+        return null;
+    }
+
+    private <T> T ejecutar(Supplier<T> trabajo) {
+        long encolada = System.nanoTime();
+        Future<T> futuro;
+        try {
+            futuro = ejecutor.submit(() -> {
+                long espera = System.nanoTime() - encolada;
+                esperaTotalNanos.addAndGet(espera);
+                esperaMaximaNanos.accumulateAndGet(espera, Math::max);
+                tareas.incrementAndGet();
+                return trabajo.get();
+            });
+        } catch (RejectedExecutionException ex) {
+            rechazadas.incrementAndGet();
+            throw new IllegalStateException("Demasiados inicios de sesión simultáneos, inténtalo de nuevo", ex);
+        }
+        try {
+            return futuro.get();
+        } catch (InterruptedException ex) {
+            futuro.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando el hash de la contraseña", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Error al calcular el hash de la contraseña", ex.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        ejecutor.shutdown();
+    }
+
+    // Métricas
+    public int getEnCola() { return ejecutor.getQueue().size(); }
+    public int getActivos() { return ejecutor.getActiveCount(); }
+    public long getTareas() { return tareas.get(); }
+    public long getRechazadas() { return rechazadas.get(); }
+    public double getEsperaMaximaMs() { return esperaMaximaNanos.get() / 1_000_000.0; }
+
+    public double getEsperaMediaMs() {
+        long n = tareas.get();
+        return n == 0 ? 0.0 : esperaTotalNanos.get() / 1_000_000.0 / n;
+    }
+
+    /**
+     * Resultado de una verificación. Si {@link #getNuevoHash()} no es null hay que
+     * guardarlo en lugar del hash actual.
+     */
+    public static final class Verificacion {
+        static final Verificacion INVALIDA = new Verificacion(false, null);
+
+        private final boolean valida;
+        private final String nuevoHash;
+
+        private Verificacion(boolean valida, String nuevoHash) {
+            this.valida = valida;
+            this.nuevoHash = nuevoHash;
+        }
+
+        public boolean isValida() { return valida; }
+        public String getNuevoHash() { return nuevoHash; }
+    }
+}
@@ -0,0 +1,195 @@
+package mivalgamer.app;
+
+import javax.sql.DataSource;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reserva de keys de activación generadas de antemano.
+ * Un hilo en segundo plano genera keys con un SecureRandom compartido (que se resiembra
+ * cada cierto número de keys), descarta en bloque las que ya existen en biblioteca.key_activacion y
+ * las deja en una cola sin bloqueos. El checkout solo toma la siguiente de la cola; al
+ * bajar del mínimo se dispara la recarga. Si la reserva se agota se genera una al momento.
+ */
+public class ServicioKeysActivacion {
+    private static final Logger LOGGER = Logger.getLogger(ServicioKeysActivacion.class.getName());
+
+    private static final char[] CARACTERES = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+    private static final int BLOQUES = 5;
+    private static final int TAMANO_BLOQUE = 5;
+    private static final int LONGITUD = BLOQUES * TAMANO_BLOQUE + (BLOQUES - 1);
+    // 252 = 36 * 7: los bytes por debajo se reparten uniformemente entre los 36 caracteres
+    private static final int LIMITE_UNIFORME = 252;
+    private static final int KEYS_POR_SEMILLA = 10_000;
+    private static final int TAMANO_TANDA = 500;
+
+    private static volatile ServicioKeysActivacion global;
+
+    private final DataSource dataSource;
+    private final int minimo;
+    private final int maximo;
+    private final ConcurrentLinkedQueue<String> reserva = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger disponibles = new AtomicInteger();
+    private final AtomicBoolean recargando = new AtomicBoolean();
+    private final ExecutorService recargador = Executors.newSingleThreadExecutor(new FabricaHilos("keys-activacion"));
+
+    private final SecureRandom aleatorio = new SecureRandom();
+    // Solo lo modifica el hilo recargador
+    private int generadasConSemilla;
+
+    private final AtomicLong entregadas = new AtomicLong();
+    private final AtomicLong generadasAlMomento = new AtomicLong();
+    private final AtomicLong colisiones = new AtomicLong();
+
+    public ServicioKeysActivacion(DataSource dataSource, int minimo, int maximo) {
+        if (dataSource == null || minimo < 0 || maximo <= minimo) {
+            throw new IllegalArgumentException("Parámetros inválidos para la reserva de keys");
+        }
+        this.dataSource = dataSource;
+        this.minimo = minimo;
+        this.maximo = maximo;
+        solicitarRecarga();
+    }
+
+    public static ServicioKeysActivacion global() {
+        ServicioKeysActivacion actual = global;
+        if (actual == null) {
+            synchronized (ServicioKeysActivacion.class) {
+                actual = global;
+                if (actual == null) {
+                    actual = new ServicioKeysActivacion(ConexionBaseDatos.getDataSource(),
+                            Integer.getInteger("mivalgamer.keys.minimo", 200),
+                            Integer.getInteger("mivalgamer.keys.maximo", 1_000));
+                    global = actual;
+                }
+            }
+        }
+        return actual;
+    }
+
+    /**
+     * Devuelve una key con formato XXXXX-XXXXX-XXXXX-XXXXX-XXXXX.
+     */
+    public String siguiente() {
+        String key = reserva.poll();
+        if (key == null) {
+            solicitarRecarga();
+            generadasAlMomento.incrementAndGet();
+            entregadas.incrementAndGet();
+            // Sin verificación en BD: con 36^25 combinaciones una colisión es despreciable
+            return generar(aleatorio);
+        }
+        if (disponibles.decrementAndGet() < minimo) {
+            solicitarRecarga();
+        }
+        entregadas.incrementAndGet();
+        return key;
+    }
+
+    private void solicitarRecarga() {
+        if (recargando.compareAndSet(false, true)) {
+            try {
+                recargador.execute(this::recargar);
+            } catch (RuntimeException ex) {
+                recargando.set(false);
+                throw ex;
+            }
+        }
+    }
+
+    private void recargar() {
+        try {
+            while (disponibles.get() < maximo) {
+                int cantidad = Math.min(TAMANO_TANDA, maximo - disponibles.get());
+                Set<String> tanda = new HashSet<>(cantidad * 2);
+                while (tanda.size() < cantidad) {
+                    tanda.add(generar(resembrarSiToca()));
+                }
+                tanda.removeAll(existentes(tanda));
+                reserva.addAll(tanda);
+                disponibles.addAndGet(tanda.size());
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "No se pudo recargar la reserva de keys de activación", ex);
+        } finally {
+            recargando.set(false);
+        }
+    }
+
+    private SecureRandom resembrarSiToca() {
+        if (++generadasConSemilla > KEYS_POR_SEMILLA) {
+            aleatorio.setSeed(aleatorio.generateSeed(32));
+            generadasConSemilla = 1;
+        }
+        return aleatorio;
+    }
+
+    // Keys de la tanda que ya están asignadas en alguna biblioteca
+    private Set<String> existentes(Set<String> tanda) throws SQLException {
+        Set<String> repetidas = new HashSet<>();
+        List<String> keys = new ArrayList<>(tanda);
+        try (Connection conn = dataSource.getConnection()) {
+            for (int desde = 0; desde < keys.size(); desde += UtilSql.MAX_PARAMETROS_IN) {
+                List<String> tramo = keys.subList(desde, Math.min(keys.size(), desde + UtilSql.MAX_PARAMETROS_IN));
+                String sql = "SELECT key_activacion FROM biblioteca WHERE key_activacion IN (" +
+                        UtilSql.marcadores(tramo.size()) + ")";
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < tramo.size(); i++) {
+                        stmt.setString(i + 1, tramo.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            repetidas.add(rs.getString(1));
+                        }
+                    }
+                }
+            }
+        }
+        colisiones.addAndGet(repetidas.size());
+        return repetidas;
+    }
+
+    private static String generar(SecureRandom random) {
+        char[] key = new char[LONGITUD];
+        byte[] bytes = new byte[BLOQUES * TAMANO_BLOQUE * 2];
+        random.nextBytes(bytes);
+        int b = 0;
+        for (int pos = 0; pos < LONGITUD; pos++) {
+            if (pos % (TAMANO_BLOQUE + 1) == TAMANO_BLOQUE) {
+                key[pos] = '-';
+                continue;
+            }
+            int valor;
+            do {
+                if (b == bytes.length) {
+                    random.nextBytes(bytes);
+                    b = 0;
+                }
+                valor = bytes[b++] & 0xFF;
+            } while (valor >= LIMITE_UNIFORME);
+            key[pos] = CARACTERES[valor % CARACTERES.length];
+        }
+        return new String(key);
+    }
+
+    // Métricas
+    public int getDisponibles() { return disponibles.get(); }
+    public long getEntregadas() { return entregadas.get(); }
+    public long getGeneradasAlMomento() { return generadasAlMomento.get(); }
+    public long getColisiones() { return colisiones.get(); }
+}
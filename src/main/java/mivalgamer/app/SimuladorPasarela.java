@@ -0,0 +1,135 @@
+package mivalgamer.app;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Pasarela de pagos simulada en el propio proceso, para desarrollo y pruebas de carga.
+ * Cada llamada responde tras una latencia configurable (base más una variación aleatoria)
+ * y puede fallar o rechazarse con la probabilidad indicada, lo que permite ejercitar los
+ * tiempos de espera y el cortocircuito de {@link PasarelaProtegida}.
+ */
+public class SimuladorPasarela implements PasarelaPago, AutoCloseable {
+    private static final String PREFIJO_AUTORIZACION = "AUT-";
+
+    private final long latenciaMs;
+    private final long variacionMs;
+    private final double tasaFallos;
+    private final double tasaRechazos;
+    private final ScheduledExecutorService respuestas =
+            Executors.newSingleThreadScheduledExecutor(new FabricaHilos("pasarela-simulada"));
+
+    // Autorizaciones pendientes de capturar o anular
+    private final Map<String, Autorizacion> pendientes = new ConcurrentHashMap<>();
+
+    private final AtomicLong autorizadas = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong capturadas = new AtomicLong();
+    private final AtomicLong anuladas = new AtomicLong();
+    private final AtomicLong fallosInyectados = new AtomicLong();
+
+    /**
+     * @param tasaFallos probabilidad de que una llamada termine con error técnico
+     * @param tasaRechazos probabilidad de que una autorización se rechace
+     */
+    public SimuladorPasarela(long latenciaMs, long variacionMs, double tasaFallos, double tasaRechazos) {
+        if (latenciaMs < 0 || variacionMs < 0 || tasaFallos < 0 || tasaFallos > 1
+                || tasaRechazos < 0 || tasaRechazos > 1) {
+            throw new IllegalArgumentException("Parámetros inválidos para el simulador de pasarela");
+        }
+        this.latenciaMs = latenciaMs;
+        this.variacionMs = variacionMs;
+        this.tasaFallos = tasaFallos;
+        this.tasaRechazos = tasaRechazos;
+    }
+
+    /**
+     * Simulador configurado con las propiedades mivalgamer.pasarela.*.
+     */
+    static SimuladorPasarela desdePropiedades() {
+        return new SimuladorPasarela(
+                Long.getLong("mivalgamer.pasarela.latenciaMs", 30L),
+                Long.getLong("mivalgamer.pasarela.variacionMs", 20L),
+                Double.parseDouble(System.getProperty("mivalgamer.pasarela.tasaFallos", "0")),
+                Double.parseDouble(System.getProperty("mivalgamer.pasarela.tasaRechazos", "0")));
+    }
+
+    @Override
+    public CompletableFuture<Autorizacion> autorizar(int idMetodo, long monto, String referencia) {
+        return responder(() -> {
+            if (monto <= 0) {
+                rechazadas.incrementAndGet();
+                return new Autorizacion(null, idMetodo, monto, referencia, false, "Importe inválido");
+            }
+            if (ThreadLocalRandom.current().nextDouble() < tasaRechazos) {
+                rechazadas.incrementAndGet();
+                return new Autorizacion(null, idMetodo, monto, referencia, false, "Fondos insuficientes");
+            }
+            Autorizacion autorizacion = new Autorizacion(GeneradorIds.global().nuevoId(PREFIJO_AUTORIZACION),
+                    idMetodo, monto, referencia, true, null);
+            pendientes.put(autorizacion.getId(), autorizacion);
+            autorizadas.incrementAndGet();
+            return autorizacion;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> capturar(Autorizacion autorizacion) {
+        return responder(() -> {
+            if (pendientes.remove(autorizacion.getId()) == null) {
+                throw new IllegalStateException("Autorización desconocida o ya usada: " + autorizacion.getId());
+            }
+            capturadas.incrementAndGet();
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> anular(Autorizacion autorizacion) {
+        // Anular es idempotente: si ya se capturó se simula la devolución
+        return responder(() -> {
+            pendientes.remove(autorizacion.getId());
+            anuladas.incrementAndGet();
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> responder(Supplier<T> respuesta) {
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        long espera = latenciaMs + (variacionMs == 0 ? 0 : ThreadLocalRandom.current().nextLong(variacionMs + 1));
+        boolean fallar = ThreadLocalRandom.current().nextDouble() < tasaFallos;
+        respuestas.schedule(() -> {
+            if (fallar) {
+                fallosInyectados.incrementAndGet();
+                futuro.completeExceptionally(new IllegalStateException("Error simulado de la pasarela"));
+                return;
+            }
+            try {
+                futuro.complete(respuesta.get());
+            } catch (RuntimeException ex) {
+                futuro.completeExceptionally(ex);
+            }
+        }, espera, TimeUnit.MILLISECONDS);
+        return futuro;
+    }
+
+    @Override
+    public void close() {
+        respuestas.shutdownNow();
+    }
+
+    // Métricas
+    public int getPendientes() { return pendientes.size(); }
+    public long getAutorizadas() { return autorizadas.get(); }
+    public long getRechazadas() { return rechazadas.get(); }
+    public long getCapturadas() { return capturadas.get(); }
+    public long getAnuladas() { return anuladas.get(); }
+    public long getFallosInyectados() { return fallosInyectados.get(); }
+}
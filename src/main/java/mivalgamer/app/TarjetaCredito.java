@@ -3,14 +3,14 @@ import java.sql.*;
 import java.time.LocalDate;
 
 public class TarjetaCredito extends MetodoPago {
-    private final double limiteCredito;
+    private final long limiteCredito; // centavos
 
     /**
      * Constructor para crear nueva tarjeta de crédito.
      * Valida el número y la fecha de expiración.
      */
     public TarjetaCredito(Connection connection, String titular, String numero,
-                          Date fechaExpiracion, String cvv, double limiteCredito) {
+                          Date fechaExpiracion, String cvv, long limiteCredito) {
         super(connection, titular, validarNumeroTarjeta(numero), validarFechaExpiracion(fechaExpiracion), cvv, TipoMetodoPago.CREDITO);
         this.limiteCredito = limiteCredito;
     }
@@ -27,34 +27,61 @@ public class TarjetaCredito extends MetodoPago {
                 TipoMetodoPago.CREDITO
         );
         this.idMetodo = rs.getInt("id_metodo");
-        this.limiteCredito = rs.getDouble("limite_credito");
+        this.limiteCredito = Monto.leer(rs, "limite_credito");
     }
 
+    /**
+     * Reserva el importe en {@link LibroCredito}, que ya descuenta los pagos anteriores y los
+     * que están en curso, y registra la transacción. La reserva se confirma o se libera
+     * cuando se sabe si la transacción del pedido se confirmó.
+     */
     @Override
-    public boolean procesarPago(double monto) throws SQLException {
-        if (monto > limiteCredito) {
+    public boolean procesarPago(long monto) throws SQLException {
+        if (!LibroCredito.global().reservar(idMetodo, monto)) {
             throw new SQLException("Límite de crédito excedido");
         }
 
         String sql = "INSERT INTO transaccion (id_transaccion, tipo, monto, fecha, id_metodo) " +
                 "VALUES (?, 'PAGO', ?, CURDATE(), ?)";
+        boolean registrado = false;
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, generarIdTransaccion());
-            stmt.setDouble(2, monto);
+            Monto.escribir(stmt, 2, monto);
             stmt.setInt(3, idMetodo);
-            return stmt.executeUpdate() > 0;
+            registrado = stmt.executeUpdate() > 0;
+            return registrado;
+        } finally {
+            if (!registrado) {
+                LibroCredito.global().liberar(idMetodo, monto);
+            }
         }
     }
 
-    public double getLimiteCredito() { return limiteCredito; }
+    @Override
+    public void confirmarPago(long monto) {
+        LibroCredito.global().confirmar(idMetodo, monto);
+    }
+
+    @Override
+    public void liberarPago(long monto) {
+        LibroCredito.global().liberar(idMetodo, monto);
+    }
 
     /**
-     * Valida que el número de la tarjeta sea exactamente de 10 dígitos numéricos.
+     * Crédito que queda disponible, en centavos.
+     */
+    public long getCreditoDisponibleCentavos() throws SQLException {
+        return LibroCredito.global().getDisponible(idMetodo);
+    }
+
+    public long getLimiteCreditoCentavos() { return limiteCredito; }
+    public double getLimiteCredito() { return Monto.aDouble(limiteCredito); }
+
+    /**
+     * Valida que el número de la tarjeta tenga 10 dígitos y dígito de control correcto.
      */
     private static String validarNumeroTarjeta(String numero) {
-        if (numero == null || !numero.matches("\\d{10}")) {
-            throw new IllegalArgumentException("Introduce una tarjeta valida (10 dígitos numéricos)");
-        }
+        Validador.validarNumeroTarjeta(numero).exigir();
         return numero;
     }
 
@@ -62,20 +89,8 @@ public class TarjetaCredito extends MetodoPago {
      * Valida que la fecha sea válida y no haya caducado.
      */
     private static Date validarFechaExpiracion(Date fechaExpiracion) {
-        if (fechaExpiracion == null) {
-            throw new IllegalArgumentException("Por favor ingrese una tarjeta valida");
-        }
-        LocalDate fecha = fechaExpiracion.toLocalDate();
-        LocalDate hoy = LocalDate.now();
-        int mes = fecha.getMonthValue();
-        int anio = fecha.getYear();
-
-        if (mes < 1 || mes > 12) {
-            throw new IllegalArgumentException("Mes de expiración inválido");
-        }
-        if (fecha.isBefore(hoy)) {
-            throw new IllegalArgumentException("Tarjeta caducada");
-        }
+        LocalDate fecha = fechaExpiracion == null ? null : fechaExpiracion.toLocalDate();
+        Validador.validarFechaExpiracion(fecha, LocalDate.now()).exigir();
         return fechaExpiracion;
     }
 }
\ No newline at end of file
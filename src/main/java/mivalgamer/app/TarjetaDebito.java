@@ -35,12 +35,12 @@ public class TarjetaDebito extends MetodoPago {
     }
 
     @Override
-    public boolean procesarPago(double monto) throws SQLException {
+    public boolean procesarPago(long monto) throws SQLException {
         String sql = "INSERT INTO transaccion (id_transaccion, tipo, monto, fecha, id_metodo) " +
                 "VALUES (?, 'PAGO', ?, CURDATE(), ?)";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, generarIdTransaccion());
-            stmt.setDouble(2, monto);
+            Monto.escribir(stmt, 2, monto);
             stmt.setInt(3, idMetodo);
             return stmt.executeUpdate() > 0;
         }
@@ -64,12 +64,10 @@ public class TarjetaDebito extends MetodoPago {
     }
 
     /**
-     * Valida el número de tarjeta (debe ser de 10 dígitos).
+     * Valida el número de tarjeta (10 dígitos con dígito de control Luhn).
      */
     private static String validarNumeroTarjeta(String numero) {
-        if (numero == null || !numero.matches("\\d{10}")) {
-            throw new IllegalArgumentException("Introduce una tarjeta valida (10 dígitos numéricos)");
-        }
+        Validador.validarNumeroTarjeta(numero).exigir();
         return numero;
     }
 
@@ -77,19 +75,8 @@ public class TarjetaDebito extends MetodoPago {
      * Valida la fecha igual que en crédito.
      */
     private static Date validarFechaExpiracion(Date fechaExpiracion) {
-        if (fechaExpiracion == null) {
-            throw new IllegalArgumentException("Por favor ingrese una tarjeta valida");
-        }
-        LocalDate fecha = fechaExpiracion.toLocalDate();
-        LocalDate hoy = LocalDate.now();
-        int mes = fecha.getMonthValue();
-        int anio = fecha.getYear();
-        if (mes < 1 || mes > 12) {
-            throw new IllegalArgumentException("Mes de expiración inválido");
-        }
-        if (fecha.isBefore(hoy)) {
-            throw new IllegalArgumentException("Tarjeta caducada");
-        }
+        LocalDate fecha = fechaExpiracion == null ? null : fechaExpiracion.toLocalDate();
+        Validador.validarFechaExpiracion(fecha, LocalDate.now()).exigir();
         return fechaExpiracion;
     }
 }
\ No newline at end of file
@@ -1,9 +1,11 @@
 package mivalgamer.app;
 import java.sql.*;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Usuario {
+    // Conexión de sesión (ver ConexionBaseDatos.conectar); las consultas de la biblioteca y
+    // del historial piden en cambio una conexión del pool para cada operación
     private final Connection connection;
     private final String idUsuario;
     private final String nombre;
@@ -12,6 +14,18 @@ public class Usuario {
     // NUEVO: Atributo para mantener el carrito en memoria
     private CarritoCompra carrito;
 
+    // Token de la sesión abierta con Autentificacion, null si no hay sesión
+    private String tokenSesion;
+
+    // Métodos de pago de la sesión; null hasta la primera consulta o tras un cambio
+    private List<MetodoPago> metodosPago;
+
+    // Ids de los juegos de la biblioteca; se cargan la primera vez que se consultan
+    private ConjuntoLong juegosPoseidos;
+
+    // Resumen de compras de la sesión; null hasta la primera consulta o tras una compra
+    private ResumenUsuario resumen;
+
     public Usuario(Connection connection, String idUsuario, String nombre, String email) {
         this.connection = connection;
         this.idUsuario = idUsuario;
@@ -20,26 +34,52 @@ public class Usuario {
     }
 
     // Métodos relacionados con métodos de pago
-    public List<MetodoPago> getMetodosPago() throws SQLException {
-        List<MetodoPago> metodos = new ArrayList<>();
-        String sql = "SELECT * FROM metodo_pago WHERE id_metodo IN " +
-                "(SELECT id_metodo FROM usuario_metodo_pago WHERE id_usuario = ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, idUsuario);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                metodos.add(MetodoPago.cargarDesdeBD(rs.getInt("id_metodo"), connection));
-            }
+
+    /**
+     * Métodos de pago del usuario. Se cargan con una consulta la primera vez y se reutilizan
+     * durante la sesión hasta que se agrega o elimina uno.
+     */
+    public synchronized List<MetodoPago> getMetodosPago() throws SQLException {
+        if (metodosPago == null) {
+            metodosPago = Collections.unmodifiableList(MetodoPago.cargarPorUsuario(idUsuario, connection));
         }
-        return metodos;
+        return metodosPago;
     }
 
-    public void agregarMetodoPago(MetodoPago metodo) throws SQLException {
+    public synchronized void agregarMetodoPago(MetodoPago metodo) throws SQLException {
         String sql = "INSERT INTO usuario_metodo_pago (id_usuario, id_metodo) VALUES (?, ?)";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, idUsuario);
             stmt.setInt(2, metodo.getIdMetodo());
             stmt.executeUpdate();
+        } finally {
+            metodosPago = null;
+        }
+    }
+
+    /**
+     * Quita el método de pago al usuario y lo borra de metodo_pago.
+     *
+     * @return false si el método no pertenecía al usuario
+     */
+    public synchronized boolean eliminarMetodoPago(int idMetodo) throws SQLException {
+        try {
+            String sql = "DELETE FROM usuario_metodo_pago WHERE id_usuario = ? AND id_metodo = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, idUsuario);
+                stmt.setInt(2, idMetodo);
+                if (stmt.executeUpdate() == 0) {
+                    return false;
+                }
+            }
+            String sqlEliminarMetodo = "DELETE FROM metodo_pago WHERE id_metodo = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(sqlEliminarMetodo)) {
+                stmt.setInt(1, idMetodo);
+                stmt.executeUpdate();
+            }
+            return true;
+        } finally {
+            metodosPago = null;
         }
     }
 
@@ -52,11 +92,60 @@ public class Usuario {
 
     // Biblioteca y compras
     public Biblioteca getBiblioteca() {
-        return new Biblioteca(this, connection);
+        return new Biblioteca(this, ConexionBaseDatos.getDataSource());
+    }
+
+    /**
+     * Juegos que posee el usuario, cargados de la BD una vez por sesión. Después solo se
+     * actualiza con las compras confirmadas desde este objeto.
+     */
+    synchronized ConjuntoLong getJuegosPoseidos() throws SQLException {
+        if (juegosPoseidos == null) {
+            juegosPoseidos = Biblioteca.cargarIdsJuegos(connection, idUsuario);
+        }
+        return juegosPoseidos;
+    }
+
+    /**
+     * Anota juegos recién añadidos a la biblioteca. Llamar solo tras el commit.
+     * Si el conjunto aún no se había cargado no hace nada: la carga ya los leerá de la BD.
+     */
+    synchronized void registrarJuegosComprados(long[] idsVideojuego) {
+        if (juegosPoseidos == null) {
+            return;
+        }
+        for (long id : idsVideojuego) {
+            juegosPoseidos.agregar(id);
+        }
+    }
+
+    /**
+     * Gasto total, número de pedidos, última compra y plataforma favorita. Se lee una vez y
+     * se reutiliza durante la sesión hasta que el usuario confirma otra compra.
+     */
+    public synchronized ResumenUsuario getResumen() throws SQLException {
+        if (resumen == null) {
+            resumen = ResumenUsuario.cargar(connection, idUsuario);
+        }
+        return resumen;
+    }
+
+    /**
+     * Descarta el resumen de la sesión tras confirmar una compra. Llamar solo tras el commit.
+     */
+    synchronized void registrarCompraConfirmada() {
+        resumen = null;
     }
 
     public HistorialCompras getHistorialCompras() {
-        return new HistorialCompras(this, connection);
+        return new HistorialCompras(this, ConexionBaseDatos.getDataSource());
+    }
+
+    /**
+     * Conexión de la sesión, para los objetos que viven tanto como ella (p. ej. los pedidos).
+     */
+    Connection getConexionSesion() {
+        return connection;
     }
 
     // NUEVO: Carrito persistente en el objeto Usuario
@@ -71,6 +160,18 @@ public class Usuario {
     // Cambio de contraseña
     public void cambiarContrasena(Autentificacion auth, String nuevaPassword) throws SQLException {
         auth.cambiarContrasena(this.idUsuario, nuevaPassword);
+        // El cambio cierra todas las sesiones del usuario; esta sigue con un token nuevo
+        if (tokenSesion != null) {
+            tokenSesion = AlmacenSesiones.global().crear(this);
+        }
+    }
+
+    public String getTokenSesion() {
+        return tokenSesion;
+    }
+
+    void setTokenSesion(String tokenSesion) {
+        this.tokenSesion = tokenSesion;
     }
 
     // Getters
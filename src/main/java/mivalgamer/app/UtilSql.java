@@ -0,0 +1,29 @@
+package mivalgamer.app;
+
+/**
+ * Utilidades para construir consultas SQL con listas de parámetros.
+ */
+final class UtilSql {
+    // Máximo de valores por cláusula IN; listas más largas se consultan por tramos
+    static final int MAX_PARAMETROS_IN = 1000;
+
+    private UtilSql() {
+    }
+
+    /**
+     * Devuelve "?, ?, ..., ?" con la cantidad de marcadores indicada.
+     */
+    static String marcadores(int cantidad) {
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("Se requiere al menos un marcador");
+        }
+        StringBuilder sb = new StringBuilder(cantidad * 3);
+        for (int i = 0; i < cantidad; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+}
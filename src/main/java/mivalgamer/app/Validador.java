@@ -0,0 +1,204 @@
+package mivalgamer.app;
+
+import java.time.LocalDate;
+
+/**
+ * Validaciones de formularios (registro y métodos de pago).
+ * Cada comprobación recorre el texto una sola vez carácter a carácter, sin expresiones
+ * regulares ni objetos intermedios, porque la interfaz valida en cada pulsación.
+ */
+public final class Validador {
+    private static final int LONGITUD_MINIMA_PASSWORD = 8;
+    private static final int DIGITOS_TARJETA = 10;
+    private static final boolean EXIGIR_LUHN =
+            Boolean.parseBoolean(System.getProperty("mivalgamer.tarjeta.luhn", "true"));
+
+    // Dominios de correo admitidos
+    private static final String[] DOMINIOS = {
+            "gmail.com", "hotmail.com", "outlook.com", "yahoo.es", "dominio.net", "ejemplo.org"
+    };
+
+    private Validador() {
+    }
+
+    /**
+     * Mínimo 8 caracteres con al menos una mayúscula, una minúscula y un número.
+     */
+    public static ErrorValidacion validarPassword(CharSequence password) {
+        if (password == null || password.length() < LONGITUD_MINIMA_PASSWORD) {
+            return ErrorValidacion.PASSWORD_CORTA;
+        }
+        boolean mayuscula = false;
+        boolean minuscula = false;
+        boolean numero = false;
+        for (int i = 0; i < password.length(); i++) {
+            char c = password.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                mayuscula = true;
+            } else if (c >= 'a' && c <= 'z') {
+                minuscula = true;
+            } else if (c >= '0' && c <= '9') {
+                numero = true;
+            }
+        }
+        if (!mayuscula) {
+            return ErrorValidacion.PASSWORD_SIN_MAYUSCULA;
+        }
+        if (!minuscula) {
+            return ErrorValidacion.PASSWORD_SIN_MINUSCULA;
+        }
+        return numero ? ErrorValidacion.OK : ErrorValidacion.PASSWORD_SIN_NUMERO;
+    }
+
+    /**
+     * Parte local con letras, dígitos y {@code + _ . -}, seguida de '@' y uno de los
+     * dominios admitidos (sin distinguir mayúsculas).
+     */
+    public static ErrorValidacion validarEmail(CharSequence email) {
+        if (email == null || email.length() == 0) {
+            return ErrorValidacion.EMAIL_VACIO;
+        }
+        int arroba = -1;
+        for (int i = 0; i < email.length(); i++) {
+            char c = email.charAt(i);
+            if (c == '@') {
+                arroba = i;
+                break;
+            }
+            if (!esCaracterLocal(c)) {
+                return ErrorValidacion.EMAIL_FORMATO;
+            }
+        }
+        if (arroba <= 0) {
+            return ErrorValidacion.EMAIL_FORMATO;
+        }
+        for (String dominio : DOMINIOS) {
+            if (terminaEnDominio(email, arroba + 1, dominio)) {
+                return ErrorValidacion.OK;
+            }
+        }
+        return ErrorValidacion.EMAIL_DOMINIO;
+    }
+
+    // Compara sin distinguir mayúsculas; los dominios admitidos están en minúsculas
+    private static boolean terminaEnDominio(CharSequence email, int desde, String dominio) {
+        if (email.length() - desde != dominio.length()) {
+            return false;
+        }
+        for (int i = 0; i < dominio.length(); i++) {
+            char c = email.charAt(desde + i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            if (c != dominio.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean esCaracterLocal(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                || c == '+' || c == '_' || c == '.' || c == '-';
+    }
+
+    /**
+     * Exactamente 10 dígitos y, salvo que se desactive con -Dmivalgamer.tarjeta.luhn=false,
+     * dígito de control Luhn correcto. Ambas cosas se comprueban en la misma pasada.
+     */
+    public static ErrorValidacion validarNumeroTarjeta(CharSequence numero) {
+        if (numero == null || numero.length() != DIGITOS_TARJETA) {
+            return ErrorValidacion.TARJETA_FORMATO;
+        }
+        int suma = 0;
+        boolean doblar = false;
+        for (int i = numero.length() - 1; i >= 0; i--) {
+            int d = numero.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return ErrorValidacion.TARJETA_FORMATO;
+            }
+            if (doblar) {
+                d *= 2;
+                if (d > 9) {
+                    d -= 9;
+                }
+            }
+            suma += d;
+            doblar = !doblar;
+        }
+        return !EXIGIR_LUHN || suma % 10 == 0 ? ErrorValidacion.OK : ErrorValidacion.TARJETA_CONTROL;
+    }
+
+    public static ErrorValidacion validarCvv(CharSequence cvv) {
+        if (cvv == null || cvv.length() < 3 || cvv.length() > 4) {
+            return ErrorValidacion.CVV_FORMATO;
+        }
+        for (int i = 0; i < cvv.length(); i++) {
+            char c = cvv.charAt(i);
+            if (c < '0' || c > '9') {
+                return ErrorValidacion.CVV_FORMATO;
+            }
+        }
+        return ErrorValidacion.OK;
+    }
+
+    /**
+     * La tarjeta es válida hasta el mismo día de expiración incluido.
+     */
+    public static ErrorValidacion validarFechaExpiracion(LocalDate fecha, LocalDate hoy) {
+        if (fecha == null) {
+            return ErrorValidacion.FECHA_VACIA;
+        }
+        return fecha.isBefore(hoy) ? ErrorValidacion.FECHA_CADUCADA : ErrorValidacion.OK;
+    }
+
+    /**
+     * Igual que {@link #validarFechaExpiracion(LocalDate, LocalDate)} a partir del texto
+     * YYYY-MM-DD tal como lo escribe el usuario, sin convertirlo antes a fecha.
+     */
+    public static ErrorValidacion validarFechaExpiracion(CharSequence texto, LocalDate hoy) {
+        if (texto == null || texto.length() == 0) {
+            return ErrorValidacion.FECHA_VACIA;
+        }
+        if (texto.length() != 10 || texto.charAt(4) != '-' || texto.charAt(7) != '-') {
+            return ErrorValidacion.FECHA_FORMATO;
+        }
+        int anio = leerNumero(texto, 0, 4);
+        int mes = leerNumero(texto, 5, 7);
+        int dia = leerNumero(texto, 8, 10);
+        if (anio < 0 || mes < 0 || dia < 0) {
+            return ErrorValidacion.FECHA_FORMATO;
+        }
+        if (mes < 1 || mes > 12) {
+            return ErrorValidacion.FECHA_MES_INVALIDO;
+        }
+        if (dia < 1 || dia > diasDelMes(anio, mes)) {
+            return ErrorValidacion.FECHA_DIA_INVALIDO;
+        }
+        int comparacion = anio != hoy.getYear() ? Integer.compare(anio, hoy.getYear())
+                : mes != hoy.getMonthValue() ? Integer.compare(mes, hoy.getMonthValue())
+                : Integer.compare(dia, hoy.getDayOfMonth());
+        return comparacion < 0 ? ErrorValidacion.FECHA_CADUCADA : ErrorValidacion.OK;
+    }
+
+    // Dígitos en [desde, hasta); -1 si alguno no es un dígito
+    private static int leerNumero(CharSequence texto, int desde, int hasta) {
+        int valor = 0;
+        for (int i = desde; i < hasta; i++) {
+            int d = texto.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            valor = valor * 10 + d;
+        }
+        return valor;
+    }
+
+    private static int diasDelMes(int anio, int mes) {
+        return switch (mes) {
+            case 2 -> (anio % 4 == 0 && anio % 100 != 0) || anio % 400 == 0 ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+}
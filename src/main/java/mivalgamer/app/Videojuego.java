@@ -2,7 +2,11 @@ package mivalgamer.app;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 public class Videojuego {
     private final long idVideojuego;
@@ -10,8 +14,9 @@ public class Videojuego {
     private final String estudio;
     private final long idGenero;
     private final String descripcion;
-    private final double precio;
-    private final double precioOriginal;
+    // Importes en centavos (ver Monto)
+    private final long precio;
+    private final long precioOriginal;
     private final boolean descuentoAplicado;
     private final EstadoVideojuego estado;
     private final String icono;
@@ -20,7 +25,7 @@ public class Videojuego {
     private final int stock;
 
     public Videojuego(long idVideojuego, String titulo, String estudio, long idGenero,
-                      String descripcion, double precio, double precioOriginal,
+                      String descripcion, long precio, long precioOriginal,
                       boolean descuentoAplicado, EstadoVideojuego estado,
                       String icono, String portada, String contenidoVisual, int stock) {
         this.idVideojuego = idVideojuego;
@@ -45,8 +50,8 @@ public class Videojuego {
                 rs.getString("estudio"),
                 rs.getLong("id_genero"),
                 rs.getString("descripcion"),
-                rs.getDouble("precio"),
-                rs.getDouble("precio_original"),
+                Monto.leer(rs, "precio"),
+                Monto.leer(rs, "precio_original"),
                 rs.getBoolean("descuento_aplicado"),
                 EstadoVideojuego.fromString(rs.getString("estado")),
                 rs.getString("icono"),
@@ -56,7 +61,31 @@ public class Videojuego {
         );
     }
 
+    /**
+     * Catálogo completo, servido desde {@link CacheCatalogo} mientras no caduque.
+     */
     public static List<Videojuego> obtenerTodos(Connection conn) throws SQLException {
+        return CacheCatalogo.global().obtenerTodos(conn);
+    }
+
+    public static Videojuego obtenerPorId(Connection conn, long id) throws SQLException {
+        return CacheCatalogo.global().obtenerPorId(conn, id);
+    }
+
+    /**
+     * Obtiene todos los videojuegos que están en una plataforma específica.
+     */
+    public static List<Videojuego> obtenerPorPlataforma(Connection conn, long idPlataforma) throws SQLException {
+        return CacheCatalogo.global().obtenerPorPlataforma(conn, idPlataforma);
+    }
+
+    public static List<Videojuego> obtenerEnDescuento(Connection conn) throws SQLException {
+        return CacheCatalogo.global().obtenerEnDescuento(conn);
+    }
+
+    // — Lecturas directas de la BD, usadas por CacheCatalogo —
+
+    static List<Videojuego> cargarTodos(Connection conn) throws SQLException {
         List<Videojuego> videojuegos = new ArrayList<>();
         String sql = "SELECT * FROM videojuego";
 
@@ -69,7 +98,7 @@ public class Videojuego {
         return videojuegos;
     }
 
-    public static Videojuego obtenerPorId(Connection conn, long id) throws SQLException {
+    static Videojuego cargarPorId(Connection conn, long id) throws SQLException {
         String sql = "SELECT * FROM videojuego WHERE id_videojuego = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setLong(1, id);
@@ -83,9 +112,31 @@ public class Videojuego {
     }
 
     /**
-     * Obtiene todos los videojuegos que están en una plataforma específica.
+     * Lee de la BD varios videojuegos por id con una consulta por cada tramo de
+     * {@link UtilSql#MAX_PARAMETROS_IN} ids. Los ids inexistentes no aparecen en el mapa.
      */
-    public static List<Videojuego> obtenerPorPlataforma(Connection conn, long idPlataforma) throws SQLException {
+    static Map<Long, Videojuego> cargarPorIds(Connection conn, Collection<Long> idsVideojuego) throws SQLException {
+        Map<Long, Videojuego> videojuegos = new HashMap<>();
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(idsVideojuego));
+        for (int desde = 0; desde < ids.size(); desde += UtilSql.MAX_PARAMETROS_IN) {
+            List<Long> tramo = ids.subList(desde, Math.min(ids.size(), desde + UtilSql.MAX_PARAMETROS_IN));
+            String sql = "SELECT * FROM videojuego WHERE id_videojuego IN (" + UtilSql.marcadores(tramo.size()) + ")";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < tramo.size(); i++) {
+                    stmt.setLong(i + 1, tramo.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Videojuego juego = fromResultSet(conn, rs);
+                        videojuegos.put(juego.getIdVideojuego(), juego);
+                    }
+                }
+            }
+        }
+        return videojuegos;
+    }
+
+    static List<Videojuego> cargarPorPlataforma(Connection conn, long idPlataforma) throws SQLException {
         List<Videojuego> videojuegos = new ArrayList<>();
         String sql = """
             SELECT v.*
@@ -105,7 +156,7 @@ public class Videojuego {
         return videojuegos;
     }
 
-    public static List<Videojuego> obtenerEnDescuento(Connection conn) throws SQLException {
+    static List<Videojuego> cargarEnDescuento(Connection conn) throws SQLException {
         List<Videojuego> videojuegos = new ArrayList<>();
         String sql = "SELECT v.* FROM videojuego v " +
                 "JOIN videojuego_descuento vd ON v.id_videojuego = vd.videojuego_id " +
@@ -127,8 +178,10 @@ public class Videojuego {
     public String getEstudio() { return estudio; }
     public long getIdGenero() { return idGenero; }
     public String getDescripcion() { return descripcion; }
-    public double getPrecio() { return precio; }
-    public double getPrecioOriginal() { return precioOriginal; }
+    public long getPrecioCentavos() { return precio; }
+    public long getPrecioOriginalCentavos() { return precioOriginal; }
+    public double getPrecio() { return Monto.aDouble(precio); }
+    public double getPrecioOriginal() { return Monto.aDouble(precioOriginal); }
     public boolean isDescuentoAplicado() { return descuentoAplicado; }
     public EstadoVideojuego getEstado() { return estado; }
     public String getIcono() { return icono; }
@@ -0,0 +1,20 @@
+-- Un videojuego aparece una sola vez por carrito.
+-- Necesario para el upsert (INSERT ... ON DUPLICATE KEY UPDATE) de CarritoCompra.
+
+-- Consolidar duplicados existentes antes de crear la clave única
+CREATE TEMPORARY TABLE item_carrito_duplicado AS
+SELECT id_carrito, id_videojuego, SUM(cantidad) AS cantidad, SUM(subtotal) AS subtotal
+FROM item_carrito
+GROUP BY id_carrito, id_videojuego
+HAVING COUNT(*) > 1;
+
+DELETE ic FROM item_carrito ic
+JOIN item_carrito_duplicado d ON ic.id_carrito = d.id_carrito AND ic.id_videojuego = d.id_videojuego;
+
+INSERT INTO item_carrito (id_carrito, id_videojuego, cantidad, subtotal)
+SELECT id_carrito, id_videojuego, cantidad, subtotal FROM item_carrito_duplicado;
+
+DROP TEMPORARY TABLE item_carrito_duplicado;
+
+ALTER TABLE item_carrito
+    ADD CONSTRAINT uk_item_carrito_juego UNIQUE (id_carrito, id_videojuego);
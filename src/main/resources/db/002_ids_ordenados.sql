@@ -0,0 +1,21 @@
+-- Ids generados por GeneradorIds: prefijo de 4 caracteres + 13 en base32 (17 en total).
+-- Se amplían a VARCHAR(20) las claves de usuario, pedido y transacción y las columnas
+-- que las referencian. Los ids antiguos (prefijo + 8 caracteres) siguen siendo válidos.
+
+SET FOREIGN_KEY_CHECKS = 0;
+
+ALTER TABLE usuario MODIFY id_usuario VARCHAR(20) NOT NULL;
+ALTER TABLE autenticacion MODIFY id_usuario VARCHAR(20) NOT NULL;
+ALTER TABLE usuario_metodo_pago MODIFY id_usuario VARCHAR(20) NOT NULL;
+ALTER TABLE carrito_compra MODIFY id_usuario VARCHAR(20) NOT NULL;
+ALTER TABLE biblioteca MODIFY id_usuario VARCHAR(20) NOT NULL;
+ALTER TABLE historial_compras MODIFY id_usuario VARCHAR(20) NOT NULL;
+ALTER TABLE pedido MODIFY id_usuario VARCHAR(20) NOT NULL;
+
+ALTER TABLE pedido MODIFY id_pedido VARCHAR(20) NOT NULL;
+ALTER TABLE item_pedido MODIFY id_pedido VARCHAR(20) NOT NULL;
+ALTER TABLE historial_compras MODIFY id_pedido VARCHAR(20) NOT NULL;
+
+ALTER TABLE transaccion MODIFY id_transaccion VARCHAR(20) NOT NULL;
+
+SET FOREIGN_KEY_CHECKS = 1;
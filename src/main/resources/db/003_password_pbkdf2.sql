@@ -0,0 +1,3 @@
+-- Los hashes PBKDF2 (pbkdf2$iteraciones$sal$hash) ocupan unos 80 caracteres frente a
+-- los 64 del SHA-256 anterior. Se deja margen para subir iteraciones o cambiar de algoritmo.
+ALTER TABLE usuario MODIFY password VARCHAR(255) NOT NULL;
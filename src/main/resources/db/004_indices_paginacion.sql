@@ -0,0 +1,14 @@
+-- Índices para la paginación por clave de la biblioteca y del historial.
+-- Cada uno empieza por el usuario, sigue por la clave de ordenación y termina con el id de
+-- desempate, de modo que una página se lee como un tramo contiguo del índice.
+
+-- Biblioteca por fecha de compra; incluye la key para no tocar la tabla
+CREATE INDEX idx_biblioteca_usuario_fecha
+    ON biblioteca (id_usuario, fecha_compra, id_videojuego, key_activacion);
+
+-- Biblioteca por título: se leen los juegos del usuario por su clave (id_usuario, id_videojuego)
+-- y se ordena solo ese conjunto, así que no necesita índice propio
+
+-- Historial por fecha y por total cobrado
+CREATE INDEX idx_pedido_usuario_fecha ON pedido (id_usuario, fecha_creacion, id_pedido);
+CREATE INDEX idx_historial_usuario_total ON historial_compras (id_usuario, total, id_pedido);
@@ -0,0 +1,20 @@
+-- Ingresos por día, mantenidos por LibroTransacciones.
+-- Cada pedido pagado anota su cobro en movimiento_pendiente en la misma transacción; un
+-- hilo en segundo plano lo pasa a los acumulados por lotes y borra la anotación.
+
+CREATE TABLE movimiento_pendiente (
+    id_pedido VARCHAR(20) NOT NULL PRIMARY KEY,
+    fecha DATE NOT NULL,
+    monto DECIMAL(12, 2) NOT NULL,
+    INDEX idx_movimiento_fecha (fecha)
+);
+
+CREATE TABLE ingreso_diario (
+    fecha DATE NOT NULL PRIMARY KEY,
+    total DECIMAL(14, 2) NOT NULL DEFAULT 0,
+    pedidos INT NOT NULL DEFAULT 0
+);
+
+-- Carga inicial desde el historial existente (una fila por pedido pagado)
+INSERT INTO ingreso_diario (fecha, total, pedidos)
+SELECT fecha_compra, SUM(total), COUNT(*) FROM historial_compras GROUP BY fecha_compra;
@@ -0,0 +1,40 @@
+-- Resumen de compras por usuario, mantenido por ResumenUsuario dentro de la transacción
+-- de cada pedido.
+
+CREATE TABLE resumen_usuario (
+    id_usuario VARCHAR(20) NOT NULL PRIMARY KEY,
+    total DECIMAL(14, 2) NOT NULL DEFAULT 0,
+    pedidos INT NOT NULL DEFAULT 0,
+    ultima_compra DATETIME NULL,
+    id_plataforma_favorita BIGINT NULL
+);
+
+-- Unidades compradas por plataforma, para elegir la favorita sin recorrer el historial.
+-- Cada unidad de un item cuenta para todas las plataformas de su juego.
+CREATE TABLE compras_plataforma (
+    id_usuario VARCHAR(20) NOT NULL,
+    id_plataforma BIGINT NOT NULL,
+    juegos INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (id_usuario, id_plataforma)
+);
+
+-- Carga inicial desde el historial existente (una fila por pedido pagado)
+INSERT INTO resumen_usuario (id_usuario, total, pedidos, ultima_compra)
+SELECT h.id_usuario, SUM(h.total), COUNT(*), MAX(p.fecha_creacion)
+FROM historial_compras h
+JOIN pedido p ON p.id_pedido = h.id_pedido
+GROUP BY h.id_usuario;
+
+INSERT INTO compras_plataforma (id_usuario, id_plataforma, juegos)
+SELECT h.id_usuario, vp.id_plataforma, SUM(ip.cantidad)
+FROM historial_compras h
+JOIN item_pedido ip ON ip.id_pedido = h.id_pedido
+JOIN videojuego_plataforma vp ON vp.id_videojuego = ip.id_videojuego
+GROUP BY h.id_usuario, vp.id_plataforma;
+
+UPDATE resumen_usuario r SET id_plataforma_favorita = (
+    SELECT cp.id_plataforma FROM compras_plataforma cp
+    WHERE cp.id_usuario = r.id_usuario
+    ORDER BY cp.juegos DESC, cp.id_plataforma
+    LIMIT 1
+);
@@ -0,0 +1,14 @@
+-- Anulaciones y devoluciones pendientes de confirmar por la pasarela de pago.
+-- AnulacionesPendientes guarda una fila antes de llamar a la pasarela y la borra cuando
+-- la anulación se confirma; mientras tanto la reintenta con espera exponencial.
+
+CREATE TABLE anulacion_pendiente (
+    id_autorizacion VARCHAR(40) NOT NULL PRIMARY KEY,
+    id_metodo INT NOT NULL,
+    monto DECIMAL(12, 2) NOT NULL,
+    referencia VARCHAR(20) NULL,
+    intentos INT NOT NULL DEFAULT 0,
+    proximo_intento DATETIME NOT NULL,
+    creada TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_anulacion_proximo (proximo_intento)
+);
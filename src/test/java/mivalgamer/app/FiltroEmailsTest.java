@@ -0,0 +1,175 @@
+package mivalgamer.app;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FiltroEmailsTest {
+
+    @Test
+    void parametrosInvalidos() {
+        DataSource ds = tablaUsuario(List.of());
+        assertThrows(IllegalArgumentException.class, () -> new FiltroEmails(null, 100, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new FiltroEmails(ds, 0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new FiltroEmails(ds, 100, 0));
+        assertThrows(IllegalArgumentException.class, () -> new FiltroEmails(ds, 100, 1));
+    }
+
+    @Test
+    void sinConstruirNoDescartaNada() {
+        FiltroEmails filtro = new FiltroEmails(tablaUsuario(List.of()), 100, 0.01);
+        assertFalse(filtro.isConstruido());
+        assertTrue(filtro.podriaExistir("nadie@gmail.com"));
+        assertEquals(1.0, filtro.getTasaFalsosPositivos());
+        assertEquals(0, filtro.getConsultas());
+    }
+
+    @Test
+    void dimensionadoSegunEsperadosYTasa() throws SQLException {
+        // m = ceil(-n·ln(p) / ln(2)²)
+        assertEquals(9586, construido(1000, 0.01, emails("a", 10)).getTamanoBits());
+        assertEquals(14378, construido(1000, 0.001, emails("a", 10)).getTamanoBits());
+        // Nunca menos de una palabra de 64 bits
+        assertEquals(64, construido(1, 0.5, List.of()).getTamanoBits());
+    }
+
+    @Test
+    void dimensionadoConElDobleDeUsuariosSiSuperanLosEsperados() throws SQLException {
+        FiltroEmails filtro = construido(100, 0.01, emails("u", 1000));
+        assertEquals(19171, filtro.getTamanoBits());
+        assertEquals(1000, filtro.getElementos());
+    }
+
+    @Test
+    void sinFalsosNegativosYConLaTasaObjetivo() throws SQLException {
+        List<String> registrados = emails("registrado", 5000);
+        FiltroEmails filtro = construido(5000, 0.01, registrados);
+        for (String email : registrados) {
+            assertTrue(filtro.podriaExistir(email), email);
+        }
+        // Las mayúsculas no cuentan, igual que en el login
+        assertTrue(filtro.podriaExistir("REGISTRADO17@Gmail.com"));
+
+        int falsosPositivos = 0;
+        for (String email : emails("nuevo", 20_000)) {
+            if (filtro.podriaExistir(email)) {
+                falsosPositivos++;
+            }
+        }
+        double tasa = falsosPositivos / 20_000.0;
+        assertTrue(tasa < 0.02, "tasa de falsos positivos " + tasa);
+        assertTrue(filtro.getTasaFalsosPositivos() < 0.011, "tasa estimada " + filtro.getTasaFalsosPositivos());
+        assertEquals(20_000 - falsosPositivos, filtro.getDescartes());
+    }
+
+    @Test
+    void agregarTrasConstruir() throws SQLException {
+        FiltroEmails filtro = construido(1000, 0.01, emails("a", 10));
+        assertFalse(filtro.podriaExistir("recien@hotmail.com"));
+        filtro.agregar("recien@hotmail.com");
+        assertTrue(filtro.podriaExistir("recien@hotmail.com"));
+        assertEquals(11, filtro.getElementos());
+    }
+
+    @Test
+    void laReconstruccionPeriodicaRecogeRegistrosDeOtrasInstancias() throws InterruptedException {
+        List<String> tabla = new CopyOnWriteArrayList<>(emails("a", 10));
+        try (FiltroEmails filtro = new FiltroEmails(tablaUsuario(tabla), 1000, 0.01)) {
+            assertThrows(IllegalArgumentException.class, () -> filtro.programarReconstruccion(0));
+            filtro.programarReconstruccion(20);
+            assertTrue(esperar(filtro::isConstruido));
+            assertFalse(filtro.podriaExistir("otra.instancia@gmail.com"));
+
+            // Alta hecha desde otra instancia: solo llega a este filtro al reconstruirlo
+            tabla.add("otra.instancia@gmail.com");
+            assertTrue(esperar(() -> filtro.podriaExistir("otra.instancia@gmail.com")));
+            assertThrows(IllegalStateException.class, () -> filtro.programarReconstruccion(20));
+        }
+    }
+
+    private static boolean esperar(BooleanSupplier condicion) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            if (condicion.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static FiltroEmails construido(long esperados, double tasa, List<String> emails) throws SQLException {
+        FiltroEmails filtro = new FiltroEmails(tablaUsuario(emails), esperados, tasa);
+        filtro.reconstruir();
+        assertTrue(filtro.isConstruido());
+        return filtro;
+    }
+
+    private static List<String> emails(String prefijo, int cuantos) {
+        List<String> emails = new ArrayList<>(cuantos);
+        for (int i = 0; i < cuantos; i++) {
+            emails.add(prefijo + i + "@gmail.com");
+        }
+        return emails;
+    }
+
+    // DataSource mínimo que responde a las dos consultas de reconstruir()
+    private static DataSource tablaUsuario(List<String> emails) {
+        Connection conexion = proxy(Connection.class, (nombre, args) -> switch (nombre) {
+            case "createStatement" -> sentencia(emails);
+            default -> null;
+        });
+        return proxy(DataSource.class, (nombre, args) -> nombre.equals("getConnection") ? conexion : null);
+    }
+
+    private static Statement sentencia(List<String> emails) {
+        return proxy(Statement.class, (nombre, args) -> {
+            if (!nombre.equals("executeQuery")) {
+                return null;
+            }
+            String sql = (String) args[0];
+            if (sql.startsWith("SELECT COUNT(*)")) {
+                return filas(List.of((Object) (long) emails.size()));
+            }
+            return filas(new ArrayList<Object>(emails));
+        });
+    }
+
+    private static ResultSet filas(List<Object> valores) {
+        Iterator<Object> it = valores.iterator();
+        Object[] actual = new Object[1];
+        return proxy(ResultSet.class, (nombre, args) -> switch (nombre) {
+            case "next" -> {
+                boolean hay = it.hasNext();
+                actual[0] = hay ? it.next() : null;
+                yield hay;
+            }
+            case "getLong" -> (Long) actual[0];
+            case "getString" -> (String) actual[0];
+            default -> null;
+        });
+    }
+
+    private interface Respuesta {
+        Object responder(String metodo, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> tipo, Respuesta respuesta) {
+        return tipo.cast(Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[]{tipo},
+                (p, metodo, args) -> respuesta.responder(metodo.getName(), args)));
+    }
+}
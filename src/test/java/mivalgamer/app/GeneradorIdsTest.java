@@ -0,0 +1,136 @@
+package mivalgamer.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeneradorIdsTest {
+
+    @Test
+    void nodoFueraDeRango() {
+        assertThrows(IllegalArgumentException.class, () -> new GeneradorIds(-1));
+        assertThrows(IllegalArgumentException.class, () -> new GeneradorIds(GeneradorIds.MAX_NODO + 1));
+        assertEquals(GeneradorIds.MAX_NODO, new GeneradorIds(GeneradorIds.MAX_NODO).getNodo());
+        assertEquals(1023, GeneradorIds.MAX_NODO);
+    }
+
+    @Test
+    void disposicionDeBits() {
+        GeneradorIds generador = new GeneradorIds(0x2A5);
+        long antes = System.currentTimeMillis();
+        long id = generador.siguiente();
+        long despues = System.currentTimeMillis();
+
+        // 41+ bits de tiempo desde la época, 10 de nodo y 12 de secuencia
+        assertEquals(0x2A5, (id >>> 12) & 0x3FF);
+        assertEquals(0, id & 0xFFF);
+        long ms = GeneradorIds.milisegundosDe(id);
+        assertTrue(ms >= antes && ms <= despues, "instante " + ms + " fuera de [" + antes + ", " + despues + "]");
+        assertEquals(ms - 1_704_067_200_000L, id >>> 22);
+    }
+
+    @Test
+    void idsEstrictamenteCrecientesYConSecuencia() {
+        GeneradorIds generador = new GeneradorIds(7);
+        long anterior = generador.siguiente();
+        boolean secuenciaUsada = false;
+        // Más ids que la secuencia de un milisegundo para forzar el paso al siguiente
+        for (int i = 0; i < 20_000; i++) {
+            long id = generador.siguiente();
+            assertTrue(id > anterior);
+            assertEquals(7, (id >>> 12) & 0x3FF);
+            secuenciaUsada |= (id & 0xFFF) != 0;
+            anterior = id;
+        }
+        assertTrue(secuenciaUsada);
+    }
+
+    @Test
+    void idsUnicosEntreHilos() throws InterruptedException {
+        GeneradorIds generador = new GeneradorIds(1);
+        int hilos = 4;
+        int porHilo = 10_000;
+        long[][] ids = new long[hilos][porHilo];
+        Thread[] trabajadores = new Thread[hilos];
+        for (int h = 0; h < hilos; h++) {
+            long[] destino = ids[h];
+            trabajadores[h] = new Thread(() -> {
+                for (int i = 0; i < porHilo; i++) {
+                    destino[i] = generador.siguiente();
+                }
+            });
+            trabajadores[h].start();
+        }
+        Set<Long> vistos = new HashSet<>();
+        for (int h = 0; h < hilos; h++) {
+            trabajadores[h].join();
+            for (long id : ids[h]) {
+                assertTrue(vistos.add(id), "id repetido " + id);
+            }
+        }
+        assertEquals(hilos * porHilo, vistos.size());
+    }
+
+    @Test
+    void bloqueDeIdsConsecutivos() {
+        GeneradorIds generador = new GeneradorIds(5);
+        long antes = generador.siguiente();
+        GeneradorIds.Bloque bloque = generador.reservarBloque(100);
+        assertEquals(100, bloque.restantes());
+        long anterior = antes;
+        long primero = -1;
+        while (bloque.hayMas()) {
+            long id = bloque.siguiente();
+            if (primero < 0) {
+                primero = id;
+            } else {
+                assertEquals(anterior + 1, id);
+            }
+            assertTrue(id > anterior);
+            assertEquals(5, (id >>> 12) & 0x3FF);
+            anterior = id;
+        }
+        assertEquals(0, bloque.restantes());
+        assertThrows(IllegalStateException.class, bloque::siguiente);
+        // Lo que se entrega después no pisa el bloque
+        assertTrue(generador.siguiente() > anterior);
+    }
+
+    @Test
+    void bloqueNoCruzaElLimiteDeLaSecuencia() {
+        GeneradorIds generador = new GeneradorIds(0);
+        for (int i = 0; i < 50; i++) {
+            GeneradorIds.Bloque bloque = generador.reservarBloque(GeneradorIds.MAX_BLOQUE);
+            long primero = bloque.siguiente();
+            // Un bloque completo empieza en la secuencia 0 y cabe entero en su milisegundo
+            assertEquals(0, primero & 0xFFF);
+            assertEquals(GeneradorIds.MAX_BLOQUE - 1, bloque.restantes());
+        }
+        assertThrows(IllegalArgumentException.class, () -> generador.reservarBloque(0));
+        assertThrows(IllegalArgumentException.class, () -> generador.reservarBloque(GeneradorIds.MAX_BLOQUE + 1));
+        assertFalse(generador.reservarBloque(1).siguiente("PED-").isEmpty());
+    }
+
+    @Test
+    void formatoDeAnchoFijoYOrdenable() {
+        assertEquals("PED-0000000000000", GeneradorIds.formatear(GeneradorIds.PREFIJO_PEDIDO, 0));
+        assertEquals("USR-000000000000Z", GeneradorIds.formatear(GeneradorIds.PREFIJO_USUARIO, 31));
+        assertEquals("TXN-0000000000010", GeneradorIds.formatear(GeneradorIds.PREFIJO_TRANSACCION, 32));
+        assertEquals("X-FZZZZZZZZZZZZ", GeneradorIds.formatear("X-", -1L));
+
+        GeneradorIds generador = new GeneradorIds(3);
+        String anterior = generador.nuevoId(GeneradorIds.PREFIJO_PEDIDO);
+        for (int i = 0; i < 5_000; i++) {
+            String id = generador.nuevoId(GeneradorIds.PREFIJO_PEDIDO);
+            assertEquals(GeneradorIds.PREFIJO_PEDIDO.length() + 13, id.length());
+            assertTrue(id.compareTo(anterior) > 0, id + " no es mayor que " + anterior);
+            anterior = id;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package mivalgamer.app;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimitadorIntentosTest {
+
+    @Test
+    void parametrosInvalidos() {
+        assertThrows(IllegalArgumentException.class, () -> new LimitadorIntentos("t", 0, 5, 1_000, 4));
+        assertThrows(IllegalArgumentException.class, () -> new LimitadorIntentos("t", 5, 0, 1_000, 4));
+        assertThrows(IllegalArgumentException.class, () -> new LimitadorIntentos("t", 5, 5, 0, 4));
+        // El número de franjas tiene que ser potencia de dos
+        assertThrows(IllegalArgumentException.class, () -> new LimitadorIntentos("t", 5, 5, 1_000, 6));
+    }
+
+    @Test
+    void admiteUnaRafagaDeCapacidadIntentos() {
+        // Una ficha por minuto: durante la prueba no se repone ninguna
+        try (LimitadorIntentos limitador = new LimitadorIntentos("rafaga", 3, 1, 600_000, 4)) {
+            assertTrue(limitador.intentar("ana@gmail.com"));
+            assertTrue(limitador.intentar("ana@gmail.com"));
+            assertTrue(limitador.intentar("ana@gmail.com"));
+            assertFalse(limitador.intentar("ana@gmail.com"));
+            assertFalse(limitador.intentar("ana@gmail.com"));
+            assertEquals(3, limitador.getPermitidos());
+            assertEquals(2, limitador.getRechazados());
+        }
+    }
+
+    @Test
+    void capacidadUnoNoAdmiteRafagas() {
+        try (LimitadorIntentos limitador = new LimitadorIntentos("uno", 1, 1, 600_000, 1)) {
+            assertTrue(limitador.intentar("k"));
+            assertFalse(limitador.intentar("k"));
+        }
+    }
+
+    @Test
+    void lasClavesNoCompartenCupo() {
+        try (LimitadorIntentos limitador = new LimitadorIntentos("claves", 2, 1, 600_000, 2)) {
+            for (int i = 0; i < 100; i++) {
+                String clave = "usuario" + i + "@gmail.com";
+                assertTrue(limitador.intentar(clave));
+                assertTrue(limitador.intentar(clave));
+                assertFalse(limitador.intentar(clave));
+            }
+            assertEquals(100, limitador.getClaves());
+        }
+    }
+
+    @Test
+    void reponeFichasConElTiempo() throws InterruptedException {
+        // 600 por minuto: una ficha cada 100 ms
+        try (LimitadorIntentos limitador = new LimitadorIntentos("reposicion", 2, 600, 600_000, 1)) {
+            assertTrue(limitador.intentar("k"));
+            assertTrue(limitador.intentar("k"));
+            assertFalse(limitador.intentar("k"));
+            Thread.sleep(250);
+            // Pasados 250 ms hay dos fichas, no más: la cubeta no supera su capacidad
+            assertTrue(limitador.intentar("k"));
+            assertTrue(limitador.intentar("k"));
+            assertFalse(limitador.intentar("k"));
+        }
+    }
+
+    @Test
+    void unRechazoNoConsumeFicha() throws InterruptedException {
+        try (LimitadorIntentos limitador = new LimitadorIntentos("rechazo", 1, 600, 600_000, 1)) {
+            assertTrue(limitador.intentar("k"));
+            // Reintentar mientras está bloqueada no retrasa la siguiente ficha
+            for (int i = 0; i < 50; i++) {
+                assertFalse(limitador.intentar("k"));
+            }
+            Thread.sleep(150);
+            assertTrue(limitador.intentar("k"));
+        }
+    }
+}
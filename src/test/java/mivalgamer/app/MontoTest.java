@@ -0,0 +1,85 @@
+package mivalgamer.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MontoTest {
+    private static final RoundingMode[] MODOS = {
+            RoundingMode.DOWN, RoundingMode.UP, RoundingMode.FLOOR, RoundingMode.CEILING,
+            RoundingMode.HALF_UP, RoundingMode.HALF_DOWN, RoundingMode.HALF_EVEN
+    };
+
+    @Test
+    void dividirCoincideConBigDecimalEnTodosLosModos() {
+        long[] divisores = {1, 2, 3, 4, 7, 10, 100, -1, -2, -3, -4, -10};
+        for (RoundingMode modo : MODOS) {
+            for (long dividendo = -25; dividendo <= 25; dividendo++) {
+                for (long divisor : divisores) {
+                    long esperado = BigDecimal.valueOf(dividendo)
+                            .divide(BigDecimal.valueOf(divisor), 0, modo).longValueExact();
+                    assertEquals(esperado, Monto.dividir(dividendo, divisor, modo),
+                            dividendo + "/" + divisor + " con " + modo);
+                }
+            }
+        }
+    }
+
+    @Test
+    void dividirEnLaMitadExacta() {
+        assertEquals(3, Monto.dividir(5, 2, RoundingMode.HALF_UP));
+        assertEquals(2, Monto.dividir(5, 2, RoundingMode.HALF_DOWN));
+        assertEquals(2, Monto.dividir(5, 2, RoundingMode.HALF_EVEN));
+        assertEquals(4, Monto.dividir(7, 2, RoundingMode.HALF_EVEN));
+        assertEquals(-3, Monto.dividir(-5, 2, RoundingMode.HALF_UP));
+        assertEquals(-2, Monto.dividir(-5, 2, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    void dividirSinRedondeoPosible() {
+        assertEquals(3, Monto.dividir(9, 3, RoundingMode.UNNECESSARY));
+        assertThrows(ArithmeticException.class, () -> Monto.dividir(10, 3, RoundingMode.UNNECESSARY));
+        assertThrows(ArithmeticException.class, () -> Monto.dividir(10, 0, RoundingMode.HALF_UP));
+    }
+
+    @Test
+    void aplicarTasa() {
+        assertEquals(190, Monto.aplicarTasa(1000, 1900, RoundingMode.HALF_UP));
+        // 999 * 19 % = 189.81 céntimos
+        assertEquals(190, Monto.aplicarTasa(999, 1900, RoundingMode.HALF_UP));
+        assertEquals(189, Monto.aplicarTasa(999, 1900, RoundingMode.DOWN));
+        assertEquals(0, Monto.aplicarTasa(1000, 0, RoundingMode.HALF_UP));
+    }
+
+    @Test
+    void conversionDesdeTextoYDecimal() {
+        assertEquals(1200, Monto.deTexto("12"));
+        assertEquals(1250, Monto.deTexto(" 12.5 "));
+        assertEquals(1250, Monto.deTexto("12.50"));
+        assertEquals(1999, Monto.deDecimal(new BigDecimal("19.99")));
+        assertEquals(0, Monto.deDecimal(null));
+        assertEquals(new BigDecimal("19.99"), Monto.aDecimal(1999));
+        assertThrows(NumberFormatException.class, () -> Monto.deTexto("doce"));
+    }
+
+    @Test
+    void formatear() {
+        assertEquals("0.00", Monto.formatear(0));
+        assertEquals("0.05", Monto.formatear(5));
+        assertEquals("-0.50", Monto.formatear(-50));
+        assertEquals("1234.05", Monto.formatear(123405));
+    }
+
+    @Test
+    void aritmeticaSinDesbordamientoSilencioso() {
+        assertEquals(3000, Monto.porCantidad(1000, 3));
+        assertEquals(1500, Monto.sumar(1000, 500));
+        assertEquals(-500, Monto.restar(1000, 1500));
+        assertThrows(ArithmeticException.class, () -> Monto.sumar(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Monto.porCantidad(Long.MAX_VALUE / 2, 3));
+    }
+}
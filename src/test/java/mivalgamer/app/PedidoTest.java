@@ -0,0 +1,130 @@
+package mivalgamer.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PedidoTest {
+    private static final Usuario USUARIO = new Usuario(null, "USR-0000000000001", "Ana", "ana@gmail.com");
+
+    @Test
+    void pedidoGratuitoSeApruebaSinLlamarALaPasarela() throws SQLException {
+        Pedido pedido = pedido(0, List.of(item(0, 2)), null);
+
+        PasarelaPago.Autorizacion autorizacion = pedido.autorizarPago(PASARELA_PROHIBIDA).join();
+        assertTrue(autorizacion.isAprobada());
+        assertEquals(0, autorizacion.getMonto());
+        assertEquals(pedido.getIdPedido(), autorizacion.getReferencia());
+        assertNull(pedido.capturarPago(PASARELA_PROHIBIDA).join());
+        pedido.anularPago(PASARELA_PROHIBIDA);
+    }
+
+    @Test
+    void pedidoDescontadoHastaCeroSeApruebaSinLlamarALaPasarela() throws SQLException {
+        Pedido pedido = pedido(2000, List.of(item(1000, 2)), null);
+        assertEquals(0, pedido.calcularTotalCentavos());
+        assertTrue(pedido.autorizarPago(PASARELA_PROHIBIDA).join().isAprobada());
+        assertNull(pedido.capturarPago(PASARELA_PROHIBIDA).join());
+    }
+
+    @Test
+    void pedidoGratuitoSeRegistraSinTransaccionNiMetodoDePago() throws SQLException {
+        List<String> sentencias = new ArrayList<>();
+        Pedido pedido = pedido(0, List.of(), conexion(sentencias));
+        pedido.autorizarPago(PASARELA_PROHIBIDA).join();
+
+        assertTrue(pedido.procesarPago());
+        assertEquals(EstadoPedido.PAGADO, pedido.getEstado());
+        for (String sql : sentencias) {
+            assertFalse(sql.contains("transaccion") || sql.contains("metodo_pago"), sql);
+        }
+        // El pedido sí cuenta en el historial, el resumen y el libro de transacciones
+        assertTrue(sentencias.stream().anyMatch(sql -> sql.startsWith("INSERT INTO historial_compras")));
+        assertTrue(sentencias.stream().anyMatch(sql -> sql.startsWith("INSERT INTO movimiento_pendiente")));
+    }
+
+    @Test
+    void pedidoConImporteSigueAutorizandoEnLaPasarela() throws SQLException {
+        List<Long> montos = new ArrayList<>();
+        PasarelaPago pasarela = new PasarelaPago() {
+            @Override
+            public CompletableFuture<Autorizacion> autorizar(int idMetodo, long monto, String referencia) {
+                montos.add(monto);
+                return CompletableFuture.completedFuture(
+                        new Autorizacion("AUT-1", idMetodo, monto, referencia, true, null));
+            }
+
+            @Override
+            public CompletableFuture<Void> capturar(Autorizacion autorizacion) {
+                montos.add(-autorizacion.getMonto());
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletableFuture<Void> anular(Autorizacion autorizacion) {
+                throw new AssertionError("No se esperaba anular");
+            }
+        };
+        Pedido pedido = pedido(0, List.of(item(1000, 1)), null);
+        pedido.autorizarPago(pasarela).join();
+        pedido.capturarPago(pasarela).join();
+        // 10,00 más el 19 % de impuestos
+        assertEquals(List.of(1190L, -1190L), montos);
+    }
+
+    private static Pedido pedido(long descuento, List<ItemPedido> items, Connection conexion) {
+        Pedido pedido = new Pedido("PED-0000000000001", USUARIO, LocalDateTime.of(2025, 6, 15, 12, 0),
+                7, descuento, 1900, EstadoPedido.PENDIENTE, conexion);
+        pedido.setItems(new ArrayList<>(items));
+        return pedido;
+    }
+
+    private static ItemPedido item(long precio, int cantidad) {
+        Videojuego juego = new Videojuego(1, "Juego", "Estudio", 1, "", precio, precio, false,
+                EstadoVideojuego.DISPONIBLE, null, null, null, 10);
+        return new ItemPedido("PED-0000000000001", juego, precio, cantidad);
+    }
+
+    private static final PasarelaPago PASARELA_PROHIBIDA = new PasarelaPago() {
+        @Override
+        public CompletableFuture<Autorizacion> autorizar(int idMetodo, long monto, String referencia) {
+            throw new AssertionError("No se esperaba llamar a la pasarela");
+        }
+
+        @Override
+        public CompletableFuture<Void> capturar(Autorizacion autorizacion) {
+            throw new AssertionError("No se esperaba llamar a la pasarela");
+        }
+
+        @Override
+        public CompletableFuture<Void> anular(Autorizacion autorizacion) {
+            throw new AssertionError("No se esperaba llamar a la pasarela");
+        }
+    };
+
+    // Conexión que anota el SQL de cada sentencia y da por buena cualquier escritura
+    private static Connection conexion(List<String> sentencias) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (p, metodo, args) -> {
+                    if (!metodo.getName().equals("prepareStatement")) {
+                        return null;
+                    }
+                    sentencias.add((String) args[0]);
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                            new Class<?>[]{PreparedStatement.class},
+                            (p2, m2, a2) -> m2.getName().equals("executeUpdate") ? 1 : null);
+                });
+    }
+}
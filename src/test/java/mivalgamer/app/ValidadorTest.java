@@ -0,0 +1,95 @@
+package mivalgamer.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ValidadorTest {
+    private static final LocalDate HOY = LocalDate.of(2025, 6, 15);
+
+    @Test
+    void password() {
+        assertEquals(ErrorValidacion.OK, Validador.validarPassword("Secreta123"));
+        assertEquals(ErrorValidacion.PASSWORD_CORTA, Validador.validarPassword(null));
+        assertEquals(ErrorValidacion.PASSWORD_CORTA, Validador.validarPassword("Ab1cdef"));
+        assertEquals(ErrorValidacion.PASSWORD_SIN_MAYUSCULA, Validador.validarPassword("secreta123"));
+        assertEquals(ErrorValidacion.PASSWORD_SIN_MINUSCULA, Validador.validarPassword("SECRETA123"));
+        assertEquals(ErrorValidacion.PASSWORD_SIN_NUMERO, Validador.validarPassword("SecretaLarga"));
+    }
+
+    @Test
+    void email() {
+        assertEquals(ErrorValidacion.OK, Validador.validarEmail("ana.perez+tienda@gmail.com"));
+        assertEquals(ErrorValidacion.OK, Validador.validarEmail("Ana_P-1@Yahoo.ES"));
+        assertEquals(ErrorValidacion.EMAIL_VACIO, Validador.validarEmail(""));
+        assertEquals(ErrorValidacion.EMAIL_VACIO, Validador.validarEmail(null));
+        assertEquals(ErrorValidacion.EMAIL_FORMATO, Validador.validarEmail("sin-arroba.gmail.com"));
+        assertEquals(ErrorValidacion.EMAIL_FORMATO, Validador.validarEmail("@gmail.com"));
+        assertEquals(ErrorValidacion.EMAIL_FORMATO, Validador.validarEmail("ana pérez@gmail.com"));
+        assertEquals(ErrorValidacion.EMAIL_DOMINIO, Validador.validarEmail("ana@empresa.com"));
+        // El dominio tiene que coincidir entero, no solo terminar igual
+        assertEquals(ErrorValidacion.EMAIL_DOMINIO, Validador.validarEmail("ana@mail.gmail.com"));
+        assertEquals(ErrorValidacion.EMAIL_DOMINIO, Validador.validarEmail("ana@gmail.co"));
+    }
+
+    @Test
+    void numeroTarjetaConDigitoDeControlLuhn() {
+        assertEquals(ErrorValidacion.OK, Validador.validarNumeroTarjeta("1234567897"));
+        assertEquals(ErrorValidacion.OK, Validador.validarNumeroTarjeta("4000000002"));
+        assertEquals(ErrorValidacion.TARJETA_CONTROL, Validador.validarNumeroTarjeta("1234567890"));
+        // Un solo dígito cambiado rompe el control
+        assertEquals(ErrorValidacion.TARJETA_CONTROL, Validador.validarNumeroTarjeta("1234567797"));
+        assertEquals(ErrorValidacion.TARJETA_FORMATO, Validador.validarNumeroTarjeta("123456789"));
+        assertEquals(ErrorValidacion.TARJETA_FORMATO, Validador.validarNumeroTarjeta("12345678970"));
+        assertEquals(ErrorValidacion.TARJETA_FORMATO, Validador.validarNumeroTarjeta("12345a7897"));
+        assertEquals(ErrorValidacion.TARJETA_FORMATO, Validador.validarNumeroTarjeta(null));
+    }
+
+    @Test
+    void cvv() {
+        assertEquals(ErrorValidacion.OK, Validador.validarCvv("123"));
+        assertEquals(ErrorValidacion.OK, Validador.validarCvv("1234"));
+        assertEquals(ErrorValidacion.CVV_FORMATO, Validador.validarCvv("12"));
+        assertEquals(ErrorValidacion.CVV_FORMATO, Validador.validarCvv("12345"));
+        assertEquals(ErrorValidacion.CVV_FORMATO, Validador.validarCvv("12a"));
+        assertEquals(ErrorValidacion.CVV_FORMATO, Validador.validarCvv(null));
+    }
+
+    @Test
+    void fechaExpiracionDesdeTexto() {
+        assertEquals(ErrorValidacion.OK, Validador.validarFechaExpiracion("2027-01-31", HOY));
+        // El mismo día de expiración todavía vale
+        assertEquals(ErrorValidacion.OK, Validador.validarFechaExpiracion("2025-06-15", HOY));
+        assertEquals(ErrorValidacion.FECHA_CADUCADA, Validador.validarFechaExpiracion("2025-06-14", HOY));
+        assertEquals(ErrorValidacion.FECHA_CADUCADA, Validador.validarFechaExpiracion("2025-05-31", HOY));
+        assertEquals(ErrorValidacion.FECHA_CADUCADA, Validador.validarFechaExpiracion("2024-12-31", HOY));
+        assertEquals(ErrorValidacion.FECHA_VACIA, Validador.validarFechaExpiracion("", HOY));
+        assertEquals(ErrorValidacion.FECHA_VACIA, Validador.validarFechaExpiracion((CharSequence) null, HOY));
+        assertEquals(ErrorValidacion.FECHA_FORMATO, Validador.validarFechaExpiracion("2026/01/01", HOY));
+        assertEquals(ErrorValidacion.FECHA_FORMATO, Validador.validarFechaExpiracion("2026-1-01", HOY));
+        assertEquals(ErrorValidacion.FECHA_FORMATO, Validador.validarFechaExpiracion("20a6-01-01", HOY));
+        assertEquals(ErrorValidacion.FECHA_MES_INVALIDO, Validador.validarFechaExpiracion("2026-13-01", HOY));
+        assertEquals(ErrorValidacion.FECHA_MES_INVALIDO, Validador.validarFechaExpiracion("2026-00-10", HOY));
+        assertEquals(ErrorValidacion.FECHA_DIA_INVALIDO, Validador.validarFechaExpiracion("2026-04-31", HOY));
+        assertEquals(ErrorValidacion.FECHA_DIA_INVALIDO, Validador.validarFechaExpiracion("2026-01-00", HOY));
+    }
+
+    @Test
+    void fechaExpiracionEnAniosBisiestos() {
+        assertEquals(ErrorValidacion.OK, Validador.validarFechaExpiracion("2028-02-29", HOY));
+        assertEquals(ErrorValidacion.OK, Validador.validarFechaExpiracion("2400-02-29", HOY));
+        assertEquals(ErrorValidacion.FECHA_DIA_INVALIDO, Validador.validarFechaExpiracion("2027-02-29", HOY));
+        assertEquals(ErrorValidacion.FECHA_DIA_INVALIDO, Validador.validarFechaExpiracion("2100-02-29", HOY));
+    }
+
+    @Test
+    void fechaExpiracionCoincideConLaVersionDeLocalDate() {
+        LocalDate fecha = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < 1200; i++, fecha = fecha.plusDays(1)) {
+            assertEquals(Validador.validarFechaExpiracion(fecha, HOY),
+                    Validador.validarFechaExpiracion(fecha.toString(), HOY), fecha.toString());
+        }
+    }
+}